@@ -4,6 +4,7 @@ DROP SEQUENCE seq_VILLES;
 DROP SEQUENCE SEQ_EVAL;
 DROP SEQUENCE SEQ_NOTES;
 DROP SEQUENCE SEQ_CRITERES_EVALUATION;
+DROP SEQUENCE SEQ_TEXTES;
 
 DROP TABLE RESTAURANTS CASCADE CONSTRAINTS;
 DROP TABLE TYPES_GASTRONOMIQUES CASCADE CONSTRAINTS;
@@ -12,14 +13,18 @@ DROP TABLE COMMENTAIRES CASCADE CONSTRAINTS;
 DROP TABLE LIKES CASCADE CONSTRAINTS;
 DROP TABLE NOTES CASCADE CONSTRAINTS;
 DROP TABLE CRITERES_EVALUATION CASCADE CONSTRAINTS;
+DROP TABLE DICTIONNAIRES_COMPRESSION CASCADE CONSTRAINTS;
+DROP TABLE TEXTES CASCADE CONSTRAINTS;
 
-CREATE TABLE RESTAURANTS (numero number(10) NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, description clob, site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, description clob NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE RESTAURANTS (numero number(10) NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, fk_desc number(10) NOT NULL, description_apercu varchar2(200 CHAR), site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, fk_desc number(10) NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE VILLES (numero number(10) NOT NULL, code_postal varchar2(100) NOT NULL, nom_ville varchar2(100) NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE COMMENTAIRES (numero number(10) NOT NULL, date_eval date NOT NULL, commentaire clob NOT NULL, nom_utilisateur varchar2(100) NOT NULL, fk_rest number(10), PRIMARY KEY (numero));
+CREATE TABLE COMMENTAIRES (numero number(10) NOT NULL, date_eval date NOT NULL, fk_texte number(10) NOT NULL, nom_utilisateur varchar2(100) NOT NULL, fk_rest number(10), PRIMARY KEY (numero));
 CREATE TABLE LIKES (numero number(10) NOT NULL, appreciation char(1) NOT NULL, date_eval date NOT NULL, adresse_ip varchar2(100) NOT NULL, fk_rest number(10) NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE NOTES (numero number(10) NOT NULL, note number(3) NOT NULL, fk_comm number(10) NOT NULL, fk_crit number(10) NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE CRITERES_EVALUATION (numero number(10) NOT NULL, nom varchar2(100) NOT NULL UNIQUE, description varchar2(512), PRIMARY KEY (numero));
+CREATE TABLE DICTIONNAIRES_COMPRESSION (numero number(3) NOT NULL, donnees blob NOT NULL, date_creation date NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE TEXTES (numero number(10) NOT NULL, texte clob, texte_z blob, PRIMARY KEY (numero));
 
 ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_TYPE FOREIGN KEY (fk_type) REFERENCES TYPES_GASTRONOMIQUES (numero);
 ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_VILL FOREIGN KEY (fk_vill) REFERENCES VILLES (numero);
@@ -27,6 +32,9 @@ ALTER TABLE COMMENTAIRES ADD CONSTRAINT FK_COMM_REST FOREIGN KEY (fk_rest) REFER
 ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_COMM FOREIGN KEY (fk_comm) REFERENCES COMMENTAIRES (numero);
 ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_CRIT FOREIGN KEY (fk_crit) REFERENCES CRITERES_EVALUATION (numero);
 ALTER TABLE LIKES ADD CONSTRAINT FK_LIKE_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_DESC FOREIGN KEY (fk_desc) REFERENCES TEXTES (numero);
+ALTER TABLE TYPES_GASTRONOMIQUES ADD CONSTRAINT FK_TYPE_DESC FOREIGN KEY (fk_desc) REFERENCES TEXTES (numero);
+ALTER TABLE COMMENTAIRES ADD CONSTRAINT FK_COMM_TEXTE FOREIGN KEY (fk_texte) REFERENCES TEXTES (numero);
 
 CREATE SEQUENCE SEQ_RESTAURANTS;
 CREATE SEQUENCE SEQ_TYPES_GASTRONOMIQUES;
@@ -34,6 +42,7 @@ CREATE SEQUENCE SEQ_VILLES;
 CREATE SEQUENCE SEQ_EVAL;
 CREATE SEQUENCE SEQ_NOTES;
 CREATE SEQUENCE SEQ_CRITERES_EVALUATION;
+CREATE SEQUENCE SEQ_TEXTES;
 
 CREATE OR REPLACE TRIGGER TR_BIF_RESTAURANTS
 BEFORE INSERT ON RESTAURANTS
@@ -103,4 +112,36 @@ BEGIN
 		:NEW.NUMERO := SEQ_CRITERES_EVALUATION.NEXTVAL;
 	END IF;
 END;
-/
\ No newline at end of file
+/
+
+CREATE OR REPLACE TRIGGER TR_BIF_TEXTES
+BEFORE INSERT ON TEXTES
+FOR EACH ROW
+BEGIN
+	IF :NEW.NUMERO IS NULL THEN
+		:NEW.NUMERO := SEQ_TEXTES.NEXTVAL;
+	END IF;
+END;
+/
+
+-- Clé naturelle des villes: un seul NPA + nom (sans casse)
+CREATE UNIQUE INDEX UQ_VILLES_NPA_NOM ON VILLES (code_postal, UPPER(nom_ville));
+
+-- Vérification "un like par IP, par restaurant et par jour"
+CREATE INDEX IX_LIKES_REST_IP_DATE ON LIKES (fk_rest, adresse_ip, date_eval);
+CREATE UNIQUE INDEX UQ_LIKES_REST_IP_JOUR ON LIKES (fk_rest, adresse_ip, TRUNC(date_eval));
+
+-- Une note par évaluation et par critère (cible des MERGE de GradeMapper)
+ALTER TABLE NOTES ADD CONSTRAINT UQ_NOTES_COMM_CRIT UNIQUE (fk_comm, fk_crit);
+
+-- Textes longs, lus à la demande (LongText): un texte par propriétaire
+ALTER TABLE RESTAURANTS ADD CONSTRAINT UQ_REST_DESC UNIQUE (fk_desc);
+ALTER TABLE TYPES_GASTRONOMIQUES ADD CONSTRAINT UQ_TYPE_DESC UNIQUE (fk_desc);
+ALTER TABLE COMMENTAIRES ADD CONSTRAINT UQ_COMM_TEXTE UNIQUE (fk_texte);
+
+-- Chronologie des évaluations (TimelineKey): pages "les plus récentes d'abord",
+-- par restaurant ou globales, lues en parcourant l'index à l'envers
+CREATE INDEX IX_COMM_REST_DATE ON COMMENTAIRES (fk_rest, date_eval, numero);
+CREATE INDEX IX_COMM_DATE ON COMMENTAIRES (date_eval, numero);
+CREATE INDEX IX_LIKES_REST_DATE ON LIKES (fk_rest, date_eval, numero);
+CREATE INDEX IX_LIKES_DATE ON LIKES (date_eval, numero);
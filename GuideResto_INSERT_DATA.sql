@@ -1,6 +1,17 @@
-INSERT INTO TYPES_GASTRONOMIQUES(libelle, description) VALUES ('Cuisine suisse', 'Cuisine classique et plats typiquement suisses');
-INSERT INTO TYPES_GASTRONOMIQUES(libelle, description) VALUES ('Restaurant gastronomique', 'Restaurant gastronomique de haut standing');
-INSERT INTO TYPES_GASTRONOMIQUES(libelle, description) VALUES ('Pizzeria', 'Pizzas et autres spécialités italiennes');
+INSERT INTO TEXTES(texte) VALUES ('Cuisine classique et plats typiquement suisses');
+INSERT INTO TEXTES(texte) VALUES ('Restaurant gastronomique de haut standing');
+INSERT INTO TEXTES(texte) VALUES ('Pizzas et autres spécialités italiennes');
+INSERT INTO TEXTES(texte) VALUES ('Pizzeria au centre de Neuchâtel');
+INSERT INTO TEXTES(texte) VALUES ('Restaurant gastronomique renommé de Neuchâtel');
+INSERT INTO TEXTES(texte) VALUES ('Génial !');
+INSERT INTO TEXTES(texte) VALUES ('Très bon');
+INSERT INTO TEXTES(texte) VALUES ('Un régal !');
+INSERT INTO TEXTES(texte) VALUES ('Rien à dire, le top !');
+COMMIT;
+
+INSERT INTO TYPES_GASTRONOMIQUES(libelle, fk_desc) VALUES ('Cuisine suisse', 1);
+INSERT INTO TYPES_GASTRONOMIQUES(libelle, fk_desc) VALUES ('Restaurant gastronomique', 2);
+INSERT INTO TYPES_GASTRONOMIQUES(libelle, fk_desc) VALUES ('Pizzeria', 3);
 COMMIT;
 
 INSERT INTO CRITERES_EVALUATION(nom, description) VALUES ('Service', 'Qualité du service');
@@ -11,14 +22,14 @@ COMMIT;
 INSERT INTO VILLES(code_postal, nom_ville) VALUES ('2000', 'Neuchâtel');
 COMMIT;
 
-INSERT INTO RESTAURANTS(nom, adresse, description, site_web, fk_type, fk_vill) VALUES ('Fleur-de-Lys', 'Rue du Bassin 10', 'Pizzeria au centre de Neuchâtel', 'http://www.pizzeria-neuchatel.ch', 3, 1);
-INSERT INTO RESTAURANTS(nom, adresse, description, site_web, fk_type, fk_vill) VALUES ('La Maison du Prussien', 'Rue des Tunnels 11', 'Restaurant gastronomique renommé de Neuchâtel', 'www.hotel-prussien.ch', 2, 1);
+INSERT INTO RESTAURANTS(nom, adresse, fk_desc, description_apercu, site_web, fk_type, fk_vill) VALUES ('Fleur-de-Lys', 'Rue du Bassin 10', 4, 'Pizzeria au centre de Neuchâtel', 'http://www.pizzeria-neuchatel.ch', 3, 1);
+INSERT INTO RESTAURANTS(nom, adresse, fk_desc, description_apercu, site_web, fk_type, fk_vill) VALUES ('La Maison du Prussien', 'Rue des Tunnels 11', 5, 'Restaurant gastronomique renommé de Neuchâtel', 'www.hotel-prussien.ch', 2, 1);
 COMMIT;
 
-INSERT INTO COMMENTAIRES(date_eval, commentaire, nom_utilisateur, fk_rest) VALUES (sysdate, 'Génial !', 'Toto', 1);
-INSERT INTO COMMENTAIRES(date_eval, commentaire, nom_utilisateur, fk_rest) VALUES (sysdate, 'Très bon', 'Titi', 1);
-INSERT INTO COMMENTAIRES(date_eval, commentaire, nom_utilisateur, fk_rest) VALUES (sysdate, 'Un régal !', 'Dupont', 2);
-INSERT INTO COMMENTAIRES(date_eval, commentaire, nom_utilisateur, fk_rest) VALUES (sysdate, 'Rien à dire, le top !', 'Dupasquier', 2);
+INSERT INTO COMMENTAIRES(date_eval, fk_texte, nom_utilisateur, fk_rest) VALUES (sysdate, 6, 'Toto', 1);
+INSERT INTO COMMENTAIRES(date_eval, fk_texte, nom_utilisateur, fk_rest) VALUES (sysdate, 7, 'Titi', 1);
+INSERT INTO COMMENTAIRES(date_eval, fk_texte, nom_utilisateur, fk_rest) VALUES (sysdate, 8, 'Dupont', 2);
+INSERT INTO COMMENTAIRES(date_eval, fk_texte, nom_utilisateur, fk_rest) VALUES (sysdate, 9, 'Dupasquier', 2);
 COMMIT;
 
 INSERT INTO NOTES(note, fk_comm, fk_crit) VALUES (4, 1, 1);
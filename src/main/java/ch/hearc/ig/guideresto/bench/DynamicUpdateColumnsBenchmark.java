@@ -0,0 +1,254 @@
+package ch.hearc.ig.guideresto.bench;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Evaluation;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Localisation;
+import ch.hearc.ig.guideresto.business.LongText;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Nombre de colonnes des UPDATE générés par Hibernate pour les modifications
+ * courantes, sans base de données:
+ * <ul>
+ * <li>avant: mapping sans {@code @DynamicUpdate} (toutes les colonnes);</li>
+ * <li>après: {@code @DynamicUpdate} de Restaurant, CompleteEvaluation et
+ * LongText (colonnes modifiées).</li>
+ * </ul>
+ * Le mapping est celui de l'application; seul le drapeau dynamic-update est
+ * retiré pour la mesure "avant". Le SQL est compté par un
+ * {@link StatementInspector}; les connexions JDBC sont des bouchons qui
+ * acceptent toute instruction (dialecte Oracle, sans accès aux métadonnées).
+ *
+ * Usage: {@code DynamicUpdateColumnsBenchmark}
+ */
+public final class DynamicUpdateColumnsBenchmark {
+
+    private static final List<Class<?>> ENTITIES = List.of(BasicEvaluation.class, City.class,
+            CompleteEvaluation.class, Evaluation.class, EvaluationCriteria.class, Grade.class, Localisation.class,
+            LongText.class, Restaurant.class, RestaurantType.class);
+
+    private DynamicUpdateColumnsBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        List<List<String>> before = run(false);
+        List<List<String>> after = run(true);
+        System.out.printf("%-28s %-32s %-32s%n", "modification", "avant", "après");
+        for (int i = 0; i < Scenario.values().length; i++) {
+            System.out.printf("%-28s %-32s %-32s%n", Scenario.values()[i].label, before.get(i), after.get(i));
+        }
+    }
+
+    /**
+     * Une modification d'une entité déjà enregistrée, suivie d'un flush.
+     */
+    private enum Scenario {
+        RENAME("nom du restaurant", (Fixture f) -> f.restaurant.setName("Nouveau nom")),
+        WEBSITE("site web", (Fixture f) -> f.restaurant.setWebsite("https://example.ch")),
+        DESCRIPTION("description", (Fixture f) -> f.restaurant.setDescription("Nouvelle description")),
+        COMMENT("texte du commentaire", (Fixture f) -> f.evaluation.setComment("Nouveau commentaire")),
+        USERNAME("auteur du commentaire", (Fixture f) -> f.evaluation.setUsername("auteur"));
+
+        private final String label;
+        private final Consumer<Fixture> change;
+
+        Scenario(String label, Consumer<Fixture> change) {
+            this.label = label;
+            this.change = change;
+        }
+    }
+
+    private record Fixture(Restaurant restaurant, CompleteEvaluation evaluation) {
+    }
+
+    /**
+     * @return pour chaque scénario, "TABLE: n colonnes" de chaque UPDATE
+     */
+    private static List<List<String>> run(boolean dynamicUpdate) {
+        UpdateCounter counter = new UpdateCounter();
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.dialect", "org.hibernate.dialect.OracleDialect")
+                .applySetting("hibernate.boot.allow_jdbc_metadata_access", false)
+                .applySetting("hibernate.connection.provider_class", new StubConnectionProvider())
+                .applySetting("hibernate.session_factory.statement_inspector", counter)
+                .applySetting("hibernate.jdbc.batch_size", 0)
+                .build();
+        List<List<String>> result = new ArrayList<>();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            ENTITIES.forEach(sources::addAnnotatedClass);
+            Metadata metadata = sources.buildMetadata();
+            if (!dynamicUpdate) {
+                for (PersistentClass entity : metadata.getEntityBindings()) {
+                    entity.setDynamicUpdate(false);
+                }
+            }
+            try (SessionFactory factory = metadata.buildSessionFactory()) {
+                for (Scenario scenario : Scenario.values()) {
+                    result.add(measure(factory, counter, scenario));
+                }
+            }
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+        return result;
+    }
+
+    private static List<String> measure(SessionFactory factory, UpdateCounter counter, Scenario scenario) {
+        try (Session session = factory.openSession()) {
+            session.beginTransaction();
+            City city = new City("2000", "Neuchâtel");
+            RestaurantType type = new RestaurantType("Pizzeria", "Pizzas au feu de bois");
+            Restaurant restaurant = new Restaurant(null, "Fleur-de-Lys", "Pizzeria au centre de Neuchâtel",
+                    "http://www.pizzeria-neuchatel.ch", "Rue du Bassin 10", city, type);
+            CompleteEvaluation evaluation = new CompleteEvaluation(new Date(), restaurant, "Très bon", "client");
+            session.persist(city);
+            session.persist(type);
+            session.persist(restaurant);
+            session.persist(evaluation);
+            session.flush();
+
+            counter.updates.clear();
+            scenario.change.accept(new Fixture(restaurant, evaluation));
+            session.flush();
+            session.getTransaction().rollback();
+            return List.copyOf(counter.updates);
+        }
+    }
+
+    /**
+     * Relève la table et le nombre de colonnes SET de chaque UPDATE préparé.
+     */
+    private static final class UpdateCounter implements StatementInspector {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<String> updates = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            String lower = sql.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("update ")) {
+                int set = lower.indexOf(" set ");
+                int where = lower.indexOf(" where ", set);
+                String table = sql.substring("update ".length(), set).trim().toUpperCase(Locale.ROOT);
+                int columns = lower.substring(set, where < 0 ? lower.length() : where).split(",").length;
+                updates.add(table + ": " + columns);
+            }
+            return sql;
+        }
+    }
+
+    /**
+     * Connexions JDBC factices: chaque écriture touche une ligne, chaque
+     * requête (valeur de séquence) rend une ligne d'une colonne numérique.
+     */
+    private static final class StubConnectionProvider implements ConnectionProvider {
+        private static final long serialVersionUID = 1L;
+
+        private long sequence;
+
+        @Override
+        public Connection getConnection() {
+            return stub(Connection.class, (method, args) -> switch (method) {
+                case "prepareStatement" -> statement();
+                case "isClosed" -> false;
+                default -> null;
+            });
+        }
+
+        private PreparedStatement statement() {
+            return stub(PreparedStatement.class, (method, args) -> switch (method) {
+                case "executeUpdate" -> 1;
+                case "executeQuery" -> row(++sequence);
+                case "executeBatch" -> new int[0];
+                default -> null;
+            });
+        }
+
+        private static ResultSet row(long value) {
+            boolean[] read = { false };
+            return stub(ResultSet.class, (method, args) -> switch (method) {
+                case "next" -> {
+                    boolean next = !read[0];
+                    read[0] = true;
+                    yield next;
+                }
+                case "getLong", "getObject" -> value;
+                case "getInt" -> (int) value;
+                case "getBigDecimal" -> java.math.BigDecimal.valueOf(value);
+                default -> null;
+            });
+        }
+
+        @Override
+        public void closeConnection(Connection connection) {
+        }
+
+        @Override
+        public boolean supportsAggressiveRelease() {
+            return false;
+        }
+
+        @Override
+        public boolean isUnwrappableAs(Class<?> unwrapType) {
+            return false;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> unwrapType) {
+            throw new UnsupportedOperationException(unwrapType.getName());
+        }
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    /**
+     * Implémentation par proxy: valeur de {@code answer}, ou valeur par
+     * défaut du type de retour.
+     */
+    private static <T> T stub(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    Object value = answer.answer(method.getName(), args);
+                    if (value != null)
+                        return value;
+                    Class<?> returned = method.getReturnType();
+                    if (returned == boolean.class)
+                        return false;
+                    if (returned == int.class)
+                        return 0;
+                    if (returned == long.class)
+                        return 0L;
+                    if (returned == short.class || returned == byte.class || returned == double.class
+                            || returned == float.class)
+                        return java.lang.reflect.Array.get(java.lang.reflect.Array.newInstance(returned, 1), 0);
+                    return null;
+                }));
+    }
+}
@@ -0,0 +1,93 @@
+package ch.hearc.ig.guideresto.bench;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.persistence.CityMapper;
+import ch.hearc.ig.guideresto.persistence.IdentityMapContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Mesure des octets alloués par l'enregistrement d'un résultat de finder
+ * dans l'Identity Map et les index secondaires (sans base de données):
+ * <ul>
+ * <li>avant: copie dans un {@code LinkedHashSet} puis {@code addToCache}
+ * ligne par ligne;</li>
+ * <li>après: {@code AbstractMapper.register}, vue non modifiable de la liste
+ * JDBC.</li>
+ * </ul>
+ * Compteur de la JVM ({@code com.sun.management.ThreadMXBean}), moyenne par
+ * appel après une phase de chauffe.
+ *
+ * Usage: {@code FinderAllocationBenchmark [lignes] [itérations]}
+ */
+public final class FinderAllocationBenchmark {
+
+    private static final int WARMUP = 2_000;
+
+    // Résultats consommés: empêche le JIT d'éliminer les allocations mesurées
+    private static volatile Object sink;
+
+    private FinderAllocationBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        List<City> result = new ArrayList<>(rows);
+        for (int i = 1; i <= rows; i++) {
+            result.add(new City(i, Integer.toString(1000 + i), "Ville " + i));
+        }
+        CityFinder finder = new CityFinder();
+
+        measure("avant (LinkedHashSet + addToCache)", iterations, () -> finder.registerAsSet(result));
+        measure("après (register, vue non modifiable)", iterations, () -> finder.registerAsList(result));
+        IdentityMapContext.clear();
+    }
+
+    private static void measure(String label, int iterations, Supplier<Collection<City>> call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < WARMUP; i++) {
+            sink = call.get();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = call.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        System.out.printf("%-40s %,10d octets/appel %,10d ns/appel%n", label, allocated / iterations,
+                elapsed / iterations);
+    }
+
+    /**
+     * {@code CityMapper} sans EntityManager: seuls l'Identity Map et ses index
+     * (NPA, nom, clé naturelle) sont sollicités.
+     */
+    private static final class CityFinder extends CityMapper {
+
+        CityFinder() {
+            super(null);
+        }
+
+        Collection<City> registerAsSet(List<City> rows) {
+            Set<City> result = new LinkedHashSet<>(rows);
+            for (City city : result) {
+                addToCache(city);
+            }
+            return result;
+        }
+
+        Collection<City> registerAsList(List<City> rows) {
+            return register(rows);
+        }
+    }
+}
@@ -11,7 +11,8 @@ import jakarta.persistence.*;
 @NamedQueries({
     @NamedQuery(name = "City.findAll", query = "SELECT c FROM City c ORDER BY c.cityName"),
     @NamedQuery(name = "City.findByZipCode", query = "SELECT c FROM City c WHERE c.zipCode = :zip ORDER BY c.cityName"),
-    @NamedQuery(name = "City.findByName", query = "SELECT c FROM City c WHERE UPPER(c.cityName) LIKE :name ORDER BY c.cityName")
+    @NamedQuery(name = "City.findByName", query = "SELECT c FROM City c WHERE UPPER(c.cityName) LIKE :name ORDER BY c.cityName"),
+    @NamedQuery(name = "City.findByNaturalKey", query = "SELECT c FROM City c WHERE c.zipCode = :zip AND UPPER(c.cityName) = :name")
 })
 public class City implements IBusinessObject {
 
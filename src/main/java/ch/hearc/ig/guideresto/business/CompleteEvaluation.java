@@ -1,26 +1,35 @@
 package ch.hearc.ig.guideresto.business;
 
+import ch.hearc.ig.guideresto.persistence.jpa.TextCompression;
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 /**
  * @author cedric.baudet
  */
 
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
+// UPDATE limité aux colonnes modifiées
 @Entity
+@DynamicUpdate
 @Table(name = "COMMENTAIRES")
 @NamedQueries({
     @NamedQuery(name = "CompleteEvaluation.findAll", query = "select c from CompleteEvaluation c order by c.id"),
     @NamedQuery(name = "CompleteEvaluation.findByRestaurant", query = "select c from CompleteEvaluation c where c.restaurant.id = :restaurantId order by c.id"),
+    @NamedQuery(name = "CompleteEvaluation.findByRestaurants", query = "select c from CompleteEvaluation c where c.restaurant.id in :restaurantIds order by c.id"),
     @NamedQuery(name = "CompleteEvaluation.findByUsername", query = "select c from CompleteEvaluation c where upper(c.username) = :username order by c.id")
 })
 public class CompleteEvaluation extends Evaluation {
 
-    @Lob
-    @Column(name = "COMMENTAIRE", nullable = false)
-    private String comment;
+    // Texte long dans TEXTES: l'association LAZY (proxy) évite de lire le
+    // LOB avec l'évaluation. La vue détail lit les commentaires en projection
+    // (CompleteEvaluationMapper.findCommentRowsByRestaurantId).
+    @OneToOne(fetch = FetchType.LAZY, optional = false, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "FK_TEXTE", nullable = false, unique = true)
+    private LongText commentText = new LongText();
 
     @Column(name = "NOM_UTILISATEUR", nullable = false)
     private String username;
@@ -38,17 +47,34 @@ public class CompleteEvaluation extends Evaluation {
 
     public CompleteEvaluation(Integer id, Date visitDate, Restaurant restaurant, String comment, String username) {
         super(id, visitDate, restaurant);
-        this.comment = comment;
+        storeComment(comment);
         this.username = username;
         this.grades = new HashSet<>();
     }
 
+    /**
+     * Lit le texte dans TEXTES (requête au premier accès).
+     */
     public String getComment() {
-        return comment;
+        return commentText.getText();
     }
 
+    /**
+     * Écrit le texte dans la colonne compressée si la compression est activée
+     * ({@link TextCompression#isEnabled()}), sinon dans le CLOB.
+     *
+     * Sans effet si le texte ne change pas: la colonne LOB n'est alors pas
+     * réécrite (voir {@link DynamicUpdate}).
+     */
     public void setComment(String comment) {
-        this.comment = comment;
+        if (Objects.equals(getComment(), comment))
+            return;
+        storeComment(comment);
+    }
+
+    // Privée: appelée aussi par le constructeur
+    private void storeComment(String comment) {
+        commentText.setText(comment, TextCompression.isEnabled());
     }
 
     public String getUsername() {
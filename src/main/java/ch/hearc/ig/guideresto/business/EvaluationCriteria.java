@@ -11,7 +11,8 @@ import java.util.Set;
 @Table(name = "CRITERES_EVALUATION")
 @NamedQueries({
     @NamedQuery(name = "EvaluationCriteria.findAll", query = "SELECT c FROM EvaluationCriteria c ORDER BY c.name"),
-    @NamedQuery(name = "EvaluationCriteria.findByName", query = "SELECT c FROM EvaluationCriteria c WHERE UPPER(c.name) LIKE :name ORDER BY c.name")
+    @NamedQuery(name = "EvaluationCriteria.findByName", query = "SELECT c FROM EvaluationCriteria c WHERE UPPER(c.name) LIKE :name ORDER BY c.name"),
+    @NamedQuery(name = "EvaluationCriteria.findByExactName", query = "SELECT c FROM EvaluationCriteria c WHERE UPPER(c.name) = :name")
 })
 public class EvaluationCriteria implements IBusinessObject {
 
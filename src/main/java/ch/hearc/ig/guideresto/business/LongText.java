@@ -0,0 +1,73 @@
+package ch.hearc.ig.guideresto.business;
+
+import ch.hearc.ig.guideresto.persistence.jpa.CompressedTextConverter;
+import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+
+import java.util.Objects;
+
+/**
+ * Texte long (description, commentaire) stocké à part dans TEXTES.
+ *
+ * Référencé par une association LAZY: le propriétaire est chargé sans ses
+ * LOB, qui ne sont lus qu'au premier accès au texte (proxy Hibernate, sans
+ * amélioration du bytecode).
+ */
+// UPDATE limité aux colonnes modifiées: seule la colonne écrite est réécrite
+@Entity
+@DynamicUpdate
+@Table(name = "TEXTES")
+public class LongText implements IBusinessObject {
+
+    @Id
+    @Column(name = "NUMERO")
+    @SequenceGenerator(name = "texte_seq", sequenceName = "SEQ_TEXTES", allocationSize = 1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "texte_seq")
+    private Integer id;
+
+    // Vide quand le texte est stocké compressé dans TEXTE_Z
+    @Lob
+    @Column(name = "TEXTE")
+    private String text;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(name = "TEXTE_Z")
+    private String compressedText;
+
+    public LongText() {
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getText() {
+        return compressedText != null ? compressedText : text;
+    }
+
+    /**
+     * Écrit le texte dans la colonne compressée ou dans le CLOB.
+     *
+     * Sans effet si le texte ne change pas: la colonne LOB n'est alors pas
+     * réécrite (voir {@link DynamicUpdate}).
+     *
+     * @param compress true pour écrire dans TEXTE_Z
+     */
+    public void setText(String value, boolean compress) {
+        if (Objects.equals(getText(), value))
+            return;
+        if (compress) {
+            this.compressedText = value;
+            this.text = null;
+        } else {
+            this.text = value;
+            this.compressedText = null;
+        }
+    }
+
+}
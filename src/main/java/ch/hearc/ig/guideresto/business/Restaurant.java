@@ -2,23 +2,37 @@ package ch.hearc.ig.guideresto.business;
 
 import org.apache.commons.collections4.CollectionUtils;
 
+import ch.hearc.ig.guideresto.persistence.jpa.TextCompression;
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * @author cedric.baudet
  */
+// UPDATE limité aux colonnes modifiées: renommer ne réécrit pas la description
 @Entity
+@DynamicUpdate
 @Table(name = "RESTAURANTS")
 @NamedQueries({
     @NamedQuery(name = "Restaurant.findAll", query = "select distinct r from Restaurant r"),
     @NamedQuery(name = "Restaurant.findByName", query = "select r from Restaurant r where upper(r.name) like upper(:name)"),
+    @NamedQuery(name = "Restaurant.findByExactName", query = "select r from Restaurant r where upper(r.name) = upper(:name)"),
     @NamedQuery(name = "Restaurant.findByCity", query = "select r from Restaurant r join r.address.city c where upper(c.cityName) like upper(:cityName)")
 })
 public class Restaurant implements IBusinessObject {
 
+    /**
+     * Longueur maximale de l'aperçu de la description (DESCRIPTION_APERCU).
+     */
+    public static final int DESCRIPTION_PREVIEW_LENGTH = 200;
+
     @Id
     @Column(name = "NUMERO")
     @SequenceGenerator(name = "resto_seq", sequenceName = "SEQ_RESTAURANTS", allocationSize = 1)
@@ -28,9 +42,16 @@ public class Restaurant implements IBusinessObject {
     @Column(name = "NOM", nullable = false)
     private String name;
 
-    @Lob
-    @Column(name = "DESCRIPTION")
-    private String description;
+    // Texte long dans TEXTES: l'association LAZY (proxy) évite de lire le
+    // LOB avec le restaurant. Les écrans de liste lisent l'aperçu
+    // DESCRIPTION_APERCU (RestaurantMapper.findPreviews).
+    @OneToOne(fetch = FetchType.LAZY, optional = false, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "FK_DESC", nullable = false, unique = true)
+    private LongText descriptionText = new LongText();
+
+    // Début du texte en clair, tenu à jour à chaque écriture de la description
+    @Column(name = "DESCRIPTION_APERCU", length = DESCRIPTION_PREVIEW_LENGTH)
+    private String descriptionPreview;
 
     @Column(name = "SITE_WEB")
     private String website;
@@ -42,8 +63,17 @@ public class Restaurant implements IBusinessObject {
     @JoinColumn(name = "FK_TYPE")
     private RestaurantType type;
 
+    // Collections typées: Evaluation est en TABLE_PER_CLASS, une collection
+    // polymorphe serait chargée par un UNION ALL sur LIKES et COMMENTAIRES.
+    // SUBSELECT: hors entity graph (une collection au plus, voir
+    // FetchPlanAdvisor), lues pour tous les restaurants du résultat à la fois.
+    @OneToMany(mappedBy = "restaurant", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Fetch(FetchMode.SUBSELECT)
+    private Set<BasicEvaluation> likes = new HashSet<>();
+
     @OneToMany(mappedBy = "restaurant", cascade = CascadeType.ALL, orphanRemoval = true)
-    private Set<Evaluation> evaluations = new HashSet<>();
+    @Fetch(FetchMode.SUBSELECT)
+    private Set<CompleteEvaluation> comments = new HashSet<>();
 
     public Restaurant() {
         this(null, null, null, null, null, null);
@@ -52,9 +82,10 @@ public class Restaurant implements IBusinessObject {
     public Restaurant(Integer id, String name, String description, String website, String street, City city, RestaurantType type) {
         this.id = id;
         this.name = name;
-        this.description = description;
+        storeDescription(description);
         this.website = website;
-        this.evaluations = new HashSet<>();
+        this.likes = new HashSet<>();
+        this.comments = new HashSet<>();
         this.address = new Localisation(street, city);
         this.type = type;
     }
@@ -62,9 +93,10 @@ public class Restaurant implements IBusinessObject {
     public Restaurant(Integer id, String name, String description, String website, Localisation address, RestaurantType type) {
         this.id = id;
         this.name = name;
-        this.description = description;
+        storeDescription(description);
         this.website = website;
-        this.evaluations = new HashSet<>();
+        this.likes = new HashSet<>();
+        this.comments = new HashSet<>();
         this.address = address;
         this.type = type;
     }
@@ -85,12 +117,55 @@ public class Restaurant implements IBusinessObject {
         this.name = name;
     }
 
+    /**
+     * Lit le texte dans TEXTES (requête au premier accès).
+     */
     public String getDescription() {
-        return description;
+        return descriptionText.getText();
     }
 
+    /**
+     * Écrit le texte dans la colonne compressée si la compression est activée
+     * ({@link TextCompression#isEnabled()}), sinon dans le CLOB, et met à
+     * jour l'aperçu (DESCRIPTION_APERCU).
+     *
+     * Sans effet si le texte ne change pas: la colonne LOB n'est alors pas
+     * réécrite (voir {@link DynamicUpdate}).
+     */
     public void setDescription(String description) {
-        this.description = description;
+        if (Objects.equals(getDescription(), description))
+            return;
+        storeDescription(description);
+    }
+
+    /**
+     * Aperçu de la description (au plus {@value #DESCRIPTION_PREVIEW_LENGTH}
+     * caractères).
+     */
+    public String getDescriptionPreview() {
+        return descriptionPreview;
+    }
+
+    /**
+     * @return true si le texte de la description a déjà été lu
+     */
+    public boolean isDescriptionLoaded() {
+        return Hibernate.isInitialized(descriptionText);
+    }
+
+    // Privée: appelée aussi par les constructeurs
+    private void storeDescription(String description) {
+        descriptionText.setText(description, TextCompression.isEnabled());
+        this.descriptionPreview = previewOf(description);
+    }
+
+    /**
+     * Aperçu d'une description: ses {@value #DESCRIPTION_PREVIEW_LENGTH}
+     * premiers caractères.
+     */
+    public static String previewOf(String description) {
+        return description == null || description.length() <= DESCRIPTION_PREVIEW_LENGTH
+                ? description : description.substring(0, DESCRIPTION_PREVIEW_LENGTH);
     }
 
     public String getWebsite() {
@@ -101,12 +176,26 @@ public class Restaurant implements IBusinessObject {
         this.website = website;
     }
 
-    public Set<Evaluation> getEvaluations() {
-        return evaluations;
+    /**
+     * Évaluations basiques (likes / dislikes), chargées depuis LIKES seulement.
+     */
+    public Set<BasicEvaluation> getLikes() {
+        return likes;
+    }
+
+    public void setLikes(Set<BasicEvaluation> likes) {
+        this.likes = likes;
+    }
+
+    /**
+     * Évaluations complètes, chargées depuis COMMENTAIRES seulement.
+     */
+    public Set<CompleteEvaluation> getComments() {
+        return comments;
     }
 
-    public void setEvaluations(Set<Evaluation> evaluations) {
-        this.evaluations = evaluations;
+    public void setComments(Set<CompleteEvaluation> comments) {
+        this.comments = comments;
     }
 
     public Localisation getAddress() {
@@ -126,7 +215,7 @@ public class Restaurant implements IBusinessObject {
     }
 
     public boolean hasEvaluations() {
-        return CollectionUtils.isNotEmpty(evaluations);
+        return CollectionUtils.isNotEmpty(likes) || CollectionUtils.isNotEmpty(comments);
     }
 
     @Transient
@@ -11,7 +11,8 @@ import java.util.Set;
 @Table(name = "TYPES_GASTRONOMIQUES")
 @NamedQueries({
     @NamedQuery(name = "RestaurantType.findAll", query = "SELECT t FROM RestaurantType t ORDER BY t.label"),
-    @NamedQuery(name = "RestaurantType.findByName", query = "SELECT t FROM RestaurantType t WHERE UPPER(t.label) LIKE :name ORDER BY t.label")
+    @NamedQuery(name = "RestaurantType.findByName", query = "SELECT t FROM RestaurantType t WHERE UPPER(t.label) LIKE :name ORDER BY t.label"),
+    @NamedQuery(name = "RestaurantType.findByLabel", query = "SELECT t FROM RestaurantType t WHERE UPPER(t.label) = :label")
 })
 public class RestaurantType implements IBusinessObject {
 
@@ -24,9 +25,12 @@ public class RestaurantType implements IBusinessObject {
     @Column(name = "LIBELLE", nullable = false, unique = true)
     private String label;
 
-    @Lob
-    @Column(name = "DESCRIPTION", nullable = false)
-    private String description;
+    // Texte long dans TEXTES, jamais compressé: l'association LAZY (proxy)
+    // évite de lire le LOB avec le type. Les écrans de liste lisent des
+    // aperçus SQL (RestaurantTypeMapper.findPreviews).
+    @OneToOne(fetch = FetchType.LAZY, optional = false, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "FK_DESC", nullable = false, unique = true)
+    private LongText descriptionText = new LongText();
 
     @OneToMany(mappedBy = "type", cascade = CascadeType.PERSIST)
     private Set<Restaurant> restaurants = new HashSet<>();
@@ -42,7 +46,7 @@ public class RestaurantType implements IBusinessObject {
     public RestaurantType(Integer id, String label, String description) {
         this.id = id;
         this.label = label;
-        this.description = description;
+        this.descriptionText.setText(description, false);
     }
 
     @Override
@@ -67,11 +71,11 @@ public class RestaurantType implements IBusinessObject {
     }
 
     public String getDescription() {
-        return description;
+        return descriptionText.getText();
     }
 
     public void setDescription(String description) {
-        this.description = description;
+        descriptionText.setText(description, false);
     }
 
     public Set<Restaurant> getRestaurants() {
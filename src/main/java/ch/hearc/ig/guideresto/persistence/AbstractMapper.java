@@ -1,14 +1,51 @@
 package ch.hearc.ig.guideresto.persistence;
 
 import ch.hearc.ig.guideresto.business.IBusinessObject;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SessionImplementor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public abstract class AbstractMapper<T extends IBusinessObject> {
 
+    // nom d'index -> (extracteur de clé, trié?) ; les données vivent dans IdentityMapContext
+    private final Map<String, IndexDefinition<T>> indexDefinitions = new LinkedHashMap<>();
+
+    /**
+     * Index secondaire sur les entités en cache. Les clés sont normalisées
+     * sans casse ({@link SecondaryIndex#normalize}).
+     *
+     * @param name         nom de l'index, unique pour ce mapper
+     * @param keyExtractor attribut indexé
+     * @param sorted       {@code true} pour un index trié (recherches par préfixe)
+     */
+    protected record IndexDefinition<T extends IBusinessObject>(String name, Function<? super T, String> keyExtractor,
+            boolean sorted) {
+    }
+
+    protected AbstractMapper() {
+        this(List.of());
+    }
+
+    /**
+     * @param indexes index secondaires de ce mapper
+     */
+    protected AbstractMapper(List<IndexDefinition<T>> indexes) {
+        for (IndexDefinition<T> index : indexes) {
+            indexDefinitions.put(index.name(), index);
+        }
+    }
+
     public abstract T findById(int id);
 
-    public abstract Set<T> findAll();
+    public abstract List<T> findAll();
 
     public abstract T create(T object);
 
@@ -35,23 +72,229 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
 
     /**
      * Ajoute un objet à l'identity map (garantit une seule instance par id)
+     * et met à jour les index secondaires.
      * 
      * @param objet l'objet à ajouter
      */
     protected void addToCache(T objet) {
         if (objet != null && objet.getId() != null) {
             identityMap().put(objet.getId(), objet);
+            for (String name : indexDefinitions.keySet()) {
+                index(name).put(objet);
+            }
+        }
+    }
+
+    /**
+     * Enregistre les entités lues dans l'Identity Map et les index secondaires
+     * en un seul passage, puis rend la liste JDBC elle-même en lecture seule:
+     * ni copie ni hachage des entités (elles ne redéfinissent pas
+     * {@code equals}/{@code hashCode}, un {@code Set} n'apporterait rien).
+     * Le résultat devient le lot des chargements d'enfants de ce mapper
+     * ({@link #rememberResult}).
+     *
+     * @param rows résultat d'une requête, dans l'ordre de la requête
+     * @return vue non modifiable de {@code rows}
+     */
+    protected List<T> register(List<T> rows) {
+        if (rows.isEmpty()) {
+            rememberResult(List.of());
+            return List.of();
+        }
+        Map<Integer, T> identityMap = identityMap();
+        List<SecondaryIndex<T>> indexes = new ArrayList<>(indexDefinitions.size());
+        for (String name : indexDefinitions.keySet()) {
+            indexes.add(index(name));
         }
+        for (T object : rows) {
+            if (object.getId() == null)
+                continue;
+            identityMap.put(object.getId(), object);
+            for (SecondaryIndex<T> index : indexes) {
+                index.put(object);
+            }
+        }
+        List<T> result = Collections.unmodifiableList(rows);
+        rememberResult(result);
+        return result;
+    }
+
+    /**
+     * Retient le résultat d'un finder: les enfants de ses entités seront
+     * chargés ensemble par les {@link ChildBatchLoader} qui en dépendent, et
+     * ses associations sont observées par le {@link FetchPlanAdvisor}.
+     */
+    protected void rememberResult(List<T> result) {
+        IdentityMapContext.current().rememberResult(this.getClass(), result);
+        FetchPlanAdvisor.track(result);
     }
 
     /**
-     * Retire un objet de l'identity map
+     * Chargeur groupé des enfants de ce mapper pour le scope courant.
+     *
+     * @param name              nom du chargeur, unique pour ce mapper
+     * @param parentMapperClass mapper des parents
+     * @param parentIdOf        id du parent d'une entité de ce mapper
+     */
+    ChildBatchLoader<T> childLoader(String name, Class<?> parentMapperClass, Function<? super T, Integer> parentIdOf) {
+        return IdentityMapContext.current().loaderFor(this.getClass(), name,
+                () -> new ChildBatchLoader<>(this.getClass(), parentMapperClass, parentIdOf));
+    }
+
+    /**
+     * Retire un objet de l'identity map et des index secondaires
      * 
      * @param id l'ID de l'objet à retirer
      */
     protected void removeFromCache(Integer id) {
         if (id != null) {
             identityMap().remove(id);
+            for (String name : indexDefinitions.keySet()) {
+                index(name).remove(id);
+            }
+        }
+    }
+
+    /**
+     * Indique que l'Identity Map contient toute la table, à jour: les finders
+     * peuvent alors répondre depuis les index sans interroger la base. Une
+     * écriture validée par n'importe quel scope ({@link #tableChanged}) ou
+     * l'âge du chargement ({@link IdentityMapContext}) retire ce statut.
+     */
+    protected boolean isCacheAuthoritative() {
+        return IdentityMapContext.current().isComplete(this.getClass());
+    }
+
+    /**
+     * Version de la table à lire avant la requête de {@link #findAll()}: une
+     * écriture validée pendant la lecture rend le chargement non autoritaire.
+     */
+    protected long cacheVersion() {
+        return IdentityMapContext.version(this.getClass());
+    }
+
+    /**
+     * À appeler par {@link #findAll()} une fois toutes les lignes mises en cache.
+     *
+     * @param version valeur de {@link #cacheVersion()} lue avant la requête
+     */
+    protected void markCacheAuthoritative(long version) {
+        IdentityMapContext.current().markComplete(this.getClass(), version);
+    }
+
+    /**
+     * À appeler par les écritures du mapper: au commit, les caches complets de
+     * tous les scopes (dont celui-ci) cessent d'être autoritaires; à
+     * l'annulation, l'Identity Map du scope est vidée (voir
+     * {@link #discardOnRollback}).
+     */
+    protected void tableChanged(EntityManager em) {
+        tableChanged(em, this.getClass());
+    }
+
+    /**
+     * Comme {@link #tableChanged(EntityManager)}, pour la table d'un autre
+     * mapper (instructions ensemblistes qui écrivent aussi ses lignes).
+     */
+    static void tableChanged(EntityManager em, Class<?> mapperClass) {
+        afterCompletion(em, () -> IdentityMapContext.changed(mapperClass), IdentityMapContext::clear);
+    }
+
+    /**
+     * À appeler par les écritures qui mettent une entité en cache avant le
+     * commit: si la transaction est annulée, l'Identity Map du scope est
+     * vidée et ne retourne pas une ligne qui n'existe pas.
+     */
+    protected void discardOnRollback(EntityManager em) {
+        afterCompletion(em, () -> {
+        }, IdentityMapContext::clear);
+    }
+
+    /**
+     * Exécute {@code action} après le commit de la transaction courante de
+     * {@code em}, et seulement s'il réussit (immédiatement hors transaction).
+     * Sert aux structures partagées entre threads, qui ne doivent pas voir
+     * les écritures d'une transaction annulée.
+     */
+    static void afterCommit(EntityManager em, Runnable action) {
+        afterCompletion(em, action, () -> {
+        });
+    }
+
+    /**
+     * Exécute {@code onCommit} ou {@code onRollback} à la fin de la
+     * transaction courante de {@code em}, sur le thread qui la termine
+     * ({@code onCommit} immédiatement hors transaction).
+     */
+    private static void afterCompletion(EntityManager em, Runnable onCommit, Runnable onRollback) {
+        if (!em.isJoinedToTransaction()) {
+            onCommit.run();
+            return;
+        }
+        em.unwrap(SessionImplementor.class).getActionQueue().registerProcess((success, session) -> {
+            if (success)
+                onCommit.run();
+            else
+                onRollback.run();
+        });
+    }
+
+    /**
+     * Entités dont la clé indexée vaut exactement {@code key} (sans casse).
+     */
+    protected List<T> findInIndex(String indexName, String key) {
+        String normalized = SecondaryIndex.normalize(key);
+        SecondaryIndex<T> index = index(indexName);
+        List<T> result = new ArrayList<>();
+        for (Integer id : index.idsFor(normalized)) {
+            T object = findInCache(id);
+            // Garde-fou: une entité modifiée hors mapper n'est pas retournée sous son ancienne clé
+            if (object != null && normalized.equals(index.keyOf(object))) {
+                result.add(object);
+            }
+        }
+        List<T> view = Collections.unmodifiableList(result);
+        rememberResult(view);
+        return view;
+    }
+
+    /**
+     * Entités dont la clé indexée satisfait le filtre (clés normalisées), dans
+     * l'ordre de l'index.
+     */
+    protected List<T> scanIndex(String indexName, Predicate<String> keyFilter) {
+        SecondaryIndex<T> index = index(indexName);
+        List<T> result = new ArrayList<>();
+        for (Map.Entry<String, Set<Integer>> entry : index.entries().entrySet()) {
+            if (keyFilter.test(entry.getKey())) {
+                for (Integer id : entry.getValue()) {
+                    T object = findInCache(id);
+                    if (object != null && keyFilter.test(index.keyOf(object))) {
+                        result.add(object);
+                    }
+                }
+            }
+        }
+        List<T> view = Collections.unmodifiableList(result);
+        rememberResult(view);
+        return view;
+    }
+
+    /**
+     * Index secondaire de ce mapper pour le scope courant; créé à la demande et
+     * alimenté avec le contenu actuel de l'Identity Map.
+     */
+    SecondaryIndex<T> index(String name) {
+        IndexDefinition<T> definition = indexDefinitions.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Index inconnu: " + name);
         }
+        return IdentityMapContext.current().indexFor(this.getClass(), name, () -> {
+            SecondaryIndex<T> index = new SecondaryIndex<>(definition.keyExtractor(), definition.sorted());
+            for (T object : identityMap().values()) {
+                index.put(object);
+            }
+            return index;
+        });
     }
 }
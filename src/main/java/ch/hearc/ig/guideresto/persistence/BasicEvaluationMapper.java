@@ -4,17 +4,26 @@ import ch.hearc.ig.guideresto.business.BasicEvaluation;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Data Mapper JPA pour {@link BasicEvaluation}.
  * Utilise une Identity Map (thread-local via {@link AbstractMapper}) pour
  * réutiliser les instances par id.
- * Les recherches spécifiques s'appuient sur des NamedQueries.
+ * Les recherches spécifiques s'appuient sur des NamedQueries; les likes par
+ * restaurant sont chargés par lots ({@link ChildBatchLoader}).
+ * Un seul like par IP, par restaurant et par jour: index unique
+ * {@value #NATURAL_KEY_CONSTRAINT}.
  */
 public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
+    public static final String NATURAL_KEY_CONSTRAINT = "UQ_LIKES_REST_IP_JOUR";
+    private static final String BY_RESTAURANT = "restaurant";
+
     private final EntityManager em;
 
     public BasicEvaluationMapper(EntityManager em) {
@@ -34,13 +43,9 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
     }
 
     @Override
-    public Set<BasicEvaluation> findAll() {
+    public List<BasicEvaluation> findAll() {
         TypedQuery<BasicEvaluation> query = em.createNamedQuery("BasicEvaluation.findAll", BasicEvaluation.class);
-        List<BasicEvaluation> resultList = query.getResultList();
-        Set<BasicEvaluation> res = new LinkedHashSet<>(resultList);
-        for (BasicEvaluation be : res) {
-            addToCache(be);
-        }
+        List<BasicEvaluation> res = register(query.getResultList());
         return res;
     }
 
@@ -50,6 +55,8 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
             return null;
         em.persist(evaluation);
         addToCache(evaluation);
+        discardOnRollback(em);
+        forgetRestaurant(evaluation);
         return evaluation;
     }
 
@@ -59,6 +66,8 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
             return false;
         BasicEvaluation managed = em.merge(evaluation);
         addToCache(managed);
+        discardOnRollback(em);
+        forgetRestaurant(managed);
         return true;
     }
 
@@ -69,6 +78,7 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
         BasicEvaluation managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
         em.remove(managed);
         removeFromCache(evaluation.getId());
+        forgetRestaurant(managed);
         return true;
     }
 
@@ -82,19 +92,137 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
     }
 
     /**
-     * Recherche les évaluations d'un restaurant via une NamedQuery.
+     * Recherche les évaluations d'un restaurant via une NamedQuery; si le
+     * restaurant vient du dernier résultat du {@link RestaurantMapper}, les
+     * likes de tous ses restaurants sont lus en une requête.
      */
-    public Set<BasicEvaluation> findByRestaurantId(int restaurantId) {
-        TypedQuery<BasicEvaluation> query = em.createNamedQuery("BasicEvaluation.findByRestaurant",
-                BasicEvaluation.class);
-        query.setParameter("restaurantId", restaurantId);
-        List<BasicEvaluation> resultList = query.getResultList();
-        Set<BasicEvaluation> res = new LinkedHashSet<>(resultList);
-        for (BasicEvaluation be : res) {
-            addToCache(be);
+    public List<BasicEvaluation> findByRestaurantId(int restaurantId) {
+        return restaurantLoader().load(restaurantId, ids -> {
+            TypedQuery<BasicEvaluation> query = em.createNamedQuery("BasicEvaluation.findByRestaurants",
+                    BasicEvaluation.class);
+            query.setParameter("restaurantIds", ids);
+            return register(query.getResultList());
+        });
+    }
+
+    /**
+     * Page de la chronologie des likes, les plus récents d'abord
+     * ({@link TimelineKey#pageQuery}).
+     *
+     * @param restaurantId restaurant, ou {@code null} pour tous
+     * @param after        curseur de la page précédente, ou {@code null}
+     */
+    public List<BasicEvaluation> findTimeline(Integer restaurantId, Date from, Date to, TimelineKey after,
+            int limit) {
+        return register(TimelineKey.pageQuery(em, BasicEvaluation.class, restaurantId, from, to, after, limit)
+                .getResultList());
+    }
+
+    /**
+     * Nombre de likes et de dislikes par restaurant (agrégat SQL).
+     *
+     * @return id du restaurant → {likes, dislikes}
+     */
+    public Map<Integer, long[]> countLikesByRestaurant() {
+        List<Object[]> rows = em.createQuery(
+                "SELECT b.restaurant.id, b.likeRestaurant, COUNT(b) FROM BasicEvaluation b "
+                        + "GROUP BY b.restaurant.id, b.likeRestaurant",
+                Object[].class).getResultList();
+        Map<Integer, long[]> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            long[] count = counts.computeIfAbsent((Integer) row[0], k -> new long[2]);
+            count[Boolean.TRUE.equals(row[1]) ? 0 : 1] += (Long) row[2];
         }
-        return res;
+        return counts;
+    }
+
+    /**
+     * Nombre de likes et de dislikes d'un restaurant (agrégat SQL).
+     *
+     * @return {likes, dislikes}
+     */
+    public long[] countLikes(int restaurantId) {
+        List<Object[]> rows = em.createQuery(
+                "SELECT b.likeRestaurant, COUNT(b) FROM BasicEvaluation b WHERE b.restaurant.id = :restaurantId "
+                        + "GROUP BY b.likeRestaurant",
+                Object[].class).setParameter("restaurantId", restaurantId).getResultList();
+        long[] count = new long[2];
+        for (Object[] row : rows) {
+            count[Boolean.TRUE.equals(row[0]) ? 0 : 1] += (Long) row[1];
+        }
+        return count;
+    }
+
+    /**
+     * Indique si cette IP a déjà évalué le restaurant dans la période [from, to[
+     * (index IX_LIKES_REST_IP_DATE).
+     */
+    public boolean existsForRestaurantIpAndDay(int restaurantId, String ipAddress, Date from, Date to) {
+        List<Integer> ids = em.createQuery("SELECT b.id FROM BasicEvaluation b WHERE b.restaurant.id = :restaurantId "
+                + "AND b.ipAddress = :ip AND b.visitDate >= :from AND b.visitDate < :to", Integer.class)
+                .setParameter("restaurantId", restaurantId)
+                .setParameter("ip", ipAddress)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setMaxResults(1)
+                .getResultList();
+        return !ids.isEmpty();
+    }
+
+    /**
+     * Couples {restaurantId, adresse IP} des évaluations depuis {@code since}
+     * (projection, aucune entité chargée).
+     */
+    public List<Object[]> findRestaurantIpPairsSince(Date since) {
+        return Collections.unmodifiableList(em.createQuery(
+                "SELECT b.restaurant.id, b.ipAddress FROM BasicEvaluation b WHERE b.visitDate >= :since",
+                Object[].class).setParameter("since", since).getResultList());
+    }
+
+    /**
+     * Supprime au plus {@code limit} likes antérieurs à {@code before} (un
+     * DELETE ensembliste, {@code limit} au plus 1000), sans charger
+     * d'entité. L'Identity Map et le contexte de persistance ne sont pas mis
+     * à jour (voir l'appelant).
+     *
+     * Les lignes sont verrouillées à la lecture (FOR UPDATE SKIP LOCKED):
+     * deux purges concurrentes ne comptent jamais le même like, celles déjà
+     * verrouillées par l'autre purge lui sont laissées.
+     *
+     * @return id du restaurant → {likes, dislikes} supprimés; vide quand il
+     *         n'y a plus rien à supprimer
+     */
+    public Map<Integer, long[]> deleteOlderThan(Date before, int limit) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery("SELECT numero, fk_rest, appreciation FROM LIKES "
+                + "WHERE date_eval < ?1 AND ROWNUM <= ?2 FOR UPDATE SKIP LOCKED")
+                .setParameter(1, before)
+                .setParameter(2, limit)
+                .getResultList();
+        if (rows.isEmpty())
+            return Map.of();
+        List<Integer> ids = new ArrayList<>(rows.size());
+        Map<Integer, long[]> removed = new HashMap<>();
+        for (Object[] row : rows) {
+            ids.add(((Number) row[0]).intValue());
+            long[] count = removed.computeIfAbsent(((Number) row[1]).intValue(), k -> new long[2]);
+            count["T".equalsIgnoreCase(String.valueOf(row[2])) ? 0 : 1]++;
+        }
+        em.createQuery("DELETE FROM BasicEvaluation b WHERE b.id IN :ids")
+                .setParameter("ids", ids)
+                .executeUpdate();
+        tableChanged(em);
+        return Collections.unmodifiableMap(removed);
     }
 
     // Méthode mapRow supprimée (JPA gère le mapping)
+
+    private ChildBatchLoader<BasicEvaluation> restaurantLoader() {
+        return childLoader(BY_RESTAURANT, RestaurantMapper.class, evaluation -> evaluation.getRestaurant().getId());
+    }
+
+    private void forgetRestaurant(BasicEvaluation evaluation) {
+        if (evaluation.getRestaurant() != null)
+            restaurantLoader().forget(evaluation.getRestaurant().getId());
+    }
 }
@@ -0,0 +1,146 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Chargement groupé des enfants d'un parent (à la DataLoader).
+ *
+ * Quand les enfants d'un parent sont demandés et que ce parent fait partie du
+ * dernier résultat de son mapper dans le scope courant, les enfants de ce
+ * parent et des suivants du résultat (au plus {@value #MAX_BATCH_PARENTS})
+ * sont lus en une requête {@code IN} (par tranches de {@value #IN_LIST_LIMIT}).
+ * Les appels suivants pour ces parents, répétés ou non, sont servis depuis le
+ * lot: parcourir N parents coûte une requête par lot au lieu d'une par
+ * parent. Un nouveau résultat du mapper parent périme le lot.
+ *
+ * Un lot vit dans l'{@link IdentityMapContext} (un par thread); les écritures
+ * du mapper enfant retirent le parent concerné du lot avec {@link #forget},
+ * ses enfants sont alors relus seuls au prochain appel. Le lot retient aussi
+ * la version de la table enfant ({@link IdentityMapContext#version}) lue
+ * avant son chargement: une écriture validée depuis, par n'importe quel
+ * thread, le périme entièrement.
+ *
+ * @param <C> type des enfants
+ */
+final class ChildBatchLoader<C extends IBusinessObject> {
+
+    // Limite Oracle du nombre d'éléments d'une liste IN
+    static final int IN_LIST_LIMIT = 1000;
+    // Nombre maximal de parents d'un lot, pour borner la mémoire retenue
+    static final int MAX_BATCH_PARENTS = 500;
+
+    private final Class<?> childMapperClass;
+    private final Class<?> parentMapperClass;
+    private final Function<? super C, Integer> parentIdOf;
+    // Enfants du lot courant, par id de parent
+    private Map<Integer, List<C>> batch = new HashMap<>();
+    // Parents couverts par le lot courant, y compris ceux oubliés depuis
+    private Set<Integer> covered = Set.of();
+    // Résultat parent dont le lot est issu
+    private List<? extends IBusinessObject> source = List.of();
+    // Version de la table enfant lue avant le chargement du lot
+    private long version;
+
+    /**
+     * @param childMapperClass  mapper des enfants, dont la version périme le lot
+     * @param parentMapperClass mapper dont le dernier résultat définit le lot
+     * @param parentIdOf        id du parent d'un enfant
+     */
+    ChildBatchLoader(Class<?> childMapperClass, Class<?> parentMapperClass, Function<? super C, Integer> parentIdOf) {
+        this.childMapperClass = childMapperClass;
+        this.parentMapperClass = parentMapperClass;
+        this.parentIdOf = parentIdOf;
+    }
+
+    /**
+     * Enfants d'un parent, depuis le lot courant ou en chargeant un nouveau lot.
+     *
+     * @param query requête des enfants d'une tranche d'ids de parents; les
+     *              enfants d'un même parent doivent y garder leur ordre
+     * @return liste non modifiable des enfants
+     */
+    List<C> load(int parentId, Function<List<Integer>, List<C>> query) {
+        List<? extends IBusinessObject> parents = IdentityMapContext.current().lastResult(parentMapperClass);
+        long current = IdentityMapContext.version(childMapperClass);
+        if (parents != source || current != version) {
+            batch.clear();
+            covered = Set.of();
+            source = parents;
+            version = current;
+        }
+        List<C> ready = batch.get(parentId);
+        if (ready != null)
+            return ready;
+        if (covered.contains(parentId)) {
+            // Parent oublié après une écriture: relu seul, le reste du lot reste valable
+            ready = fetch(List.of(parentId), query).get(parentId);
+            batch.put(parentId, ready);
+            return ready;
+        }
+        List<Integer> parentIds = batchFor(parents, parentId);
+        batch = fetch(parentIds, query);
+        covered = new HashSet<>(parentIds);
+        return batch.get(parentId);
+    }
+
+    /**
+     * Retire un parent du lot (ses enfants ont changé dans ce scope).
+     */
+    void forget(Integer parentId) {
+        if (parentId != null)
+            batch.remove(parentId);
+    }
+
+    /**
+     * Enfants des parents donnés, par id de parent (liste vide pour un parent
+     * sans enfant).
+     */
+    private Map<Integer, List<C>> fetch(List<Integer> parentIds, Function<List<Integer>, List<C>> query) {
+        Map<Integer, List<C>> loaded = new HashMap<>();
+        for (Integer id : parentIds) {
+            loaded.put(id, new ArrayList<>());
+        }
+        for (int from = 0; from < parentIds.size(); from += IN_LIST_LIMIT) {
+            List<Integer> chunk = parentIds.subList(from, Math.min(from + IN_LIST_LIMIT, parentIds.size()));
+            for (C child : query.apply(chunk)) {
+                List<C> children = loaded.get(parentIdOf.apply(child));
+                if (children != null)
+                    children.add(child);
+            }
+        }
+        loaded.replaceAll((id, children) -> Collections.unmodifiableList(children));
+        return loaded;
+    }
+
+    /**
+     * Ids de {@code parentId} et des parents qui le suivent dans le dernier
+     * résultat (au plus {@value #MAX_BATCH_PARENTS}), ou ce seul parent s'il
+     * n'en fait pas partie.
+     */
+    private static List<Integer> batchFor(List<? extends IBusinessObject> parents, int parentId) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (IBusinessObject parent : parents) {
+            Integer id = parent.getId();
+            if (id == null)
+                continue;
+            if (ids.isEmpty() && id != parentId)
+                continue;
+            ids.add(id);
+            if (ids.size() == MAX_BATCH_PARENTS)
+                break;
+        }
+        if (ids.isEmpty())
+            return List.of(parentId);
+        return new ArrayList<>(ids);
+    }
+}
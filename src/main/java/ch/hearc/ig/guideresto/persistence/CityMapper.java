@@ -5,19 +5,32 @@ import ch.hearc.ig.guideresto.business.City;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import java.util.List;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Comparator;
 
 /**
  * Data Mapper JPA pour {@link City}.
  * Maintient une Identity Map (thread-local) afin de garantir une instance par
  * id.
  * Expose des recherches par zip/nom basées sur des NamedQueries.
+ * Déclare des index secondaires (NPA, nom, clé naturelle) qui permettent de
+ * répondre sans requête quand le cache contient toute la table.
+ * La clé naturelle (NPA + nom sans casse) est garantie unique par l'index
+ * {@value #NATURAL_KEY_CONSTRAINT}.
  */
 public class CityMapper extends AbstractMapper<City> {
+    /** Index unique (code_postal, UPPER(nom_ville)) défini dans GuideResto_CREATE_TABLES.sql */
+    public static final String NATURAL_KEY_CONSTRAINT = "UQ_VILLES_NPA_NOM";
+
+    private static final String BY_ZIP = "zipCode";
+    private static final String BY_NAME = "cityName";
+    private static final String BY_NATURAL_KEY = "naturalKey";
+
     private final EntityManager em;
 
     public CityMapper(EntityManager em) {
+        super(List.of(new IndexDefinition<>(BY_ZIP, City::getZipCode, false),
+                new IndexDefinition<>(BY_NAME, City::getCityName, true),
+                new IndexDefinition<>(BY_NATURAL_KEY, CityMapper::naturalKey, false)));
         this.em = em;
     }
 
@@ -34,13 +47,11 @@ public class CityMapper extends AbstractMapper<City> {
     }
 
     @Override
-    public Set<City> findAll() {
+    public List<City> findAll() {
+        long version = cacheVersion();
         TypedQuery<City> query = em.createNamedQuery("City.findAll", City.class);
-        List<City> resultList = query.getResultList();
-        Set<City> result = new LinkedHashSet<>(resultList);
-        for (City city : result) {
-            addToCache(city);
-        }
+        List<City> result = register(query.getResultList());
+        markCacheAuthoritative(version);
         return result;
     }
 
@@ -48,8 +59,10 @@ public class CityMapper extends AbstractMapper<City> {
     public City create(City object) {
         if (object == null)
             return null;
+        trimNaturalKey(object);
         em.persist(object);
         addToCache(object);
+        tableChanged(em);
         return object;
     }
 
@@ -57,8 +70,10 @@ public class CityMapper extends AbstractMapper<City> {
     public boolean update(City object) {
         if (object == null || object.getId() == null)
             return false;
+        trimNaturalKey(object);
         City managed = em.merge(object);
         addToCache(managed);
+        tableChanged(em);
         return true;
     }
 
@@ -69,6 +84,7 @@ public class CityMapper extends AbstractMapper<City> {
         City managed = em.contains(object) ? object : em.merge(object);
         em.remove(managed);
         removeFromCache(object.getId());
+        tableChanged(em);
         return true;
     }
 
@@ -82,35 +98,84 @@ public class CityMapper extends AbstractMapper<City> {
     }
 
     /**
-     * Recherche des villes par NPA via une NamedQuery.
+     * Recherche des villes par NPA via une NamedQuery, ou via l'index si le cache
+     * contient toutes les villes.
      */
-    public Set<City> findByZipCode(String zipCode) {
+    public List<City> findByZipCode(String zipCode) {
         if (zipCode == null)
-            return new LinkedHashSet<>();
-        TypedQuery<City> query = em.createNamedQuery("City.findByZipCode", City.class);
-        query.setParameter("zip", zipCode);
-        List<City> resultList = query.getResultList();
-        Set<City> result = new LinkedHashSet<>(resultList);
-        for (City city : result) {
-            addToCache(city);
+            return List.of();
+        if (isCacheAuthoritative()) {
+            List<City> cached = findInIndex(BY_ZIP, zipCode);
+            cached.sort(Comparator.comparing(City::getCityName));
+            return cached;
         }
+        TypedQuery<City> query = em.createNamedQuery("City.findByZipCode", City.class);
+        query.setParameter("zip", zipCode.trim());
+        List<City> result = register(query.getResultList());
         return result;
     }
 
     /**
      * Recherche des villes dont le nom contient la chaîne donnée (case-insensitive
-     * côté requête).
+     * côté requête, ou via l'index trié si le cache contient toutes les villes).
      */
-    public Set<City> findByName(String namePart) {
+    public List<City> findByName(String namePart) {
         if (namePart == null)
-            return new LinkedHashSet<>();
+            return List.of();
+        String needle = SecondaryIndex.normalize(namePart);
+        if (isCacheAuthoritative())
+            return scanIndex(BY_NAME, key -> key.contains(needle));
         TypedQuery<City> query = em.createNamedQuery("City.findByName", City.class);
-        query.setParameter("name", "%" + namePart.toUpperCase() + "%");
-        List<City> resultList = query.getResultList();
-        Set<City> result = new LinkedHashSet<>(resultList);
-        for (City city : result) {
-            addToCache(city);
-        }
+        query.setParameter("name", "%" + needle + "%");
+        List<City> result = register(query.getResultList());
         return result;
     }
+
+    /**
+     * Recherche la ville par sa clé naturelle (NPA exact + nom sans casse).
+     * Consulte d'abord l'index en mémoire, puis l'index unique en base;
+     * ne charge jamais toute la table.
+     *
+     * @return la ville ou {@code null} si elle n'existe pas
+     */
+    public City findByNaturalKey(String zipCode, String cityName) {
+        if (zipCode == null || cityName == null)
+            return null;
+        List<City> cached = findInIndex(BY_NATURAL_KEY, naturalKey(zipCode, cityName));
+        if (!cached.isEmpty())
+            return cached.get(0);
+        if (isCacheAuthoritative())
+            return null;
+        TypedQuery<City> query = em.createNamedQuery("City.findByNaturalKey", City.class);
+        query.setParameter("zip", zipCode.trim());
+        query.setParameter("name", SecondaryIndex.normalize(cityName));
+        List<City> resultList = query.getResultList();
+        if (resultList.isEmpty())
+            return null;
+        City city = resultList.get(0);
+        addToCache(city);
+        return city;
+    }
+
+    /**
+     * Écrit la clé naturelle sans espaces de bord, comme elle est comparée
+     * ({@link #findByNaturalKey}): l'index unique ne porte que sur
+     * UPPER(nom_ville).
+     */
+    private static void trimNaturalKey(City city) {
+        if (city.getZipCode() != null)
+            city.setZipCode(city.getZipCode().trim());
+        if (city.getCityName() != null)
+            city.setCityName(city.getCityName().trim());
+    }
+
+    private static String naturalKey(City city) {
+        if (city.getZipCode() == null || city.getCityName() == null)
+            return null;
+        return naturalKey(city.getZipCode(), city.getCityName());
+    }
+
+    private static String naturalKey(String zipCode, String cityName) {
+        return zipCode.trim() + '|' + cityName.trim();
+    }
 }
@@ -3,17 +3,23 @@ package ch.hearc.ig.guideresto.persistence;
 import ch.hearc.ig.guideresto.business.CompleteEvaluation;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.LinkedHashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Data Mapper JPA pour {@link CompleteEvaluation}.
  * Hydrate explicitement la collection de {@code grades} via {@link GradeMapper}
- * après chargement.
+ * après chargement: les grades de toutes les évaluations d'un résultat sont
+ * lus en une requête, comme les commentaires des restaurants d'un même
+ * résultat ({@link ChildBatchLoader}).
  * Utilise une Identity Map (thread-local) pour réutiliser les instances par id.
  */
 public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation> {
+    private static final String BY_RESTAURANT = "restaurant";
+
     private final EntityManager em;
     private final GradeMapper gradeMapper;
 
@@ -36,14 +42,12 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     }
 
     @Override
-    public Set<CompleteEvaluation> findAll() {
+    public List<CompleteEvaluation> findAll() {
         TypedQuery<CompleteEvaluation> query = em.createNamedQuery("CompleteEvaluation.findAll",
                 CompleteEvaluation.class);
-        List<CompleteEvaluation> resultList = query.getResultList();
-        Set<CompleteEvaluation> result = new LinkedHashSet<>(resultList);
+        List<CompleteEvaluation> result = register(query.getResultList());
         for (CompleteEvaluation evaluation : result) {
             evaluation.setGrades(new LinkedHashSet<>(gradeMapper.findByEvaluationId(evaluation.getId())));
-            addToCache(evaluation);
         }
         return result;
     }
@@ -55,6 +59,8 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
         em.persist(evaluation);
         // Les grades sont persistés via cascade définie sur CompleteEvaluation.grades
         addToCache(evaluation);
+        discardOnRollback(em);
+        forget(evaluation);
         return evaluation;
     }
 
@@ -64,6 +70,8 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
             return false;
         CompleteEvaluation managed = em.merge(evaluation);
         addToCache(managed);
+        discardOnRollback(em);
+        forget(managed);
         return true;
     }
 
@@ -74,9 +82,35 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
         CompleteEvaluation managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
         em.remove(managed);
         removeFromCache(evaluation.getId());
+        forget(managed);
         return true;
     }
 
+    /**
+     * Supprime une évaluation et ses notes par DELETE ensemblistes (NOTES,
+     * COMMENTAIRES puis le texte dans TEXTES), sans charger les notes. Le contexte de
+     * persistance n'est pas mis à jour (voir l'appelant).
+     *
+     * @return {@code true} si l'évaluation a été supprimée
+     */
+    public boolean deleteCascade(int evaluationId) {
+        List<Integer> textIds = em.createQuery("SELECT c.commentText.id FROM CompleteEvaluation c "
+                + "WHERE c.id = :evaluationId", Integer.class)
+                .setParameter("evaluationId", evaluationId)
+                .getResultList();
+        em.createQuery("DELETE FROM Grade g WHERE g.evaluation.id = :evaluationId")
+                .setParameter("evaluationId", evaluationId)
+                .executeUpdate();
+        int deleted = em.createQuery("DELETE FROM CompleteEvaluation c WHERE c.id = :evaluationId")
+                .setParameter("evaluationId", evaluationId)
+                .executeUpdate();
+        new LongTextMapper(em).deleteByIds(textIds);
+        removeFromCache(evaluationId);
+        tableChanged(em);
+        tableChanged(em, GradeMapper.class);
+        return deleted == 1;
+    }
+
     @Override
     public boolean deleteById(int id) {
         CompleteEvaluation evaluation = findById(id);
@@ -90,35 +124,77 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     /**
      * Recherche les évaluations d'un restaurant et hydrate leurs grades.
      */
-    public Set<CompleteEvaluation> findByRestaurantId(int restaurantId) {
-        TypedQuery<CompleteEvaluation> query = em.createNamedQuery("CompleteEvaluation.findByRestaurant",
-                CompleteEvaluation.class);
-        query.setParameter("restaurantId", restaurantId);
-        List<CompleteEvaluation> resultList = query.getResultList();
-        Set<CompleteEvaluation> result = new LinkedHashSet<>(resultList);
+    public List<CompleteEvaluation> findByRestaurantId(int restaurantId) {
+        List<CompleteEvaluation> result = restaurantLoader().load(restaurantId, ids -> {
+            TypedQuery<CompleteEvaluation> query = em.createNamedQuery("CompleteEvaluation.findByRestaurants",
+                    CompleteEvaluation.class);
+            query.setParameter("restaurantIds", ids);
+            return register(query.getResultList());
+        });
+        for (CompleteEvaluation evaluation : result) {
+            evaluation.setGrades(new LinkedHashSet<>(gradeMapper.findByEvaluationId(evaluation.getId())));
+        }
+        return result;
+    }
+
+    /**
+     * Page de la chronologie des évaluations, les plus récentes d'abord
+     * ({@link TimelineKey#pageQuery}), avec leurs grades lus en une requête.
+     *
+     * @param restaurantId restaurant, ou {@code null} pour tous
+     * @param after        curseur de la page précédente, ou {@code null}
+     */
+    public List<CompleteEvaluation> findTimeline(Integer restaurantId, Date from, Date to, TimelineKey after,
+            int limit) {
+        List<CompleteEvaluation> result = register(TimelineKey.pageQuery(em, CompleteEvaluation.class, restaurantId,
+                from, to, after, limit).getResultList());
         for (CompleteEvaluation evaluation : result) {
             evaluation.setGrades(new LinkedHashSet<>(gradeMapper.findByEvaluationId(evaluation.getId())));
-            addToCache(evaluation);
         }
         return result;
     }
 
+    /**
+     * Commentaires d'un restaurant en projection {id, date, utilisateur,
+     * commentaire}, sans entité ni grades (vue détail).
+     */
+    public List<Object[]> findCommentRowsByRestaurantId(int restaurantId) {
+        List<Object[]> rows = em.createQuery("SELECT c.id, c.visitDate, c.username, t.text, t.compressedText "
+                + "FROM CompleteEvaluation c JOIN c.commentText t WHERE c.restaurant.id = :restaurantId ORDER BY c.id", Object[].class)
+                .setParameter("restaurantId", restaurantId)
+                .getResultList();
+        List<Object[]> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            // Texte en clair (CLOB) ou compressé (BLOB, décompressé par le convertisseur)
+            result.add(new Object[] { row[0], row[1], row[2], row[3] != null ? row[3] : row[4] });
+        }
+        return Collections.unmodifiableList(result);
+    }
+
     /**
      * Recherche les évaluations par utilisateur (normalisation en majuscules) et
      * hydrate leurs grades.
      */
-    public Set<CompleteEvaluation> findByUsername(String username) {
+    public List<CompleteEvaluation> findByUsername(String username) {
         if (username == null)
-            return new LinkedHashSet<>();
+            return List.of();
         TypedQuery<CompleteEvaluation> query = em.createNamedQuery("CompleteEvaluation.findByUsername",
                 CompleteEvaluation.class);
         query.setParameter("username", username.toUpperCase());
-        List<CompleteEvaluation> resultList = query.getResultList();
-        Set<CompleteEvaluation> result = new LinkedHashSet<>(resultList);
+        List<CompleteEvaluation> result = register(query.getResultList());
         for (CompleteEvaluation evaluation : result) {
             evaluation.setGrades(new LinkedHashSet<>(gradeMapper.findByEvaluationId(evaluation.getId())));
-            addToCache(evaluation);
         }
         return result;
     }
+
+    private ChildBatchLoader<CompleteEvaluation> restaurantLoader() {
+        return childLoader(BY_RESTAURANT, RestaurantMapper.class, evaluation -> evaluation.getRestaurant().getId());
+    }
+
+    private void forget(CompleteEvaluation evaluation) {
+        gradeMapper.forgetEvaluation(evaluation.getId());
+        if (evaluation.getRestaurant() != null)
+            restaurantLoader().forget(evaluation.getRestaurant().getId());
+    }
 }
@@ -3,20 +3,23 @@ package ch.hearc.ig.guideresto.persistence;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import java.util.List;
-import java.util.LinkedHashSet;
-import java.util.Set;
 
 /**
  * Data Mapper JPA pour
  * {@link ch.hearc.ig.guideresto.business.EvaluationCriteria}.
  * Utilise une Identity Map (thread-local via {@link AbstractMapper}) pour
  * garantir une instance par id.
- * Fournit des recherches par nom via NamedQuery.
+ * Fournit des recherches par nom via NamedQuery, servies par l'index des noms
+ * quand le cache contient tous les critères.
  */
 public class EvaluationCriteriaMapper extends AbstractMapper<ch.hearc.ig.guideresto.business.EvaluationCriteria> {
+    private static final String BY_NAME = "name";
+
     private final EntityManager em;
 
     public EvaluationCriteriaMapper(EntityManager em) {
+        super(List.of(new IndexDefinition<>(BY_NAME, ch.hearc.ig.guideresto.business.EvaluationCriteria::getName,
+                true)));
         this.em = em;
     }
 
@@ -34,14 +37,12 @@ public class EvaluationCriteriaMapper extends AbstractMapper<ch.hearc.ig.guidere
     }
 
     @Override
-    public Set<ch.hearc.ig.guideresto.business.EvaluationCriteria> findAll() {
+    public List<ch.hearc.ig.guideresto.business.EvaluationCriteria> findAll() {
+        long version = cacheVersion();
         TypedQuery<ch.hearc.ig.guideresto.business.EvaluationCriteria> query = em.createNamedQuery(
                 "EvaluationCriteria.findAll", ch.hearc.ig.guideresto.business.EvaluationCriteria.class);
-        List<ch.hearc.ig.guideresto.business.EvaluationCriteria> resultList = query.getResultList();
-        Set<ch.hearc.ig.guideresto.business.EvaluationCriteria> result = new LinkedHashSet<>(resultList);
-        for (ch.hearc.ig.guideresto.business.EvaluationCriteria ec : result) {
-            addToCache(ec);
-        }
+        List<ch.hearc.ig.guideresto.business.EvaluationCriteria> result = register(query.getResultList());
+        markCacheAuthoritative(version);
         return result;
     }
 
@@ -52,6 +53,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<ch.hearc.ig.guidere
             return null;
         em.persist(object);
         addToCache(object);
+        tableChanged(em);
         return object;
     }
 
@@ -61,6 +63,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<ch.hearc.ig.guidere
             return false;
         ch.hearc.ig.guideresto.business.EvaluationCriteria managed = em.merge(object);
         addToCache(managed);
+        tableChanged(em);
         return true;
     }
 
@@ -71,6 +74,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<ch.hearc.ig.guidere
         ch.hearc.ig.guideresto.business.EvaluationCriteria managed = em.contains(object) ? object : em.merge(object);
         em.remove(managed);
         removeFromCache(object.getId());
+        tableChanged(em);
         return true;
     }
 
@@ -87,17 +91,40 @@ public class EvaluationCriteriaMapper extends AbstractMapper<ch.hearc.ig.guidere
      * Recherche des critères dont le nom contient la chaîne donnée (normalisation
      * en majuscules).
      */
-    public Set<ch.hearc.ig.guideresto.business.EvaluationCriteria> findByName(String namePart) {
+    public List<ch.hearc.ig.guideresto.business.EvaluationCriteria> findByName(String namePart) {
         if (namePart == null)
-            return new LinkedHashSet<>();
+            return List.of();
+        String needle = SecondaryIndex.normalize(namePart);
+        if (isCacheAuthoritative())
+            return scanIndex(BY_NAME, key -> key.contains(needle));
         TypedQuery<ch.hearc.ig.guideresto.business.EvaluationCriteria> query = em.createNamedQuery(
                 "EvaluationCriteria.findByName", ch.hearc.ig.guideresto.business.EvaluationCriteria.class);
-        query.setParameter("name", "%" + namePart.toUpperCase() + "%");
-        List<ch.hearc.ig.guideresto.business.EvaluationCriteria> resultList = query.getResultList();
-        Set<ch.hearc.ig.guideresto.business.EvaluationCriteria> result = new LinkedHashSet<>(resultList);
-        for (ch.hearc.ig.guideresto.business.EvaluationCriteria ec : result) {
-            addToCache(ec);
-        }
+        query.setParameter("name", "%" + needle + "%");
+        List<ch.hearc.ig.guideresto.business.EvaluationCriteria> result = register(query.getResultList());
         return result;
     }
+
+    /**
+     * Recherche le critère par son nom exact (sans casse); le nom est unique.
+     *
+     * @return le critère ou {@code null} si absent
+     */
+    public ch.hearc.ig.guideresto.business.EvaluationCriteria findByExactName(String name) {
+        if (name == null)
+            return null;
+        List<ch.hearc.ig.guideresto.business.EvaluationCriteria> cached = findInIndex(BY_NAME, name);
+        if (!cached.isEmpty())
+            return cached.get(0);
+        if (isCacheAuthoritative())
+            return null;
+        TypedQuery<ch.hearc.ig.guideresto.business.EvaluationCriteria> query = em.createNamedQuery(
+                "EvaluationCriteria.findByExactName", ch.hearc.ig.guideresto.business.EvaluationCriteria.class);
+        query.setParameter("name", SecondaryIndex.normalize(name));
+        List<ch.hearc.ig.guideresto.business.EvaluationCriteria> resultList = query.getResultList();
+        if (resultList.isEmpty())
+            return null;
+        ch.hearc.ig.guideresto.business.EvaluationCriteria ec = resultList.get(0);
+        addToCache(ec);
+        return ec;
+    }
 }
@@ -0,0 +1,299 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.TypedQuery;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Hibernate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Plans de chargement appris par cas d'utilisation.
+ *
+ * Pendant un {@link UseCase}, les entités lues par les mappers sont suivies:
+ * pour chaque association LAZY connue encore non chargée à la lecture, on
+ * note si elle a été initialisée avant la fin du cas d'utilisation. Après
+ * {@value #WARM_UP} exécutions, une association utilisée dans au moins
+ * {@value #APPLY_RATIO} des cas est ajoutée à l'entity graph
+ * ({@code jakarta.persistence.loadgraph}) des requêtes de ce cas; elle en est
+ * retirée si son taux d'usage tombe sous {@value #REVERT_RATIO}.
+ *
+ * Une association chargée par le plan ne peut plus être observée: une
+ * exécution sur {@value #PROBE_INTERVAL} tourne sans plan pour mesurer
+ * l'usage réel.
+ *
+ * Un plan précharge au plus une collection par entité racine (la plus
+ * utilisée): deux collections jointes dans une même requête en feraient le
+ * produit cartésien. Les autres sont lues au premier accès, en une requête
+ * pour toutes les entités du résultat ({@code FetchMode.SUBSELECT}).
+ *
+ * Le cas d'utilisation courant est propre au thread; les statistiques sont
+ * partagées (thread-safe).
+ */
+public class FetchPlanAdvisor {
+
+    private static final Logger logger = LogManager.getLogger(FetchPlanAdvisor.class);
+
+    static final int WARM_UP = 5;
+    static final double APPLY_RATIO = 0.6;
+    static final double REVERT_RATIO = 0.2;
+    static final int PROBE_INTERVAL = 10;
+    // Poids d'une exécution dans la moyenne mobile du taux d'usage
+    private static final double SMOOTHING = 0.2;
+    // Entités suivies au plus par exécution
+    private static final int MAX_TRACKED = 10_000;
+
+    private static final ThreadLocal<UseCase> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Association LAZY observable: {@code path} est le chemin de l'entity graph
+     * (ex. {@code address.city}).
+     */
+    private record Association(Class<?> root, String path, boolean collection, Function<Object, Object> value) {
+    }
+
+    private static final List<Association> ASSOCIATIONS = List.of(
+            association(Restaurant.class, "type", false, Restaurant::getType),
+            association(Restaurant.class, "address.city", false,
+                    r -> r.getAddress() == null ? null : r.getAddress().getCity()),
+            association(Restaurant.class, "likes", true, Restaurant::getLikes),
+            association(Restaurant.class, "comments", true, Restaurant::getComments),
+            association(Grade.class, "criteria", false, Grade::getCriteria));
+
+    /**
+     * Décision courante pour une association d'un cas d'utilisation.
+     *
+     * @param usage taux d'usage lissé quand l'association n'est pas préchargée
+     */
+    public record Decision(String useCase, String association, boolean applied, double usage, long samples) {
+    }
+
+    private static final class PathStats {
+        double usage;
+        long samples;
+        boolean applied;
+    }
+
+    private static final class UseCaseStats {
+        final Map<String, PathStats> paths = new LinkedHashMap<>();
+        long executions;
+    }
+
+    private final Map<String, UseCaseStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Exécution d'un cas d'utilisation sur le thread courant; à fermer
+     * (try-with-resources) une fois les données affichées.
+     */
+    public final class UseCase implements AutoCloseable {
+        private final String name;
+        private final UseCase previous;
+        private final boolean probe;
+        private final Set<String> plan;
+        // entité -> associations non chargées à la lecture
+        private final Map<Object, List<Association>> tracked = new IdentityHashMap<>();
+
+        private UseCase(String name, UseCase previous, boolean probe, Set<String> plan) {
+            this.name = name;
+            this.previous = previous;
+            this.probe = probe;
+            this.plan = plan;
+        }
+
+        private void track(Object entity) {
+            if (tracked.size() >= MAX_TRACKED || tracked.containsKey(entity))
+                return;
+            Class<?> type = Hibernate.getClass(entity);
+            List<Association> pending = new ArrayList<>();
+            for (Association association : ASSOCIATIONS) {
+                if (association.root() != type)
+                    continue;
+                Object value = association.value().apply(entity);
+                if (value != null && !Hibernate.isInitialized(value))
+                    pending.add(association);
+            }
+            tracked.put(entity, pending);
+        }
+
+        private <T> void applyTo(TypedQuery<T> query, EntityManager em, Class<T> root) {
+            EntityGraph<T> graph = graphFor(em, root);
+            if (graph != null)
+                query.setHint("jakarta.persistence.loadgraph", graph);
+        }
+
+        private <T> EntityGraph<T> graphFor(EntityManager em, Class<T> root) {
+            EntityGraph<T> graph = null;
+            boolean collection = false;
+            for (Association association : ASSOCIATIONS) {
+                if (association.root() != root || !plan.contains(association.path()))
+                    continue;
+                if (association.collection()) {
+                    if (collection)
+                        continue;
+                    collection = true;
+                }
+                if (graph == null)
+                    graph = em.createEntityGraph(root);
+                String[] parts = association.path().split("\\.");
+                if (parts.length == 1) {
+                    graph.addAttributeNodes(parts[0]);
+                } else {
+                    Subgraph<Object> subgraph = graph.addSubgraph(parts[0]);
+                    subgraph.addAttributeNodes(parts[1]);
+                }
+            }
+            return graph;
+        }
+
+        @Override
+        public void close() {
+            CURRENT.set(previous);
+            if (previous == null)
+                CURRENT.remove();
+            // Usage observé: associations non chargées à la lecture puis initialisées
+            Map<String, int[]> observed = new LinkedHashMap<>();
+            tracked.forEach((entity, pending) -> {
+                for (Association association : pending) {
+                    int[] count = observed.computeIfAbsent(association.path(), p -> new int[2]);
+                    count[0]++;
+                    if (Hibernate.isInitialized(association.value().apply(entity)))
+                        count[1]++;
+                }
+            });
+            record(name, probe, observed);
+        }
+    }
+
+    /**
+     * Ouvre un cas d'utilisation sur le thread courant, avec le plan appris
+     * pour ce nom (sauf exécution de sondage).
+     */
+    public UseCase begin(String name) {
+        UseCaseStats useCase = stats.computeIfAbsent(name, n -> new UseCaseStats());
+        boolean probe;
+        Set<String> plan = new TreeSet<>();
+        synchronized (useCase) {
+            useCase.executions++;
+            probe = useCase.executions % PROBE_INTERVAL == 0;
+            if (!probe) {
+                // Une seule collection par racine: la plus utilisée
+                Map<Class<?>, String> collections = new HashMap<>();
+                Map<Class<?>, Double> collectionUsage = new HashMap<>();
+                useCase.paths.forEach((path, s) -> {
+                    if (!s.applied)
+                        return;
+                    for (Association association : ASSOCIATIONS) {
+                        if (!association.path().equals(path))
+                            continue;
+                        if (!association.collection()) {
+                            plan.add(path);
+                        } else if (s.usage > collectionUsage.getOrDefault(association.root(), -1.0)) {
+                            collections.put(association.root(), path);
+                            collectionUsage.put(association.root(), s.usage);
+                        }
+                    }
+                });
+                plan.addAll(collections.values());
+            }
+        }
+        UseCase current = new UseCase(name, CURRENT.get(), probe, plan);
+        CURRENT.set(current);
+        return current;
+    }
+
+    /**
+     * Décisions courantes de tous les cas d'utilisation.
+     */
+    public List<Decision> report() {
+        List<Decision> decisions = new ArrayList<>();
+        stats.forEach((name, useCase) -> {
+            synchronized (useCase) {
+                useCase.paths.forEach((path, s) -> decisions
+                        .add(new Decision(name, path, s.applied, s.usage, s.samples)));
+            }
+        });
+        return decisions;
+    }
+
+    /**
+     * Suit des entités lues dans le cas d'utilisation courant (sans effet hors
+     * cas d'utilisation).
+     */
+    static void track(List<?> entities) {
+        UseCase current = CURRENT.get();
+        if (current == null)
+            return;
+        for (Object entity : entities) {
+            current.track(entity);
+        }
+    }
+
+    static void track(Object entity) {
+        UseCase current = CURRENT.get();
+        if (current != null && entity != null)
+            current.track(entity);
+    }
+
+    /**
+     * Ajoute à la requête l'entity graph du cas d'utilisation courant, s'il en a un.
+     */
+    static <T> void applyTo(TypedQuery<T> query, EntityManager em, Class<T> root) {
+        UseCase current = CURRENT.get();
+        if (current != null)
+            current.applyTo(query, em, root);
+    }
+
+    /**
+     * Propriétés à passer à {@code EntityManager.find} pour le cas
+     * d'utilisation courant (vide sans plan).
+     */
+    static Map<String, Object> findHints(EntityManager em, Class<?> root) {
+        UseCase current = CURRENT.get();
+        if (current == null)
+            return Map.of();
+        EntityGraph<?> graph = current.graphFor(em, root);
+        return graph == null ? Map.of() : Map.of("jakarta.persistence.loadgraph", graph);
+    }
+
+    private void record(String name, boolean probe, Map<String, int[]> observed) {
+        UseCaseStats useCase = stats.get(name);
+        synchronized (useCase) {
+            observed.forEach((path, count) -> {
+                PathStats s = useCase.paths.computeIfAbsent(path, p -> new PathStats());
+                double sample = (double) count[1] / count[0];
+                s.usage = s.samples == 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * s.usage;
+                s.samples++;
+                boolean applied = s.applied
+                        ? s.usage >= REVERT_RATIO
+                        : s.samples >= WARM_UP && s.usage >= APPLY_RATIO;
+                if (applied != s.applied) {
+                    s.applied = applied;
+                    logger.info("Plan de chargement {} : {} {} (usage {}, {} échantillons{})", name,
+                            applied ? "précharge" : "ne précharge plus", path, String.format("%.2f", s.usage),
+                            s.samples, probe ? ", sondage" : "");
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Association association(Class<T> root, String path, boolean collection,
+            Function<T, Object> value) {
+        return new Association(root, path, collection, entity -> value.apply((T) entity));
+    }
+}
@@ -5,21 +5,46 @@ import ch.hearc.ig.guideresto.business.EvaluationCriteria;
 import ch.hearc.ig.guideresto.business.Grade;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Data Mapper JPA pour {@link Grade}.
  * Utilise une Identity Map (thread-local) pour réutiliser les instances par id.
  * Propose des finders par évaluation/critère via NamedQueries et une requête
- * JPQL ad-hoc.
+ * JPQL ad-hoc. Les grades par évaluation sont chargés par lots
+ * ({@link ChildBatchLoader}) pour toutes les évaluations du dernier résultat.
+ * Une note est unique par (évaluation, critère), contrainte
+ * {@value #NATURAL_KEY_CONSTRAINT}: {@link #upsert} l'écrit en une seule
+ * instruction MERGE.
  */
 public class GradeMapper extends AbstractMapper<Grade> {
+    public static final String NATURAL_KEY_CONSTRAINT = "UQ_NOTES_COMM_CRIT";
+
+    private static final String BY_EVALUATION = "evaluation";
+    private static final String BY_NATURAL_KEY = "evaluationCriteria";
+
+    // Une ligne source par note: MERGE ... USING (<ligne> UNION ALL <ligne> ...)
+    private static final String MERGE_INTO = "MERGE INTO NOTES n USING (";
+    private static final String MERGE_SOURCE_ROW = "SELECT ?%d fk_comm, ?%d fk_crit, ?%d note FROM DUAL";
+    private static final String MERGE_ACTIONS = ") s ON (n.fk_comm = s.fk_comm AND n.fk_crit = s.fk_crit) "
+            + "WHEN MATCHED THEN UPDATE SET n.note = s.note "
+            + "WHEN NOT MATCHED THEN INSERT (note, fk_comm, fk_crit) VALUES (s.note, s.fk_comm, s.fk_crit)";
+
     private final EntityManager em;
 
     public GradeMapper(EntityManager em) {
+        super(List.of(new IndexDefinition<>(BY_NATURAL_KEY, GradeMapper::naturalKey, false)));
         this.em = em;
     }
 
@@ -27,23 +52,23 @@ public class GradeMapper extends AbstractMapper<Grade> {
     @Override
     public Grade findById(int id) {
         Grade cached = findInCache(id);
-        if (cached != null)
+        if (cached != null) {
+            FetchPlanAdvisor.track(cached);
             return cached;
-        Grade grade = em.find(Grade.class, id);
+        }
+        Grade grade = em.find(Grade.class, id, FetchPlanAdvisor.findHints(em, Grade.class));
         if (grade != null) {
             addToCache(grade);
+            FetchPlanAdvisor.track(grade);
         }
         return grade;
     }
 
     @Override
-    public Set<Grade> findAll() {
+    public List<Grade> findAll() {
         TypedQuery<Grade> query = em.createNamedQuery("Grade.findAll", Grade.class);
-        List<Grade> resultList = query.getResultList();
-        Set<Grade> result = new LinkedHashSet<>(resultList);
-        for (Grade grade : result) {
-            addToCache(grade);
-        }
+        FetchPlanAdvisor.applyTo(query, em, Grade.class);
+        List<Grade> result = register(query.getResultList());
         return result;
     }
 
@@ -53,6 +78,8 @@ public class GradeMapper extends AbstractMapper<Grade> {
             return null;
         em.persist(object);
         addToCache(object);
+        discardOnRollback(em);
+        forgetEvaluation(object);
         return object;
     }
 
@@ -62,6 +89,8 @@ public class GradeMapper extends AbstractMapper<Grade> {
             return false;
         Grade managed = em.merge(object);
         addToCache(managed);
+        discardOnRollback(em);
+        forgetEvaluation(managed);
         return true;
     }
 
@@ -72,6 +101,7 @@ public class GradeMapper extends AbstractMapper<Grade> {
         Grade managed = em.contains(object) ? object : em.merge(object);
         em.remove(managed);
         removeFromCache(object.getId());
+        forgetEvaluation(managed);
         return true;
     }
 
@@ -85,38 +115,57 @@ public class GradeMapper extends AbstractMapper<Grade> {
     }
 
     // Méthodes de recherche utiles
-    public Set<Grade> findByEvaluationId(int evaluationId) {
-        TypedQuery<Grade> query = em.createNamedQuery("Grade.findByEvaluation", Grade.class);
-        query.setParameter("evaluationId", evaluationId);
-        List<Grade> resultList = query.getResultList();
-        Set<Grade> result = new LinkedHashSet<>(resultList);
-        for (Grade grade : result) {
-            addToCache(grade);
-        }
-        return result;
+    /**
+     * Grades d'une évaluation; si elle vient du dernier résultat du
+     * {@link CompleteEvaluationMapper}, les grades de toutes ses évaluations
+     * sont lus en une requête.
+     */
+    public List<Grade> findByEvaluationId(int evaluationId) {
+        return evaluationLoader().load(evaluationId, ids -> {
+            TypedQuery<Grade> query = em.createNamedQuery("Grade.findByEvaluations", Grade.class);
+            query.setParameter("evaluationIds", ids);
+            FetchPlanAdvisor.applyTo(query, em, Grade.class);
+            return register(query.getResultList());
+        });
+    }
+
+    /**
+     * Retire une évaluation du lot courant (ses grades ont changé).
+     */
+    void forgetEvaluation(Integer evaluationId) {
+        evaluationLoader().forget(evaluationId);
     }
 
-    public Set<Grade> findByEvaluation(CompleteEvaluation evaluation) {
+    /**
+     * Grades de toutes les évaluations d'un restaurant en une requête:
+     * lignes {evaluationId, nom du critère, note}, triées par évaluation.
+     */
+    public List<Object[]> findGradeRowsByRestaurantId(int restaurantId) {
+        return Collections.unmodifiableList(em.createQuery("SELECT g.evaluation.id, g.criteria.name, g.grade "
+                + "FROM Grade g WHERE g.evaluation.restaurant.id = :restaurantId ORDER BY g.evaluation.id, g.id",
+                Object[].class)
+                .setParameter("restaurantId", restaurantId)
+                .getResultList());
+    }
+
+    public List<Grade> findByEvaluation(CompleteEvaluation evaluation) {
         if (evaluation == null || evaluation.getId() == null) {
-            return new LinkedHashSet<>();
+            return List.of();
         }
         return findByEvaluationId(evaluation.getId());
     }
 
-    public Set<Grade> findByCriteriaId(int criteriaId) {
+    public List<Grade> findByCriteriaId(int criteriaId) {
         TypedQuery<Grade> query = em.createNamedQuery("Grade.findByCriteria", Grade.class);
         query.setParameter("criteriaId", criteriaId);
-        List<Grade> resultList = query.getResultList();
-        Set<Grade> result = new LinkedHashSet<>(resultList);
-        for (Grade grade : result) {
-            addToCache(grade);
-        }
+        FetchPlanAdvisor.applyTo(query, em, Grade.class);
+        List<Grade> result = register(query.getResultList());
         return result;
     }
 
-    public Set<Grade> findByCriteria(EvaluationCriteria criteria) {
+    public List<Grade> findByCriteria(EvaluationCriteria criteria) {
         if (criteria == null || criteria.getId() == null) {
-            return new LinkedHashSet<>();
+            return List.of();
         }
         return findByCriteriaId(criteria.getId());
     }
@@ -138,4 +187,193 @@ public class GradeMapper extends AbstractMapper<Grade> {
         }
         return null;
     }
+
+    /**
+     * Écrit la note d'une évaluation pour un critère, qu'elle existe ou non,
+     * en un aller-retour (MERGE). L'instance en mémoire éventuelle prend la
+     * nouvelle valeur sans être marquée comme modifiée.
+     *
+     * Les modifications en attente doivent être écrites avant (flush de
+     * l'appelant): sinon la requête native les écrit elle-même.
+     *
+     * Deux insertions concurrentes de la même note peuvent encore se heurter
+     * à {@value #NATURAL_KEY_CONSTRAINT}: l'appelant rejoue alors la
+     * transaction, le MERGE trouvant cette fois la ligne.
+     */
+    public void upsert(int evaluationId, int criteriaId, int value) {
+        upsertAll(evaluationId, Map.of(criteriaId, value));
+    }
+
+    /**
+     * Écrit plusieurs notes d'une évaluation en une seule instruction MERGE.
+     *
+     * @param gradesByCriteria id du critère → note
+     */
+    public void upsertAll(int evaluationId, Map<Integer, Integer> gradesByCriteria) {
+        if (gradesByCriteria.isEmpty())
+            return;
+        StringBuilder sql = new StringBuilder(MERGE_INTO);
+        List<Object> params = new ArrayList<>(gradesByCriteria.size() * 3);
+        for (Map.Entry<Integer, Integer> grade : gradesByCriteria.entrySet()) {
+            if (!params.isEmpty())
+                sql.append(" UNION ALL ");
+            sql.append(String.format(MERGE_SOURCE_ROW, params.size() + 1, params.size() + 2, params.size() + 3));
+            params.add(evaluationId);
+            params.add(grade.getKey());
+            params.add(grade.getValue());
+        }
+        Query merge = em.createNativeQuery(sql.append(MERGE_ACTIONS).toString());
+        for (int i = 0; i < params.size(); i++) {
+            merge.setParameter(i + 1, params.get(i));
+        }
+        merge.executeUpdate();
+        tableChanged(em);
+        gradesByCriteria.forEach((criteriaId, value) -> syncCached(evaluationId, criteriaId, value));
+        forgetEvaluation(evaluationId);
+    }
+
+    /**
+     * Somme et nombre des notes par restaurant (agrégat SQL).
+     *
+     * @return id du restaurant → {somme, nombre}
+     */
+    public Map<Integer, long[]> sumGradesByRestaurant() {
+        List<Object[]> rows = em.createQuery(
+                "SELECT g.evaluation.restaurant.id, SUM(g.grade), COUNT(g) FROM Grade g "
+                        + "GROUP BY g.evaluation.restaurant.id",
+                Object[].class).getResultList();
+        Map<Integer, long[]> sums = new HashMap<>();
+        for (Object[] row : rows) {
+            sums.put((Integer) row[0], new long[] { ((Number) row[1]).longValue(), (Long) row[2] });
+        }
+        return sums;
+    }
+
+    /**
+     * Somme et nombre des notes d'un restaurant (agrégat SQL).
+     *
+     * @return {somme, nombre}
+     */
+    public long[] sumGrades(int restaurantId) {
+        Object[] row = em.createQuery(
+                "SELECT SUM(g.grade), COUNT(g) FROM Grade g WHERE g.evaluation.restaurant.id = :restaurantId",
+                Object[].class).setParameter("restaurantId", restaurantId).getSingleResult();
+        return new long[] { row[0] == null ? 0 : ((Number) row[0]).longValue(), (Long) row[1] };
+    }
+
+    /**
+     * Histogramme des notes calculé en base: lignes {clé, note, nombre} triées
+     * par clé puis note, sans hydrater de {@link Grade}.
+     * La clé est l'id du critère, ou l'id du restaurant si {@code byRestaurant}.
+     * Chaque filtre {@code null} est ignoré; la période porte sur la date de
+     * l'évaluation (COMMENTAIRES.DATE_EVAL), bornes [from, to[.
+     */
+    public List<Object[]> findGradeHistogram(boolean byRestaurant, Integer criteriaId, Integer restaurantId,
+            Integer typeId, Integer cityId, Date from, Date to) {
+        String key = byRestaurant ? "e.restaurant.id" : "g.criteria.id";
+        StringBuilder jpql = new StringBuilder("SELECT ").append(key)
+                .append(", g.grade, COUNT(g) FROM Grade g JOIN g.evaluation e WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+        if (criteriaId != null) {
+            jpql.append(" AND g.criteria.id = :criteriaId");
+            params.put("criteriaId", criteriaId);
+        }
+        if (restaurantId != null) {
+            jpql.append(" AND e.restaurant.id = :restaurantId");
+            params.put("restaurantId", restaurantId);
+        }
+        if (typeId != null) {
+            jpql.append(" AND e.restaurant.type.id = :typeId");
+            params.put("typeId", typeId);
+        }
+        if (cityId != null) {
+            jpql.append(" AND e.restaurant.address.city.id = :cityId");
+            params.put("cityId", cityId);
+        }
+        if (from != null) {
+            jpql.append(" AND e.visitDate >= :from");
+            params.put("from", from);
+        }
+        if (to != null) {
+            jpql.append(" AND e.visitDate < :to");
+            params.put("to", to);
+        }
+        jpql.append(" GROUP BY ").append(key).append(", g.grade ORDER BY ").append(key).append(", g.grade");
+        TypedQuery<Object[]> query = em.createQuery(jpql.toString(), Object[].class);
+        params.forEach(query::setParameter);
+        return Collections.unmodifiableList(query.getResultList());
+    }
+
+    /**
+     * Parcourt NOTES agrégées par (restaurant, critère, note): lignes
+     * {restaurantId, criteriaId, note, nombre}, lues en flux.
+     * Le flux doit être fermé par l'appelant.
+     */
+    public Stream<Object[]> streamGradeCounts() {
+        return em.createQuery("SELECT e.restaurant.id, g.criteria.id, g.grade, COUNT(g) FROM Grade g "
+                + "JOIN g.evaluation e GROUP BY e.restaurant.id, g.criteria.id, g.grade", Object[].class)
+                .getResultStream();
+    }
+
+    /**
+     * Reporte une note écrite par MERGE sur les instances de ce scope: la
+     * note en cache, ou à défaut la collection déjà chargée de l'évaluation.
+     */
+    private void syncCached(int evaluationId, int criteriaId, int value) {
+        String key = SecondaryIndex.normalize(naturalKey(evaluationId, criteriaId));
+        SecondaryIndex<Grade> index = index(BY_NATURAL_KEY);
+        boolean found = false;
+        for (Integer id : index.idsFor(key)) {
+            Grade grade = findInCache(id);
+            if (grade != null && key.equals(index.keyOf(grade))) {
+                setCommittedGrade(grade, value);
+                found = true;
+            }
+        }
+        if (found)
+            return;
+        CompleteEvaluation evaluation = IdentityMapContext.current()
+                .<CompleteEvaluation>mapFor(CompleteEvaluationMapper.class).get(evaluationId);
+        if (evaluation != null && Hibernate.isInitialized(evaluation.getGrades())) {
+            Grade inserted = findOneByEvaluationAndCriteria(evaluationId, criteriaId);
+            if (inserted != null)
+                evaluation.getGrades().add(inserted);
+        }
+    }
+
+    /**
+     * Donne à une note gérée la valeur déjà écrite en base: le passage par
+     * lecture seule remplace l'état de référence d'Hibernate par l'état
+     * courant, le flush n'émet donc pas d'UPDATE.
+     */
+    private void setCommittedGrade(Grade grade, int value) {
+        if (!em.contains(grade)) {
+            grade.setGrade(value);
+            return;
+        }
+        Session session = em.unwrap(Session.class);
+        boolean readOnly = session.isReadOnly(grade);
+        session.setReadOnly(grade, true);
+        grade.setGrade(value);
+        session.setReadOnly(grade, readOnly);
+    }
+
+    private static String naturalKey(Grade grade) {
+        if (grade.getEvaluation() == null || grade.getCriteria() == null)
+            return null;
+        return naturalKey(grade.getEvaluation().getId(), grade.getCriteria().getId());
+    }
+
+    private static String naturalKey(Integer evaluationId, Integer criteriaId) {
+        return evaluationId + ":" + criteriaId;
+    }
+
+    private ChildBatchLoader<Grade> evaluationLoader() {
+        return childLoader(BY_EVALUATION, CompleteEvaluationMapper.class, grade -> grade.getEvaluation().getId());
+    }
+
+    private void forgetEvaluation(Grade grade) {
+        if (grade.getEvaluation() != null)
+            forgetEvaluation(grade.getEvaluation().getId());
+    }
 }
@@ -3,19 +3,51 @@ package ch.hearc.ig.guideresto.persistence;
 import ch.hearc.ig.guideresto.business.IBusinessObject;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * IdentityMapContext conserve, par thread (scope par requête/transaction),
  * une Identity Map par classe de mapper. Chaque map associe id → instance unique.
+ * Les index secondaires déclarés par les mappers et les lots de
+ * {@link ChildBatchLoader} partagent le même scope.
+ *
+ * Un cache complet (findAll) n'est autoritaire que tant que la table n'a pas
+ * changé: chaque mapper a une version partagée entre threads, incrémentée
+ * après le commit de ses écritures. Les écritures d'autres processus ne sont
+ * pas vues: l'autorité expire aussi après
+ * {@code guideresto.cache.authorityMillis} (60 s par défaut).
  */
 public final class IdentityMapContext {
 
     private static final ThreadLocal<IdentityMapContext> CURRENT = ThreadLocal.withInitial(IdentityMapContext::new);
 
+    private static final long AUTHORITY_MILLIS = Long.getLong("guideresto.cache.authorityMillis", 60_000);
+
+    // key: Mapper class, value: version de la table (écritures validées), partagée entre threads
+    private static final Map<Class<?>, AtomicLong> VERSIONS = new ConcurrentHashMap<>();
+
+    private record Completion(long version, long loadedAt) {
+    }
+
     // key: Mapper class (e.g., CityMapper.class), value: (id -> entity)
     private final Map<Class<?>, Map<Integer, IBusinessObject>> maps = new HashMap<>();
 
+    // key: Mapper class, value: (nom d'index -> index secondaire)
+    private final Map<Class<?>, Map<String, SecondaryIndex<?>>> indexes = new HashMap<>();
+
+    // Mappers dont l'Identity Map contient toute la table (findAll exécuté dans ce scope)
+    private final Map<Class<?>, Completion> completeMappers = new HashMap<>();
+
+    // key: Mapper class, value: dernier résultat de finder (lot des chargements d'enfants)
+    private final Map<Class<?>, List<? extends IBusinessObject>> lastResults = new HashMap<>();
+
+    // key: Mapper class, value: (nom du chargeur -> chargeur groupé d'enfants)
+    private final Map<Class<?>, Map<String, ChildBatchLoader<?>>> loaders = new HashMap<>();
+
     private IdentityMapContext() { }
 
     public static IdentityMapContext current() {
@@ -30,5 +62,63 @@ public final class IdentityMapContext {
     public <T extends IBusinessObject> Map<Integer, T> mapFor(Class<?> mapperClass) {
         return (Map<Integer, T>) maps.computeIfAbsent(mapperClass, k -> new HashMap<>());
     }
-}
 
+    @SuppressWarnings("unchecked")
+    <T extends IBusinessObject> SecondaryIndex<T> indexFor(Class<?> mapperClass, String indexName,
+            Supplier<SecondaryIndex<T>> factory) {
+        return (SecondaryIndex<T>) indexes.computeIfAbsent(mapperClass, k -> new HashMap<>())
+                .computeIfAbsent(indexName, k -> factory.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    <C extends IBusinessObject> ChildBatchLoader<C> loaderFor(Class<?> mapperClass, String loaderName,
+            Supplier<ChildBatchLoader<C>> factory) {
+        return (ChildBatchLoader<C>) loaders.computeIfAbsent(mapperClass, k -> new HashMap<>())
+                .computeIfAbsent(loaderName, k -> factory.get());
+    }
+
+    void rememberResult(Class<?> mapperClass, List<? extends IBusinessObject> rows) {
+        lastResults.put(mapperClass, rows);
+    }
+
+    List<? extends IBusinessObject> lastResult(Class<?> mapperClass) {
+        return lastResults.getOrDefault(mapperClass, List.of());
+    }
+
+    boolean isComplete(Class<?> mapperClass) {
+        Completion completion = completeMappers.get(mapperClass);
+        if (completion == null)
+            return false;
+        if (completion.version() != version(mapperClass)
+                || System.currentTimeMillis() - completion.loadedAt() > AUTHORITY_MILLIS) {
+            completeMappers.remove(mapperClass);
+            return false;
+        }
+        return true;
+    }
+
+    void markComplete(Class<?> mapperClass, long version) {
+        completeMappers.put(mapperClass, new Completion(version, System.currentTimeMillis()));
+    }
+
+    static long version(Class<?> mapperClass) {
+        AtomicLong version = VERSIONS.get(mapperClass);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Signale une écriture validée sur la table d'un mapper: aucun scope ne
+     * peut plus répondre depuis son cache complet.
+     */
+    static void changed(Class<?> mapperClass) {
+        VERSIONS.computeIfAbsent(mapperClass, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Oublie le caractère complet du cache d'un mapper (ex. après une écriture
+     * ensembliste qui contourne l'Identity Map).
+     */
+    public void invalidate(Class<?> mapperClass) {
+        completeMappers.remove(mapperClass);
+    }
+}
@@ -0,0 +1,38 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+
+/**
+ * Nettoyage des textes longs (TEXTES) laissés orphelins par les DELETE
+ * ensemblistes: la cascade JPA des propriétaires ne s'applique pas à ces
+ * instructions.
+ */
+public class LongTextMapper {
+
+    // Limite Oracle du nombre d'éléments d'une liste IN
+    private static final int IN_LIST_LIMIT = 1000;
+
+    private final EntityManager em;
+
+    public LongTextMapper(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Supprime les textes donnés, par lots de {@value #IN_LIST_LIMIT}
+     * (transaction de l'appelant, après la suppression des propriétaires).
+     *
+     * @return nombre de textes supprimés
+     */
+    public int deleteByIds(List<Integer> ids) {
+        int deleted = 0;
+        for (int from = 0; from < ids.size(); from += IN_LIST_LIMIT) {
+            deleted += em.createQuery("DELETE FROM LongText t WHERE t.id IN :ids")
+                    .setParameter("ids", ids.subList(from, Math.min(from + IN_LIST_LIMIT, ids.size())))
+                    .executeUpdate();
+        }
+        return deleted;
+    }
+}
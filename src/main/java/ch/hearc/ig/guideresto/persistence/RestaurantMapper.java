@@ -1,46 +1,70 @@
 package ch.hearc.ig.guideresto.persistence;
 
 import ch.hearc.ig.guideresto.business.*;
+import ch.hearc.ig.guideresto.persistence.jpa.TextCompression;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Data Mapper JPA pour {@link Restaurant}.
  * Utilise une Identity Map (thread-local via {@link AbstractMapper}) pour
  * garantir une instance par id.
  * Fournit des recherches par nom/ville et une requête JPQL typée.
+ * Les recherches par nom sont servies par l'index des noms quand le cache
+ * contient tous les restaurants.
+ * Tient à jour le {@link RestaurantNameIndex} partagé (ordre alphabétique par
+ * type et par ville) après le commit de chaque écriture: une transaction
+ * annulée n'y laisse aucune trace.
  */
 public class RestaurantMapper extends AbstractMapper<Restaurant> {
+    private static final String BY_NAME = "name";
+
+    // Limite Oracle du nombre d'éléments d'une liste IN
+    private static final int IN_LIST_LIMIT = 1000;
+
+    // Projection des écrans de liste: l'aperçu en clair (VARCHAR2, tenu à jour
+    // par Restaurant) évite de lire ou décompresser le texte de TEXTES.
+    private static final String PREVIEW_SELECT = "SELECT r.numero, r.nom, r.adresse, v.code_postal, v.nom_ville, "
+            + "SUBSTR(r.description_apercu, 1, ?1), r.fk_vill "
+            + "FROM RESTAURANTS r JOIN VILLES v ON v.numero = r.fk_vill ";
+
     private final EntityManager em;
+    private final RestaurantNameIndex nameIndex;
 
-    public RestaurantMapper(EntityManager em) {
+    public RestaurantMapper(EntityManager em, RestaurantNameIndex nameIndex) {
+        super(List.of(new IndexDefinition<>(BY_NAME, Restaurant::getName, true)));
         this.em = em;
+        this.nameIndex = nameIndex;
     }
 
     @Override
     public Restaurant findById(int id) {
         Restaurant inCache = findInCache(id);
-        if (inCache != null)
+        if (inCache != null) {
+            FetchPlanAdvisor.track(inCache);
             return inCache;
-        Restaurant restaurant = em.find(Restaurant.class, id);
+        }
+        Restaurant restaurant = em.find(Restaurant.class, id, FetchPlanAdvisor.findHints(em, Restaurant.class));
         if (restaurant != null) {
             addToCache(restaurant);
+            FetchPlanAdvisor.track(restaurant);
         }
         return restaurant;
     }
 
     @Override
-    public Set<Restaurant> findAll() {
+    public List<Restaurant> findAll() {
+        long version = cacheVersion();
         TypedQuery<Restaurant> query = em.createNamedQuery("Restaurant.findAll", Restaurant.class);
-        List<Restaurant> resultList = query.getResultList();
-        Set<Restaurant> restaurants = new LinkedHashSet<>(resultList);
-        for (Restaurant restaurant : restaurants) {
-            addToCache(restaurant);
-        }
+        FetchPlanAdvisor.applyTo(query, em, Restaurant.class);
+        List<Restaurant> restaurants = register(query.getResultList());
+        markCacheAuthoritative(version);
         return restaurants;
     }
 
@@ -50,6 +74,8 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             return null;
         em.persist(restaurant);
         addToCache(restaurant);
+        tableChanged(em);
+        afterCommit(em, () -> indexName(restaurant));
         return restaurant;
     }
 
@@ -59,6 +85,8 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             return false;
         Restaurant managed = em.merge(restaurant);
         addToCache(managed);
+        tableChanged(em);
+        afterCommit(em, () -> indexName(managed));
         return true;
     }
 
@@ -68,10 +96,55 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             return false;
         Restaurant managed = em.contains(restaurant) ? restaurant : em.merge(restaurant);
         em.remove(managed);
-        removeFromCache(restaurant.getId());
+        Integer id = restaurant.getId();
+        removeFromCache(id);
+        tableChanged(em);
+        afterCommit(em, () -> nameIndex.remove(id));
         return true;
     }
 
+    /**
+     * Supprime un restaurant et toutes ses évaluations par DELETE
+     * ensemblistes, dans l'ordre des clés étrangères: NOTES, COMMENTAIRES,
+     * LIKES, RESTAURANTS puis leurs TEXTES (numéros lus au préalable). Aucune
+     * évaluation n'est chargée: le nombre d'instructions ne dépend pas du
+     * nombre d'évaluations. Le contexte de persistance n'est pas mis à jour
+     * (voir l'appelant).
+     *
+     * @return {@code true} si le restaurant a été supprimé
+     */
+    public boolean deleteCascade(int restaurantId) {
+        List<Integer> textIds = new ArrayList<>(em.createQuery("SELECT c.commentText.id FROM CompleteEvaluation c "
+                + "WHERE c.restaurant.id = :restaurantId", Integer.class)
+                .setParameter("restaurantId", restaurantId)
+                .getResultList());
+        textIds.addAll(em.createQuery("SELECT r.descriptionText.id FROM Restaurant r WHERE r.id = :restaurantId",
+                Integer.class)
+                .setParameter("restaurantId", restaurantId)
+                .getResultList());
+        em.createQuery("DELETE FROM Grade g WHERE g.evaluation.id IN "
+                + "(SELECT c.id FROM CompleteEvaluation c WHERE c.restaurant.id = :restaurantId)")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        em.createQuery("DELETE FROM CompleteEvaluation c WHERE c.restaurant.id = :restaurantId")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        em.createQuery("DELETE FROM BasicEvaluation b WHERE b.restaurant.id = :restaurantId")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        int deleted = em.createQuery("DELETE FROM Restaurant r WHERE r.id = :restaurantId")
+                .setParameter("restaurantId", restaurantId)
+                .executeUpdate();
+        new LongTextMapper(em).deleteByIds(textIds);
+        removeFromCache(restaurantId);
+        tableChanged(em);
+        tableChanged(em, GradeMapper.class);
+        tableChanged(em, CompleteEvaluationMapper.class);
+        tableChanged(em, BasicEvaluationMapper.class);
+        afterCommit(em, () -> nameIndex.remove(restaurantId));
+        return deleted == 1;
+    }
+
     @Override
     public boolean deleteById(int id) {
         Restaurant restaurant = findById(id);
@@ -81,45 +154,337 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
         return false;
     }
 
-    public Set<Restaurant> findByName(String name) {
+    public List<Restaurant> findByName(String name) {
         if (name == null)
-            return new LinkedHashSet<>();
+            return List.of();
+        if (isCacheAuthoritative()) {
+            String needle = SecondaryIndex.normalize(name);
+            return scanIndex(BY_NAME, key -> key.contains(needle));
+        }
         TypedQuery<Restaurant> query = em.createNamedQuery("Restaurant.findByName", Restaurant.class);
         query.setParameter("name", "%" + name + "%");
-        List<Restaurant> resultList = query.getResultList();
-        Set<Restaurant> restaurants = new LinkedHashSet<>(resultList);
-        for (Restaurant restaurant : restaurants) {
-            addToCache(restaurant);
-        }
+        FetchPlanAdvisor.applyTo(query, em, Restaurant.class);
+        List<Restaurant> restaurants = register(query.getResultList());
         return restaurants;
     }
 
-    public Set<Restaurant> findByCityName(String cityName) {
+    /**
+     * Recherche les restaurants dont le nom vaut exactement {@code name} (sans
+     * casse).
+     */
+    public List<Restaurant> findByExactName(String name) {
+        if (name == null)
+            return List.of();
+        if (isCacheAuthoritative())
+            return findInIndex(BY_NAME, name);
+        TypedQuery<Restaurant> query = em.createNamedQuery("Restaurant.findByExactName", Restaurant.class);
+        query.setParameter("name", name.trim());
+        FetchPlanAdvisor.applyTo(query, em, Restaurant.class);
+        List<Restaurant> restaurants = register(query.getResultList());
+        return restaurants;
+    }
+
+    public List<Restaurant> findByCityName(String cityName) {
         if (cityName == null)
-            return new LinkedHashSet<>();
+            return List.of();
         TypedQuery<Restaurant> query = em.createNamedQuery("Restaurant.findByCity", Restaurant.class);
         query.setParameter("cityName", "%" + cityName + "%");
-        List<Restaurant> resultList = query.getResultList();
-        Set<Restaurant> restaurants = new LinkedHashSet<>(resultList);
-        for (Restaurant restaurant : restaurants) {
-            addToCache(restaurant);
-        }
+        FetchPlanAdvisor.applyTo(query, em, Restaurant.class);
+        List<Restaurant> restaurants = register(query.getResultList());
         return restaurants;
     }
 
     /**
-     * Recherche les restaurants d'un type, triés par nom (requête JPQL explicite).
+     * Aperçus de tous les restaurants, triés par nom.
+     *
+     * @param maxChars nombre de caractères de description lus (au plus
+     *                 {@link Restaurant#DESCRIPTION_PREVIEW_LENGTH})
+     */
+    public List<RestaurantPreview> findPreviews(int maxChars) {
+        return previews(PREVIEW_SELECT + "ORDER BY r.nom", maxChars, null);
+    }
+
+    public List<RestaurantPreview> findPreviewsByName(String name, int maxChars) {
+        if (name == null)
+            return List.of();
+        return previews(PREVIEW_SELECT + "WHERE UPPER(r.nom) LIKE UPPER(?2) ORDER BY r.nom", maxChars,
+                "%" + name + "%");
+    }
+
+    public List<RestaurantPreview> findPreviewsByCityName(String cityName, int maxChars) {
+        if (cityName == null)
+            return List.of();
+        return previews(PREVIEW_SELECT + "WHERE UPPER(v.nom_ville) LIKE UPPER(?2) ORDER BY r.nom", maxChars,
+                "%" + cityName + "%");
+    }
+
+    public List<RestaurantPreview> findPreviewsByType(int typeId, int maxChars) {
+        return previews(PREVIEW_SELECT + "WHERE r.fk_type = ?2 ORDER BY r.nom", maxChars, typeId);
+    }
+
+    /**
+     * Aperçus des restaurants donnés, dans l'ordre des ids (réhydratation
+     * d'un résultat mis en cache). Les ids disparus sont ignorés.
      */
-    public Set<Restaurant> findByType(int typeId) {
+    public List<RestaurantPreview> findPreviewsByIds(List<Integer> ids, int maxChars) {
+        Map<Integer, RestaurantPreview> byId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_LIST_LIMIT) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_LIST_LIMIT, ids.size()));
+            for (RestaurantPreview preview : previews(PREVIEW_SELECT + "WHERE r.numero IN (?2)", maxChars, chunk)) {
+                byId.put(preview.id(), preview);
+            }
+        }
+        List<RestaurantPreview> result = new ArrayList<>(byId.size());
+        for (Integer id : ids) {
+            RestaurantPreview preview = byId.get(id);
+            if (preview != null)
+                result.add(preview);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private List<RestaurantPreview> previews(String sql, int maxChars, Object criterion) {
+        jakarta.persistence.Query query = em.createNativeQuery(sql).setParameter(1, maxChars);
+        if (criterion != null)
+            query.setParameter(2, criterion);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        List<RestaurantPreview> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new RestaurantPreview(((Number) row[0]).intValue(), (String) row[1], (String) row[2],
+                    (String) row[3], (String) row[4], (String) row[5], ((Number) row[6]).intValue()));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Remplit l'aperçu (DESCRIPTION_APERCU) des restaurants qui n'en ont pas,
+     * ex. lignes antérieures à la colonne: en une instruction pour les
+     * descriptions en clair, ligne par ligne pour les descriptions
+     * compressées, décompressées en Java (transaction de l'appelant).
+     *
+     * @return nombre de restaurants mis à jour
+     */
+    public int fillMissingPreviews() {
+        int filled = em.createNativeQuery("UPDATE RESTAURANTS r SET description_apercu = "
+                + "(SELECT DBMS_LOB.SUBSTR(t.texte, ?1, 1) FROM TEXTES t WHERE t.numero = r.fk_desc) "
+                + "WHERE r.description_apercu IS NULL AND EXISTS "
+                + "(SELECT 1 FROM TEXTES t WHERE t.numero = r.fk_desc AND t.texte IS NOT NULL)")
+                .setParameter(1, Restaurant.DESCRIPTION_PREVIEW_LENGTH)
+                .executeUpdate();
+        @SuppressWarnings("unchecked")
+        List<Object[]> compressed = em.createNativeQuery("SELECT r.numero, t.texte_z FROM RESTAURANTS r "
+                + "JOIN TEXTES t ON t.numero = r.fk_desc "
+                + "WHERE r.description_apercu IS NULL AND t.texte_z IS NOT NULL")
+                .getResultList();
+        for (Object[] row : compressed) {
+            String description = TextCompression.decompress(TextCompressionMapper.bytes(row[1]));
+            filled += em.createNativeQuery("UPDATE RESTAURANTS SET description_apercu = ?1 "
+                    + "WHERE numero = ?2 AND description_apercu IS NULL")
+                    .setParameter(1, Restaurant.previewOf(description))
+                    .setParameter(2, ((Number) row[0]).intValue())
+                    .executeUpdate();
+        }
+        if (filled > 0)
+            tableChanged(em);
+        return filled;
+    }
+
+    /**
+     * Nombre de restaurants par id de ville (agrégat SQL, aucune entité chargée).
+     */
+    public Map<Integer, Long> countByCity() {
+        List<Object[]> rows = em.createQuery(
+                "SELECT r.address.city.id, COUNT(r) FROM Restaurant r GROUP BY r.address.city.id", Object[].class)
+                .getResultList();
+        Map<Integer, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put((Integer) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    /**
+     * Recherche les restaurants d'un type, triés par nom: ordre lu dans
+     * l'index alphabétique s'il est chargé, sinon requête JPQL explicite.
+     */
+    public List<Restaurant> findByType(int typeId) {
+        if (nameIndex.isLoaded()) {
+            return findByIds(nameIndex.pageByType(typeId, null, Integer.MAX_VALUE));
+        }
         TypedQuery<Restaurant> query = em
                 .createQuery("SELECT r FROM Restaurant r WHERE r.type.id = :typeId ORDER BY r.name", Restaurant.class);
         query.setParameter("typeId", typeId);
-        List<Restaurant> resultList = query.getResultList();
-        Set<Restaurant> restaurants = new LinkedHashSet<>(resultList);
-        for (Restaurant restaurant : restaurants) {
-            addToCache(restaurant);
-        }
+        FetchPlanAdvisor.applyTo(query, em, Restaurant.class);
+        List<Restaurant> restaurants = register(query.getResultList());
         return restaurants;
     }
 
+    /**
+     * Recharge l'index alphabétique depuis une projection (id, nom, type, ville),
+     * sans hydrater d'entités.
+     */
+    public void rebuildNameIndex() {
+        List<Object[]> rows = em.createQuery(
+                "SELECT r.id, r.name, r.type.id, r.address.city.id FROM Restaurant r", Object[].class)
+                .getResultList();
+        nameIndex.clear();
+        for (Object[] row : rows) {
+            nameIndex.put((Integer) row[0], (String) row[1], (Integer) row[2], (Integer) row[3]);
+        }
+        nameIndex.markLoaded();
+    }
+
+    /**
+     * Champs courts de chaque restaurant pour le catalogue en mémoire
+     * (projection, sans CLOB).
+     *
+     * @return tableaux {id, nom, site, rue, cityId, typeId}
+     */
+    public List<Object[]> findCatalogRows() {
+        return Collections.unmodifiableList(em.createQuery(
+                "SELECT r.id, r.name, r.website, r.address.street, r.address.city.id, r.type.id "
+                + "FROM Restaurant r", Object[].class).getResultList());
+    }
+
+    /**
+     * Type et ville de chaque restaurant (projection, aucune entité chargée).
+     *
+     * @return tableaux {id, typeId, cityId}
+     */
+    public List<int[]> findTypeAndCityIds() {
+        List<Object[]> rows = em.createQuery(
+                "SELECT r.id, r.type.id, r.address.city.id FROM Restaurant r", Object[].class)
+                .getResultList();
+        List<int[]> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new int[] { (Integer) row[0], (Integer) row[1], (Integer) row[2] });
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Page alphabétique des restaurants d'un type, après le curseur
+     * {@code after} (null = première page).
+     */
+    public List<Restaurant> findPageByType(int typeId, RestaurantNameIndex.Key after, int limit) {
+        return findByIds(nameIndex.pageByType(typeId, after, limit));
+    }
+
+    /**
+     * Page alphabétique des restaurants d'une ville, après le curseur
+     * {@code after} (null = première page).
+     */
+    public List<Restaurant> findPageByCity(int cityId, RestaurantNameIndex.Key after, int limit) {
+        return findByIds(nameIndex.pageByCity(cityId, after, limit));
+    }
+
+    public List<Restaurant> findByTypeAndPrefix(int typeId, String prefix, int limit) {
+        return findByIds(nameIndex.prefixByType(typeId, prefix, limit));
+    }
+
+    public List<Restaurant> findByCityAndPrefix(int cityId, String prefix, int limit) {
+        return findByIds(nameIndex.prefixByCity(cityId, prefix, limit));
+    }
+
+    /**
+     * Passe tous les restaurants du type {@code fromTypeId} au type
+     * {@code toTypeId}: leurs lignes sont verrouillées (SELECT ... FOR UPDATE)
+     * puis modifiées par un UPDATE ensembliste par tranche de ces seuls ids,
+     * sans charger d'entité. Les ids retournés sont exactement ceux modifiés;
+     * l'index des noms est mis à jour après commit. L'Identity Map et le
+     * contexte de persistance ne sont pas mis à jour (voir l'appelant).
+     *
+     * @return ids des restaurants modifiés
+     */
+    public List<Integer> reassignType(int fromTypeId, int toTypeId) {
+        List<Integer> ids = lockIds("fk_type", fromTypeId);
+        bulkUpdate("UPDATE Restaurant r SET r.type = :target WHERE r.id IN :ids", ids,
+                em.getReference(RestaurantType.class, toTypeId));
+        afterCommit(em, () -> ids.forEach(id -> nameIndex.move(id, toTypeId, null)));
+        return ids;
+    }
+
+    /**
+     * Passe tous les restaurants de la ville {@code fromCityId} à la ville
+     * {@code toCityId} (voir {@link #reassignType}).
+     *
+     * @return ids des restaurants modifiés
+     */
+    public List<Integer> relocate(int fromCityId, int toCityId) {
+        List<Integer> ids = lockIds("fk_vill", fromCityId);
+        bulkUpdate("UPDATE Restaurant r SET r.address.city = :target WHERE r.id IN :ids", ids,
+                em.getReference(City.class, toCityId));
+        afterCommit(em, () -> ids.forEach(id -> nameIndex.move(id, null, toCityId)));
+        return ids;
+    }
+
+    /**
+     * Ids des restaurants dont la clé étrangère {@code column} vaut
+     * {@code value}, verrouillés jusqu'à la fin de la transaction: ils ne
+     * peuvent ni changer de type ou de ville ni être supprimés avant l'UPDATE.
+     */
+    private List<Integer> lockIds(String column, int value) {
+        @SuppressWarnings("unchecked")
+        List<Number> rows = em.createNativeQuery("SELECT numero FROM RESTAURANTS WHERE " + column
+                + " = ?1 ORDER BY numero FOR UPDATE").setParameter(1, value).getResultList();
+        List<Integer> ids = new ArrayList<>(rows.size());
+        for (Number row : rows) {
+            ids.add(row.intValue());
+        }
+        return List.copyOf(ids);
+    }
+
+    private void bulkUpdate(String jpql, List<Integer> ids, Object target) {
+        tableChanged(em);
+        for (int start = 0; start < ids.size(); start += IN_LIST_LIMIT) {
+            em.createQuery(jpql)
+                    .setParameter("ids", ids.subList(start, Math.min(start + IN_LIST_LIMIT, ids.size())))
+                    .setParameter("target", target)
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Hydrate les ids dans l'ordre donné: Identity Map d'abord, puis une requête
+     * {@code IN} par tranche pour les absents. Les ids disparus sont ignorés.
+     */
+    public List<Restaurant> findByIds(List<Integer> ids) {
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (findInCache(id) == null)
+                missing.add(id);
+        }
+        for (int from = 0; from < missing.size(); from += IN_LIST_LIMIT) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + IN_LIST_LIMIT, missing.size()));
+            TypedQuery<Restaurant> query = em.createQuery("SELECT r FROM Restaurant r WHERE r.id IN :ids",
+                    Restaurant.class);
+            query.setParameter("ids", chunk);
+            FetchPlanAdvisor.applyTo(query, em, Restaurant.class);
+            register(query.getResultList());
+        }
+        List<Restaurant> result = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Restaurant restaurant = findInCache(id);
+            if (restaurant != null)
+                result.add(restaurant);
+        }
+        List<Restaurant> view = Collections.unmodifiableList(result);
+        rememberResult(view);
+        return view;
+    }
+
+    /**
+     * Place le restaurant dans l'index alphabétique selon son état validé
+     * (appelé après le commit).
+     */
+    private void indexName(Restaurant restaurant) {
+        if (restaurant.getId() == null)
+            return;
+        Integer typeId = restaurant.getType() != null ? restaurant.getType().getId() : null;
+        Integer cityId = restaurant.getAddress() != null && restaurant.getAddress().getCity() != null
+                ? restaurant.getAddress().getCity().getId()
+                : null;
+        nameIndex.put(restaurant.getId(), restaurant.getName(), typeId, cityId);
+    }
 }
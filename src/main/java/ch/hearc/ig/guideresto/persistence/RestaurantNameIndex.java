@@ -0,0 +1,178 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index alphabétique des restaurants, par type et par ville, partagé entre
+ * threads. Chaque partition est une skip list triée par (nom normalisé, id):
+ * la pagination "les N suivants après X" et les recherches par préfixe se
+ * font sans tri ni requête. Les lectures sont sans verrou; les écritures
+ * sont faites par {@link RestaurantMapper}.
+ */
+public class RestaurantNameIndex {
+
+    /**
+     * Position dans l'ordre alphabétique; sert aussi de curseur de pagination.
+     */
+    public record Key(String foldedName, int id) implements Comparable<Key> {
+        private static final Comparator<Key> ORDER = Comparator.comparing(Key::foldedName)
+                .thenComparingInt(Key::id);
+
+        public static Key of(String name, int id) {
+            return new Key(TextKeys.fold(name), id);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private record Placement(Key key, Integer typeId, Integer cityId) {
+    }
+
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Key, Integer>> byType = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Key, Integer>> byCity = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Placement> placements = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * Ajoute ou déplace un restaurant (nom, type ou ville modifiés).
+     */
+    public synchronized void put(int id, String name, Integer typeId, Integer cityId) {
+        Placement previous = placements.get(id);
+        Placement next = new Placement(Key.of(name == null ? "" : name, id), typeId, cityId);
+        if (next.equals(previous))
+            return;
+        if (previous != null)
+            unlink(previous);
+        link(id, next);
+    }
+
+    /**
+     * Déplace un restaurant déjà indexé vers un autre type et/ou une autre
+     * ville ({@code null}: inchangé), sans connaître son nom (écritures
+     * ensemblistes).
+     */
+    public synchronized void move(int id, Integer typeId, Integer cityId) {
+        Placement previous = placements.get(id);
+        if (previous == null)
+            return;
+        Placement next = new Placement(previous.key(), typeId != null ? typeId : previous.typeId(),
+                cityId != null ? cityId : previous.cityId());
+        if (next.equals(previous))
+            return;
+        unlink(previous);
+        link(id, next);
+    }
+
+    public synchronized void remove(int id) {
+        Placement previous = placements.remove(id);
+        if (previous != null)
+            unlink(previous);
+    }
+
+    public synchronized void clear() {
+        byType.clear();
+        byCity.clear();
+        placements.clear();
+        loaded = false;
+    }
+
+    /**
+     * Signale que l'index a été chargé depuis la base et couvre tous les
+     * restaurants.
+     */
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Ids des restaurants du type, dans l'ordre alphabétique, strictement après
+     * {@code after} (ou depuis le début si {@code null}).
+     */
+    public List<Integer> pageByType(int typeId, Key after, int limit) {
+        return page(byType.get(typeId), after, limit);
+    }
+
+    public List<Integer> pageByCity(int cityId, Key after, int limit) {
+        return page(byCity.get(cityId), after, limit);
+    }
+
+    /**
+     * Ids des restaurants du type dont le nom commence par {@code prefix}.
+     */
+    public List<Integer> prefixByType(int typeId, String prefix, int limit) {
+        return prefix(byType.get(typeId), prefix, limit);
+    }
+
+    public List<Integer> prefixByCity(int cityId, String prefix, int limit) {
+        return prefix(byCity.get(cityId), prefix, limit);
+    }
+
+    /**
+     * Position courante d'un restaurant (pour construire un curseur).
+     */
+    public Key keyOf(int id) {
+        Placement placement = placements.get(id);
+        return placement == null ? null : placement.key();
+    }
+
+    private void link(int id, Placement placement) {
+        placements.put(id, placement);
+        if (placement.typeId() != null)
+            byType.computeIfAbsent(placement.typeId(), k -> new ConcurrentSkipListMap<>()).put(placement.key(), id);
+        if (placement.cityId() != null)
+            byCity.computeIfAbsent(placement.cityId(), k -> new ConcurrentSkipListMap<>()).put(placement.key(), id);
+    }
+
+    private void unlink(Placement placement) {
+        if (placement.typeId() != null) {
+            Map<Key, Integer> partition = byType.get(placement.typeId());
+            if (partition != null)
+                partition.remove(placement.key());
+        }
+        if (placement.cityId() != null) {
+            Map<Key, Integer> partition = byCity.get(placement.cityId());
+            if (partition != null)
+                partition.remove(placement.key());
+        }
+    }
+
+    private static List<Integer> page(ConcurrentSkipListMap<Key, Integer> partition, Key after, int limit) {
+        if (partition == null)
+            return List.of();
+        NavigableMap<Key, Integer> tail = after == null ? partition : partition.tailMap(after, false);
+        return take(tail, limit);
+    }
+
+    private static List<Integer> prefix(ConcurrentSkipListMap<Key, Integer> partition, String prefix, int limit) {
+        if (partition == null)
+            return List.of();
+        String folded = TextKeys.fold(prefix);
+        ConcurrentNavigableMap<Key, Integer> range = partition.subMap(new Key(folded, Integer.MIN_VALUE), true,
+                new Key(folded + Character.MAX_VALUE, Integer.MIN_VALUE), false);
+        return take(range, limit);
+    }
+
+    private static List<Integer> take(NavigableMap<Key, Integer> range, int limit) {
+        List<Integer> ids = new ArrayList<>(Math.min(Math.max(limit, 0), 64));
+        for (Integer id : range.values()) {
+            if (ids.size() >= limit)
+                break;
+            ids.add(id);
+        }
+        return ids;
+    }
+}
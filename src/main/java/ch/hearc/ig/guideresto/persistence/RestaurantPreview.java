@@ -0,0 +1,9 @@
+package ch.hearc.ig.guideresto.persistence;
+
+/**
+ * Ligne d'un écran de liste: un restaurant sans son CLOB, dont seuls les
+ * premiers caractères de la description sont lus (côté SQL).
+ */
+public record RestaurantPreview(int id, String name, String street, String zipCode, String cityName,
+                                String descriptionPreview, int cityId) {
+}
@@ -4,19 +4,23 @@ import ch.hearc.ig.guideresto.business.RestaurantType;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Data Mapper JPA pour {@link RestaurantType}.
  * Utilise une Identity Map (thread-local) pour réutiliser les instances par id.
- * Expose des recherches par nom via NamedQuery.
+ * Expose des recherches par nom via NamedQuery, servies par l'index des
+ * libellés quand le cache contient tous les types.
  */
 public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
+    private static final String BY_LABEL = "label";
+
     private final EntityManager em;
 
     public RestaurantTypeMapper(EntityManager em) {
+        super(List.of(new IndexDefinition<>(BY_LABEL, RestaurantType::getLabel, true)));
         this.em = em;
     }
 
@@ -33,13 +37,11 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     }
 
     @Override
-    public Set<RestaurantType> findAll() {
+    public List<RestaurantType> findAll() {
+        long version = cacheVersion();
         TypedQuery<RestaurantType> query = em.createNamedQuery("RestaurantType.findAll", RestaurantType.class);
-        List<RestaurantType> resultList = query.getResultList();
-        Set<RestaurantType> result = new LinkedHashSet<>(resultList);
-        for (RestaurantType type : result) {
-            addToCache(type);
-        }
+        List<RestaurantType> result = register(query.getResultList());
+        markCacheAuthoritative(version);
         return result;
     }
 
@@ -47,25 +49,78 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
      * Recherche des types dont le nom contient la chaîne donnée (normalisation en
      * majuscules).
      */
-    public Set<RestaurantType> findByName(String namePart) {
+    public List<RestaurantType> findByName(String namePart) {
         if (namePart == null)
-            return new LinkedHashSet<>();
+            return List.of();
+        String needle = SecondaryIndex.normalize(namePart);
+        if (isCacheAuthoritative())
+            return scanIndex(BY_LABEL, key -> key.contains(needle));
         TypedQuery<RestaurantType> query = em.createNamedQuery("RestaurantType.findByName", RestaurantType.class);
-        query.setParameter("name", "%" + namePart.toUpperCase() + "%");
-        List<RestaurantType> resultList = query.getResultList();
-        Set<RestaurantType> result = new LinkedHashSet<>(resultList);
-        for (RestaurantType type : result) {
-            addToCache(type);
-        }
+        query.setParameter("name", "%" + needle + "%");
+        List<RestaurantType> result = register(query.getResultList());
         return result;
     }
 
+    /**
+     * Libellé et début de description de chaque type, triés par libellé.
+     * DBMS_LOB.SUBSTR est évalué par Oracle: aucun locator LOB n'est transféré.
+     *
+     * @param maxChars nombre de caractères de description lus
+     */
+    public Map<String, String> findPreviews(int maxChars) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery("SELECT ty.libelle, DBMS_LOB.SUBSTR(t.texte, ?1, 1) "
+                + "FROM TYPES_GASTRONOMIQUES ty JOIN TEXTES t ON t.numero = ty.fk_desc ORDER BY ty.libelle").setParameter(1, maxChars).getResultList();
+        Map<String, String> previews = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            previews.put((String) row[0], (String) row[1]);
+        }
+        return previews;
+    }
+
+    /**
+     * Id → libellé de chaque type (projection, sans la description).
+     */
+    public Map<Integer, String> findLabels() {
+        List<Object[]> rows = em.createQuery("SELECT t.id, t.label FROM RestaurantType t", Object[].class)
+                .getResultList();
+        Map<Integer, String> labels = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            labels.put((Integer) row[0], (String) row[1]);
+        }
+        return labels;
+    }
+
+    /**
+     * Recherche le type par son libellé exact (sans casse); le libellé est unique.
+     *
+     * @return le type ou {@code null} si absent
+     */
+    public RestaurantType findByLabel(String label) {
+        if (label == null)
+            return null;
+        List<RestaurantType> cached = findInIndex(BY_LABEL, label);
+        if (!cached.isEmpty())
+            return cached.get(0);
+        if (isCacheAuthoritative())
+            return null;
+        TypedQuery<RestaurantType> query = em.createNamedQuery("RestaurantType.findByLabel", RestaurantType.class);
+        query.setParameter("label", SecondaryIndex.normalize(label));
+        List<RestaurantType> resultList = query.getResultList();
+        if (resultList.isEmpty())
+            return null;
+        RestaurantType type = resultList.get(0);
+        addToCache(type);
+        return type;
+    }
+
     @Override
     public RestaurantType create(RestaurantType object) {
         if (object == null)
             return null;
         em.persist(object);
         addToCache(object);
+        tableChanged(em);
         return object;
     }
 
@@ -75,6 +130,7 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
             return false;
         RestaurantType managed = em.merge(object);
         addToCache(managed);
+        tableChanged(em);
         return true;
     }
 
@@ -85,6 +141,7 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
         RestaurantType managed = em.contains(object) ? object : em.merge(object);
         em.remove(managed);
         removeFromCache(object.getId());
+        tableChanged(em);
         return true;
     }
 
@@ -0,0 +1,94 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Index secondaire en mémoire sur les entités d'une Identity Map
+ * (clé normalisée → ids). Vit dans le même scope que l'Identity Map
+ * ({@link IdentityMapContext}) et est maintenu par
+ * {@link AbstractMapper#addToCache} / {@link AbstractMapper#removeFromCache}.
+ * Un index trié permet en plus les recherches par préfixe.
+ */
+final class SecondaryIndex<T extends IBusinessObject> {
+    private final Function<? super T, String> keyExtractor;
+    private final Map<String, Set<Integer>> idsByKey;
+    // id -> clé indexée, pour retirer l'ancienne clé quand l'entité change
+    private final Map<Integer, String> keysById = new HashMap<>();
+
+    SecondaryIndex(Function<? super T, String> keyExtractor, boolean sorted) {
+        this.keyExtractor = keyExtractor;
+        this.idsByKey = sorted ? new TreeMap<>() : new HashMap<>();
+    }
+
+    /**
+     * Normalisation commune des clés: trim + majuscules (insensible à la casse).
+     */
+    static String normalize(String raw) {
+        return raw == null ? null : raw.trim().toUpperCase(Locale.ROOT);
+    }
+
+    String keyOf(T object) {
+        return normalize(keyExtractor.apply(object));
+    }
+
+    void put(T object) {
+        Integer id = object.getId();
+        if (id == null)
+            return;
+        String key = keyOf(object);
+        String previous = key == null ? keysById.remove(id) : keysById.put(id, key);
+        if (previous != null && !previous.equals(key)) {
+            unlink(previous, id);
+        }
+        if (key != null) {
+            idsByKey.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+        }
+    }
+
+    void remove(Integer id) {
+        String previous = keysById.remove(id);
+        if (previous != null) {
+            unlink(previous, id);
+        }
+    }
+
+    Set<Integer> idsFor(String normalizedKey) {
+        Set<Integer> ids = idsByKey.get(normalizedKey);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    /**
+     * Entrées dont la clé commence par le préfixe (index trié uniquement).
+     */
+    Map<String, Set<Integer>> withPrefix(String normalizedPrefix) {
+        if (!(idsByKey instanceof NavigableMap<String, Set<Integer>> sorted)) {
+            throw new IllegalStateException("Recherche par préfixe sur un index non trié");
+        }
+        if (normalizedPrefix.isEmpty())
+            return sorted;
+        return sorted.subMap(normalizedPrefix, true, normalizedPrefix + Character.MAX_VALUE, false);
+    }
+
+    Map<String, Set<Integer>> entries() {
+        return idsByKey;
+    }
+
+    private void unlink(String key, Integer id) {
+        Set<Integer> ids = idsByKey.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty())
+                idsByKey.remove(key);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import java.util.Map;
+
+/**
+ * Incrémente la version de table ({@link IdentityMapContext#changed}) des
+ * enfants chargés par lots ({@link ChildBatchLoader}) après le commit de
+ * toute écriture d'entité: y compris celles qui ne passent pas par un mapper
+ * (services, cascades, écriture différée des likes, autres threads).
+ *
+ * Les instructions ensemblistes (DELETE, MERGE) ne déclenchent pas ces
+ * événements: les mappers qui les exécutent appellent
+ * {@link AbstractMapper#tableChanged}.
+ *
+ * Enregistré par META-INF/services/org.hibernate.integrator.spi.Integrator.
+ */
+public class TableVersionListener implements Integrator, PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    // Entité enfant -> mapper dont la version est suivie par les lots
+    private static final Map<Class<?>, Class<?>> MAPPERS = Map.of(
+            BasicEvaluation.class, BasicEvaluationMapper.class,
+            CompleteEvaluation.class, CompleteEvaluationMapper.class,
+            Grade.class, GradeMapper.class);
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+            SessionFactoryImplementor sessionFactory) {
+        EventListenerRegistry registry = sessionFactory.getEventListenerRegistry();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return MAPPERS.containsKey(persister.getMappedClass());
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getPersister());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getPersister());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getPersister());
+    }
+
+    // Transaction annulée: la table n'a pas changé
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    private static void changed(EntityPersister persister) {
+        Class<?> mapperClass = MAPPERS.get(persister.getMappedClass());
+        if (mapperClass != null)
+            IdentityMapContext.changed(mapperClass);
+    }
+}
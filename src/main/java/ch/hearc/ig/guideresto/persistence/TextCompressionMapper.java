@@ -0,0 +1,154 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.persistence.jpa.TextCompression;
+
+import jakarta.persistence.EntityManager;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Accès SQL de la compression des textes longs: dictionnaires
+ * (DICTIONNAIRES_COMPRESSION) et migration des textes de TEXTES de la
+ * colonne CLOB (TEXTE) vers la colonne BLOB compressée (TEXTE_Z).
+ */
+public class TextCompressionMapper {
+
+    /**
+     * Textes longs compressibles: table propriétaire et sa clé étrangère vers
+     * TEXTES. Les descriptions des types ne sont jamais compressées.
+     */
+    public enum Column {
+        COMMENT("COMMENTAIRES", "fk_texte"),
+        DESCRIPTION("RESTAURANTS", "fk_desc");
+
+        private final String table;
+        private final String foreignKey;
+
+        Column(String table, String foreignKey) {
+            this.table = table;
+            this.foreignKey = foreignKey;
+        }
+
+        private String uncompressed() {
+            return " FROM TEXTES t JOIN " + table + " o ON o." + foreignKey + " = t.numero"
+                    + " WHERE t.texte IS NOT NULL AND ROWNUM <= ?1";
+        }
+    }
+
+    private final EntityManager em;
+
+    public TextCompressionMapper(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Enregistre tous les dictionnaires de la base dans {@link TextCompression};
+     * le plus récent devient le dictionnaire courant.
+     *
+     * @return nombre de dictionnaires chargés
+     */
+    public int loadDictionaries() {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(
+                "SELECT numero, donnees FROM DICTIONNAIRES_COMPRESSION ORDER BY numero").getResultList();
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            TextCompression.registerDictionary(((Number) row[0]).intValue(), bytes(row[1]), i == rows.size() - 1);
+        }
+        return rows.size();
+    }
+
+    /**
+     * Insère un dictionnaire sous le prochain numéro (transaction de
+     * l'appelant).
+     *
+     * @return numéro attribué
+     */
+    public int saveDictionary(byte[] dictionary) {
+        int id = ((Number) em.createNativeQuery("SELECT NVL(MAX(numero), 0) + 1 FROM DICTIONNAIRES_COMPRESSION")
+                .getSingleResult()).intValue();
+        em.createNativeQuery("INSERT INTO DICTIONNAIRES_COMPRESSION (numero, donnees, date_creation) "
+                + "VALUES (?1, ?2, ?3)")
+                .setParameter(1, id)
+                .setParameter(2, dictionary)
+                .setParameter(3, new Date())
+                .executeUpdate();
+        return id;
+    }
+
+    /**
+     * Échantillon de textes encore en clair, pour entraîner un dictionnaire.
+     */
+    public List<String> sampleUncompressed(Column column, int limit) {
+        @SuppressWarnings("unchecked")
+        List<Object> rows = em.createNativeQuery("SELECT t.texte" + column.uncompressed())
+                .setParameter(1, limit)
+                .getResultList();
+        List<String> samples = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            samples.add(text(row));
+        }
+        return Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * Prochains textes encore en clair: tableaux {numéro du texte, texte}.
+     */
+    public List<Object[]> findUncompressed(Column column, int limit) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery("SELECT t.numero, t.texte" + column.uncompressed())
+                .setParameter(1, limit)
+                .getResultList();
+        List<Object[]> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new Object[] { ((Number) row[0]).intValue(), text(row[1]) });
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Remplace le texte en clair par sa version compressée, s'il n'a pas été
+     * réécrit entre-temps.
+     *
+     * @param id numéro du texte (TEXTES)
+     * @return {@code true} si le texte a été migré
+     */
+    public boolean storeCompressed(int id, byte[] data) {
+        return em.createNativeQuery("UPDATE TEXTES SET texte_z = ?1, texte = NULL "
+                + "WHERE numero = ?2 AND texte IS NOT NULL")
+                .setParameter(1, data)
+                .setParameter(2, id)
+                .executeUpdate() == 1;
+    }
+
+    /**
+     * Valeur d'une colonne CLOB lue en SQL natif.
+     */
+    static String text(Object value) {
+        try {
+            if (value instanceof Clob clob)
+                return clob.getSubString(1, (int) clob.length());
+            return (String) value;
+        } catch (SQLException e) {
+            throw new RuntimeException("Lecture du texte impossible", e);
+        }
+    }
+
+    /**
+     * Valeur d'une colonne BLOB lue en SQL natif.
+     */
+    static byte[] bytes(Object value) {
+        try {
+            if (value instanceof Blob blob)
+                return blob.getBytes(1, (int) blob.length());
+            return (byte[]) value;
+        } catch (SQLException e) {
+            throw new RuntimeException("Lecture des données impossible", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalisation des textes utilisés comme clés de recherche en mémoire:
+ * sans accents, sans casse, espaces de bord retirés. L'ordre des clés
+ * normalisées reste compatible avec les recherches par préfixe.
+ */
+public final class TextKeys {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}");
+
+    private TextKeys() {
+    }
+
+    public static String fold(String raw) {
+        if (raw == null)
+            return null;
+        String decomposed = Normalizer.normalize(raw.trim(), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,62 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.Evaluation;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.util.Date;
+
+/**
+ * Position dans la chronologie des évaluations, de la plus récente à la plus
+ * ancienne: (date de visite, id), l'id départageant les évaluations d'un
+ * même jour. Sert de curseur de pagination.
+ */
+public record TimelineKey(Date visitDate, int id) {
+
+    /**
+     * Curseur placé sur une évaluation (en général la dernière d'une page).
+     */
+    public static TimelineKey of(Evaluation evaluation) {
+        return new TimelineKey(evaluation.getVisitDate(), evaluation.getId());
+    }
+
+    /**
+     * Page de la chronologie d'un type d'évaluation: les {@code limit}
+     * évaluations après {@code after} (null = première page), les plus
+     * récentes d'abord.
+     *
+     * La requête suit l'ordre des index (fk_rest, date_eval, numero) et
+     * (date_eval, numero), parcourus à l'envers: le coût d'une page ne dépend
+     * pas du nombre d'évaluations du restaurant ni de la position de la page.
+     *
+     * @param restaurantId restaurant, ou {@code null} pour tous
+     * @param from         borne inférieure incluse de la date de visite, ou {@code null}
+     * @param to           borne supérieure exclue de la date de visite, ou {@code null}
+     */
+    static <T extends Evaluation> TypedQuery<T> pageQuery(EntityManager em, Class<T> type, Integer restaurantId,
+            Date from, Date to, TimelineKey after, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT e FROM ").append(type.getSimpleName()).append(" e WHERE 1 = 1");
+        if (restaurantId != null)
+            jpql.append(" AND e.restaurant.id = :restaurantId");
+        if (from != null)
+            jpql.append(" AND e.visitDate >= :from");
+        if (to != null)
+            jpql.append(" AND e.visitDate < :to");
+        // Borne "<=" sur la date pour un parcours d'index par plage, l'id départage le même jour
+        if (after != null)
+            jpql.append(" AND e.visitDate <= :afterDate AND (e.visitDate < :afterDate OR e.id < :afterId)");
+        jpql.append(" ORDER BY e.visitDate DESC, e.id DESC");
+        TypedQuery<T> query = em.createQuery(jpql.toString(), type);
+        if (restaurantId != null)
+            query.setParameter("restaurantId", restaurantId);
+        if (from != null)
+            query.setParameter("from", from);
+        if (to != null)
+            query.setParameter("to", to);
+        if (after != null) {
+            query.setParameter("afterDate", after.visitDate());
+            query.setParameter("afterId", after.id());
+        }
+        return query.setMaxResults(limit);
+    }
+}
@@ -0,0 +1,23 @@
+package ch.hearc.ig.guideresto.persistence.jpa;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Convertisseur JPA pour stocker un texte long compressé dans un BLOB
+ * (format décrit dans {@link TextCompression}).
+ * À appliquer explicitement aux attributs concernés avec {@code @Convert}.
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+  @Override
+  public byte[] convertToDatabaseColumn(String value) {
+    return TextCompression.compress(value);
+  }
+
+  @Override
+  public String convertToEntityAttribute(byte[] data) {
+    return TextCompression.decompress(data);
+  }
+}
@@ -0,0 +1,202 @@
+package ch.hearc.ig.guideresto.persistence.jpa;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression des textes longs stockés en BLOB ({@link CompressedTextConverter}).
+ *
+ * Format: un octet d'en-tête puis les données.
+ * <ul>
+ * <li>{@code 0}: texte UTF-8 brut (texte sous le seuil, ou incompressible);</li>
+ * <li>{@code 1..127}: deflate avec le dictionnaire de ce numéro;</li>
+ * <li>{@code -1}: deflate sans dictionnaire.</li>
+ * </ul>
+ * Les dictionnaires sont entraînés sur les textes existants et conservés en
+ * base (table DICTIONNAIRES_COMPRESSION): un numéro n'est jamais réutilisé,
+ * les anciennes valeurs restent lisibles.
+ *
+ * L'écriture compressée est optionnelle (propriété
+ * {@code guideresto.compression.enabled}); la lecture des deux formats est
+ * toujours possible.
+ */
+public final class TextCompression {
+
+    private static final byte RAW = 0;
+    private static final byte NO_DICTIONARY = -1;
+    // Fenêtre deflate: un dictionnaire plus long est tronqué au début
+    public static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+
+    private static final boolean ENABLED = Boolean.getBoolean("guideresto.compression.enabled");
+    // En dessous, l'en-tête et le bloc deflate coûtent plus qu'ils ne rapportent
+    private static final int MIN_COMPRESSED_BYTES = Integer.getInteger("guideresto.compression.minBytes", 200);
+
+    private static final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private static volatile int currentDictionary;
+
+    private TextCompression() {
+    }
+
+    /**
+     * Les nouveaux textes sont-ils écrits compressés ?
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Enregistre un dictionnaire lu en base ou tout juste entraîné.
+     *
+     * @param current {@code true} pour l'utiliser pour les prochaines écritures
+     */
+    public static void registerDictionary(int id, byte[] dictionary, boolean current) {
+        if (id < 1 || id > 127)
+            throw new IllegalArgumentException("Numéro de dictionnaire hors limites : " + id);
+        dictionaries.put(id, dictionary.clone());
+        if (current)
+            currentDictionary = id;
+    }
+
+    /**
+     * Numéro du dictionnaire courant, 0 si aucun.
+     */
+    public static int currentDictionary() {
+        return currentDictionary;
+    }
+
+    public static byte[] compress(String text) {
+        if (text == null)
+            return null;
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        if (raw.length >= MIN_COMPRESSED_BYTES) {
+            int dictionaryId = currentDictionary;
+            byte[] compressed = deflate(raw, dictionaryId == 0 ? null : dictionaries.get(dictionaryId));
+            if (compressed.length < raw.length)
+                return withHeader(dictionaryId == 0 ? NO_DICTIONARY : (byte) dictionaryId, compressed);
+        }
+        return withHeader(RAW, raw);
+    }
+
+    public static String decompress(byte[] data) {
+        if (data == null)
+            return null;
+        if (data.length == 0)
+            throw new IllegalArgumentException("Texte compressé vide");
+        byte header = data[0];
+        if (header == RAW)
+            return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+        byte[] dictionary = null;
+        if (header != NO_DICTIONARY) {
+            dictionary = dictionaries.get((int) header);
+            if (dictionary == null)
+                throw new IllegalStateException("Dictionnaire de compression inconnu : " + header);
+        }
+        return new String(inflate(data, dictionary), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Construit un dictionnaire à partir d'un échantillon de textes: les mots
+     * et paires de mots répétés, classés par octets économisables
+     * (occurrences × longueur). Les meilleurs sont placés à la fin, là où
+     * deflate les référence au plus court.
+     */
+    public static byte[] trainDictionary(List<String> samples, int maxBytes) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            if (sample == null)
+                continue;
+            String[] words = sample.split("\\s+");
+            for (int i = 0; i < words.length; i++) {
+                if (words[i].length() > 2)
+                    counts.merge(words[i] + " ", 1, Integer::sum);
+                if (i + 1 < words.length)
+                    counts.merge(words[i] + " " + words[i + 1] + " ", 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1)
+                candidates.add(entry);
+        }
+        candidates.sort((a, b) -> Long.compare(score(b), score(a)));
+        int limit = Math.min(maxBytes, MAX_DICTIONARY_BYTES);
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            byte[] bytes = candidate.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > limit)
+                continue;
+            chosen.add(bytes);
+            size += bytes.length;
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.writeBytes(chosen.get(i));
+        }
+        return dictionary.toByteArray();
+    }
+
+    private static long score(Map.Entry<String, Integer> entry) {
+        return (long) entry.getValue() * entry.getKey().length();
+    }
+
+    private static byte[] deflate(byte[] raw, byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (dictionary != null)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, byte[] dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null)
+                            throw new IllegalStateException("Texte compressé sans dictionnaire attendu");
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Texte compressé tronqué");
+                    }
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Texte compressé illisible", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withHeader(byte header, byte[] data) {
+        byte[] result = new byte[data.length + 1];
+        result[0] = header;
+        System.arraycopy(data, 0, result, 1, data.length);
+        return result;
+    }
+}
@@ -2,20 +2,40 @@ package ch.hearc.ig.guideresto.presentation;
 
 import ch.hearc.ig.guideresto.business.*;
 import ch.hearc.ig.guideresto.persistence.*;
+import ch.hearc.ig.guideresto.persistence.jpa.TextCompression;
 import ch.hearc.ig.guideresto.service.RestaurantService;
+import ch.hearc.ig.guideresto.service.CityAutocomplete;
+import ch.hearc.ig.guideresto.service.GradeDistributions;
+import ch.hearc.ig.guideresto.service.DuplicateLikeException;
+import ch.hearc.ig.guideresto.service.LikeDuplicateFilter;
+import ch.hearc.ig.guideresto.service.LikeWriteBehind;
+import ch.hearc.ig.guideresto.service.RequestExecutor;
+import ch.hearc.ig.guideresto.service.RestaurantCatalog;
+import ch.hearc.ig.guideresto.service.RestaurantDetail;
+import ch.hearc.ig.guideresto.service.RestaurantDetailCache;
+import ch.hearc.ig.guideresto.service.RestaurantDetailLoader;
+import ch.hearc.ig.guideresto.service.RestaurantListener;
+import ch.hearc.ig.guideresto.service.EvaluationListener;
+import ch.hearc.ig.guideresto.service.RestaurantQueryCache;
+import ch.hearc.ig.guideresto.service.ServiceScope;
+import ch.hearc.ig.guideresto.service.RestaurantLeaderboard;
 import ch.hearc.ig.guideresto.service.CityService;
 import ch.hearc.ig.guideresto.service.RestaurantTypeService;
 import ch.hearc.ig.guideresto.service.EvaluationCriteriaService;
 import ch.hearc.ig.guideresto.service.EvaluationService;
+import ch.hearc.ig.guideresto.service.TextCompressionMigration;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import org.hibernate.Hibernate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author cedric.baudet
@@ -26,45 +46,140 @@ public class Application {
     private static Scanner scanner;
     private static final Logger logger = LogManager.getLogger(Application.class);
 
+    // Dimensionnement du filtre anti-doublons des likes (surchargeable par propriétés système)
+    private static final long EXPECTED_LIKES_PER_DAY = Long.getLong("guideresto.likes.expectedPerDay", 10_000L);
+    private static final double LIKE_FILTER_FALSE_POSITIVE_RATE = Double
+            .parseDouble(System.getProperty("guideresto.likes.falsePositiveRate", "0.01"));
+
+    // Écriture différée des likes (désactivée par défaut)
+    private static final boolean LIKES_WRITE_BEHIND = Boolean.getBoolean("guideresto.likes.writeBehind");
+    private static final int LIKES_QUEUE_CAPACITY = Integer.getInteger("guideresto.likes.queueCapacity", 10_000);
+    private static final int LIKES_BATCH_SIZE = Integer.getInteger("guideresto.likes.batchSize", 200);
+    private static final long LIKES_MAX_DELAY_MS = Long.getLong("guideresto.likes.maxDelayMs", 50L);
+
     // Services partagés
     private static EvaluationService evaluationService; // ajouté
     private static EvaluationCriteriaService criteriaService; // ajouté
     private static RestaurantService restaurantService; // ajouté
-
+    private static RestaurantLeaderboard leaderboard;
+    private static RestaurantCatalog catalog;
+    private static RequestExecutor requestExecutor;
+    private static RestaurantDetailCache detailCache;
+    private static final FetchPlanAdvisor fetchPlans = new FetchPlanAdvisor();
+    // Échéance du chargement parallèle de la vue détail d'un restaurant
+    private static final Duration DETAIL_DEADLINE = Duration.ofSeconds(5);
+    // Durée de vie des vues détail en cache (filet de sécurité, l'invalidation suit les écritures)
+    private static final Duration DETAIL_CACHE_TTL = Duration.ofMinutes(10);
+    // Nombre de caractères de description affichés dans les listes
+    private static final int PREVIEW_LENGTH = 60;
+    // Nombre de recherches de restaurants gardées en cache
+    private static final int QUERY_CACHE_ENTRIES = 500;
+
+    // "try": le cas d'utilisation du menu n'est pas lu dans son bloc try-with-resources
+    @SuppressWarnings("try")
     public static void main(String[] args) {
         scanner = new Scanner(System.in);
 
         EntityManagerFactory emf = Persistence.createEntityManagerFactory("guideRestoJPA");
         EntityManager em = emf.createEntityManager();
+        // Dictionnaires de compression: nécessaires pour relire les textes compressés
+        new TextCompressionMapper(em).loadDictionaries();
+        TextCompressionMigration compressionMigration = null;
+        if (TextCompression.isEnabled()) {
+            compressionMigration = new TextCompressionMigration(emf);
+            compressionMigration.start();
+        }
 
         // Instanciation des mappers JPA
         CityMapper cityMapper = new CityMapper(em);
         RestaurantTypeMapper typeMapper = new RestaurantTypeMapper(em);
-        RestaurantMapper restaurantMapper = new RestaurantMapper(em);
+        RestaurantNameIndex nameIndex = new RestaurantNameIndex();
+        RestaurantMapper restaurantMapper = new RestaurantMapper(em, nameIndex);
+        restaurantMapper.rebuildNameIndex();
         GradeMapper gradeMapper = new GradeMapper(em);
         CompleteEvaluationMapper completeEvaluationMapper = new CompleteEvaluationMapper(em, gradeMapper);
         EvaluationCriteriaMapper evaluationCriteriaMapper = new EvaluationCriteriaMapper(em);
         BasicEvaluationMapper basicEvaluationMapper = new BasicEvaluationMapper(em);
 
         // Instanciation des services
-        CityService cityService = new CityService(em, cityMapper);
-        RestaurantTypeService typeService = new RestaurantTypeService(em, typeMapper);
-        restaurantService = new RestaurantService(em, cityMapper, restaurantMapper);
-        evaluationService = new EvaluationService(em, completeEvaluationMapper, gradeMapper, basicEvaluationMapper);
+        CityAutocomplete cityAutocomplete = new CityAutocomplete();
+        cityAutocomplete.rebuild(cityMapper.findAll(), restaurantMapper.countByCity());
+        RestaurantQueryCache queryCache = new RestaurantQueryCache(QUERY_CACHE_ENTRIES);
+        catalog = new RestaurantCatalog();
+        catalog.reload(restaurantMapper, cityMapper, typeMapper);
+        CityService cityService = new CityService(em, cityMapper, restaurantMapper, cityAutocomplete, queryCache,
+                catalog);
+        RestaurantTypeService typeService = new RestaurantTypeService(em, typeMapper, catalog);
+        restaurantService = new RestaurantService(em, cityMapper, restaurantMapper, queryCache);
+        // Aperçus des restaurants enregistrés avant la colonne DESCRIPTION_APERCU
+        restaurantService.fillMissingPreviews();
+        LikeDuplicateFilter likeDuplicateFilter = new LikeDuplicateFilter(EXPECTED_LIKES_PER_DAY,
+                LIKE_FILTER_FALSE_POSITIVE_RATE);
+        evaluationService = new EvaluationService(em, completeEvaluationMapper, gradeMapper, basicEvaluationMapper,
+                likeDuplicateFilter);
+        LikeWriteBehind likeWriteBehind = null;
+        if (LIKES_WRITE_BEHIND) {
+            likeDuplicateFilter.warmUp(basicEvaluationMapper);
+            likeWriteBehind = new LikeWriteBehind(emf, LIKES_QUEUE_CAPACITY, LIKES_BATCH_SIZE, LIKES_MAX_DELAY_MS);
+            evaluationService.enableWriteBehind(likeWriteBehind);
+        }
+
+        // Structures en mémoire tenues à jour par les écritures des services
+        leaderboard = new RestaurantLeaderboard(restaurantMapper, basicEvaluationMapper, gradeMapper);
+        leaderboard.reload();
+        GradeDistributions gradeDistributions = new GradeDistributions(gradeMapper);
+        gradeDistributions.reload();
+        List<RestaurantListener> restaurantListeners = new CopyOnWriteArrayList<>(
+                List.of(cityAutocomplete, queryCache, catalog, leaderboard, gradeDistributions));
+        List<EvaluationListener> evaluationListeners = new CopyOnWriteArrayList<>(
+                List.of(leaderboard, gradeDistributions));
         criteriaService = new EvaluationCriteriaService(em, evaluationCriteriaMapper);
 
+        // Requêtes concurrentes: un EntityManager par requête, structures en mémoire partagées
+        ServiceScope.Shared shared = new ServiceScope.Shared(nameIndex, cityAutocomplete, queryCache, catalog,
+                likeDuplicateFilter, likeWriteBehind, restaurantListeners, evaluationListeners);
+        requestExecutor = new RequestExecutor(emf, shared, connectionPoolSize(emf));
+        detailCache = new RestaurantDetailCache(new RestaurantDetailLoader(requestExecutor), DETAIL_CACHE_TTL);
+        restaurantListeners.add(detailCache);
+        evaluationListeners.add(detailCache);
+        restaurantListeners.forEach(restaurantService::addListener);
+        restaurantListeners.forEach(cityService::addListener);
+        restaurantListeners.forEach(typeService::addListener);
+        evaluationListeners.forEach(evaluationService::addListener);
+
         System.out.println("Bienvenue dans GuideResto ! Que souhaitez-vous faire ?");
         int choice;
         do {
             printMainMenu();
             choice = readInt();
-            proceedMainMenu(choice, cityService, typeService, restaurantService);
+            // Chaque action du menu est un cas d'utilisation: son plan de chargement est appris
+            try (FetchPlanAdvisor.UseCase useCase = fetchPlans.begin("menu principal " + choice)) {
+                proceedMainMenu(choice, cityService, typeService, restaurantService);
+            }
         } while (choice != 0);
 
+        requestExecutor.close();
+        logger.info("Cache des recherches de restaurants : {}", queryCache.stats());
+        fetchPlans.report().forEach(decision -> logger.info("Plan de chargement : {}", decision));
+        // Écrit les likes encore en file avant de fermer la connexion
+        if (likeWriteBehind != null) {
+            likeWriteBehind.close();
+        }
+        if (compressionMigration != null) {
+            compressionMigration.close();
+        }
         em.close();
         emf.close();
     }
 
+    /**
+     * Taille du pool de connexions Hibernate (20 par défaut).
+     */
+    private static int connectionPoolSize(EntityManagerFactory emf) {
+        Object poolSize = emf.getProperties().get("hibernate.connection.pool_size");
+        return poolSize == null ? 20 : Integer.parseInt(poolSize.toString());
+    }
+
     /**
      * Affichage du menu principal de l'application
      */
@@ -76,13 +191,14 @@ public class Application {
         System.out.println("3. Rechercher un restaurant par ville");
         System.out.println("4. Rechercher un restaurant par son type de cuisine");
         System.out.println("5. Saisir un nouveau restaurant");
+        System.out.println("6. Afficher les meilleurs restaurants d'un type de cuisine");
         System.out.println("0. Quitter l'application");
     }
 
     /**
      * On gère le choix saisi par l'utilisateur
      *
-     * @param choice Un nombre entre 0 et 5.
+     * @param choice Un nombre entre 0 et 6.
      */
     private static void proceedMainMenu(int choice, CityService cityService, RestaurantTypeService typeService,
             RestaurantService restaurantService) {
@@ -102,6 +218,9 @@ public class Application {
             case 5:
                 addNewRestaurant(cityService, typeService, restaurantService);
                 break;
+            case 6:
+                showTopRestaurantsByType(typeService);
+                break;
             case 0:
                 System.out.println("Au revoir !");
                 break;
@@ -116,8 +235,7 @@ public class Application {
      */
     private static void showRestaurantsList(RestaurantService restaurantService) {
         System.out.println("Liste des restaurants : ");
-        java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> restaurants = restaurantService.findAllRestaurants();
-        Restaurant restaurant = pickRestaurant(restaurants);
+        Restaurant restaurant = pickRestaurant(restaurantService.findRestaurantPreviews(PREVIEW_LENGTH));
         if (restaurant != null) {
             showRestaurant(restaurant);
         }
@@ -126,22 +244,25 @@ public class Application {
     /**
      * On affiche à l'utilisateur une liste de restaurants numérotés, et il doit en
      * sélectionner un !
+     * La liste est affichée depuis des aperçus (sans CLOB); seul le restaurant
+     * choisi est chargé en entier.
      *
      * @param restaurants Liste à afficher
      * @return L'instance du restaurant choisi par l'utilisateur
      */
-    private static Restaurant pickRestaurant(Set<Restaurant> restaurants) {
+    private static Restaurant pickRestaurant(List<RestaurantPreview> restaurants) {
         if (restaurants.isEmpty()) { // Si la liste est vide on s'arrête là
             System.out.println("Aucun restaurant n'a été trouvé !");
             return null;
         }
 
         String result;
-        for (Restaurant currentRest : restaurants) {
-            result = "";
-            result = "\"" + result + currentRest.getName() + "\" - " + currentRest.getAddress().getStreet() + " - ";
-            result = result + currentRest.getAddress().getCity().getZipCode() + " "
-                    + currentRest.getAddress().getCity().getCityName();
+        for (RestaurantPreview currentRest : restaurants) {
+            result = "\"" + currentRest.name() + "\" - " + currentRest.street() + " - ";
+            result = result + currentRest.zipCode() + " " + currentRest.cityName();
+            if (currentRest.descriptionPreview() != null) {
+                result = result + " - " + currentRest.descriptionPreview();
+            }
             System.out.println(result);
         }
 
@@ -159,9 +280,8 @@ public class Application {
     private static void searchRestaurantByName(RestaurantService restaurantService) {
         System.out.println("Veuillez entrer une partie du nom recherché : ");
         String research = readString();
-        java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> filteredList = restaurantService
-                .findRestaurantsByName(research);
-        Restaurant restaurant = pickRestaurant(filteredList);
+        Restaurant restaurant = pickRestaurant(restaurantService.findRestaurantPreviewsByName(research,
+                PREVIEW_LENGTH));
         if (restaurant != null) {
             showRestaurant(restaurant);
         }
@@ -174,9 +294,8 @@ public class Application {
     private static void searchRestaurantByCity(RestaurantService restaurantService) {
         System.out.println("Veuillez entrer une partie du nom de la ville désirée : ");
         String research = readString();
-        java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> filteredList = restaurantService
-                .findRestaurantsByCityName(research);
-        Restaurant restaurant = pickRestaurant(filteredList);
+        Restaurant restaurant = pickRestaurant(restaurantService.findRestaurantPreviewsByCityName(research,
+                PREVIEW_LENGTH));
         if (restaurant != null) {
             showRestaurant(restaurant);
         }
@@ -188,11 +307,7 @@ public class Application {
      * @return La ville sélectionnée, ou null si aucune ville n'a été choisie.
      */
     private static City pickCity(CityService cityService) {
-        Set<City> cities = cityService.findAllCities();
-        System.out.println("Voici la liste des villes possibles, veuillez entrer le NPA de la ville désirée : ");
-        for (City currentCity : cities) {
-            System.out.println(currentCity.getZipCode() + " " + currentCity.getCityName());
-        }
+        System.out.println("Veuillez entrer le début du nom ou du NPA de la ville désirée : ");
         System.out.println("Entrez \"NEW\" pour créer une nouvelle ville");
         String choice = readString();
         if (choice.equals("NEW")) {
@@ -201,10 +316,21 @@ public class Application {
             city.setZipCode(readNonBlankString());
             System.out.println("Veuillez entrer le nom de la nouvelle ville : ");
             city.setCityName(readNonBlankString());
-            cityService.createCity(city);
-            return city;
+            return cityService.createCity(city);
+        }
+        List<CityAutocomplete.Suggestion> suggestions = cityService.completeCity(choice, 10);
+        if (suggestions.isEmpty()) {
+            System.out.println("Aucune ville ne correspond à cette saisie.");
+            return null;
+        }
+        if (suggestions.size() == 1) {
+            return cityService.findCityById(suggestions.get(0).cityId());
+        }
+        System.out.println("Voici les villes correspondantes, veuillez entrer le NPA de la ville désirée : ");
+        for (CityAutocomplete.Suggestion suggestion : suggestions) {
+            System.out.println(suggestion.zipCode() + " " + suggestion.cityName());
         }
-        return searchCityByZipCode(cities, choice);
+        return searchCityByZipCode(cityService, readString());
     }
 
     /**
@@ -214,13 +340,13 @@ public class Application {
      * @return Le type sélectionné, ou null si aucun type n'a été choisi.
      */
     private static RestaurantType pickRestaurantType(RestaurantTypeService typeService) {
-        Set<RestaurantType> types = typeService.findAllTypes();
+        Map<String, String> types = typeService.findTypePreviews(PREVIEW_LENGTH);
         System.out.println("Voici la liste des types possibles, veuillez entrer le libellé exact du type désiré : ");
-        for (RestaurantType currentType : types) {
-            System.out.println("\"" + currentType.getLabel() + "\" : " + currentType.getDescription());
+        for (Map.Entry<String, String> currentType : types.entrySet()) {
+            System.out.println("\"" + currentType.getKey() + "\" : " + currentType.getValue());
         }
         String choice = readString();
-        return searchTypeByLabel(types, choice);
+        return typeService.findTypeByLabel(choice);
     }
 
     /**
@@ -230,9 +356,9 @@ public class Application {
      */
     private static void searchRestaurantByType(RestaurantService restaurantService, RestaurantTypeService typeService) {
         RestaurantType chosenType = pickRestaurantType(typeService);
-        java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> filteredList = new java.util.LinkedHashSet<>();
+        List<RestaurantPreview> filteredList = new ArrayList<>();
         if (chosenType != null) {
-            filteredList.addAll(restaurantService.findRestaurantsByType(chosenType.getId()));
+            filteredList.addAll(restaurantService.findRestaurantPreviewsByType(chosenType.getId(), PREVIEW_LENGTH));
         }
         Restaurant restaurant = pickRestaurant(filteredList);
         if (restaurant != null) {
@@ -240,6 +366,31 @@ public class Application {
         }
     }
 
+    /**
+     * L'utilisateur choisit un type de restaurant, puis on affiche les 20 meilleurs
+     * restaurants de ce type d'après le classement maintenu en mémoire. Les noms
+     * sont lus dans une version du catalogue, sans accès à la base.
+     */
+    private static void showTopRestaurantsByType(RestaurantTypeService typeService) {
+        RestaurantType chosenType = pickRestaurantType(typeService);
+        if (chosenType == null) {
+            System.out.println("Type inconnu.");
+            return;
+        }
+        List<RestaurantLeaderboard.Entry> entries = leaderboard.topByType(chosenType.getId(), 20);
+        RestaurantCatalog.Snapshot snapshot = catalog.current();
+        int position = 1;
+        for (RestaurantLeaderboard.Entry entry : entries) {
+            RestaurantCatalog.RestaurantEntry restaurant = snapshot.restaurant(entry.restaurantId());
+            if (restaurant != null) {
+                System.out.printf("%d. %s - %d like(s), %d dislike(s), note moyenne %.1f/5%n", position++,
+                        restaurant.name(), entry.likes(), entry.dislikes(), entry.averageGrade());
+            }
+        }
+        if (position == 1)
+            System.out.println("Aucun restaurant n'a été trouvé !");
+    }
+
     /**
      * Le programme demande les informations nécessaires à l'utilisateur puis crée
      * un nouveau restaurant dans le système.
@@ -286,24 +437,32 @@ public class Application {
      */
     private static void showRestaurant(Restaurant restaurant) {
         System.out.println("Affichage d'un restaurant : ");
+        // Servi depuis le cache, sinon restaurant, likes, commentaires et notes sont lus en parallèle
+        RestaurantDetail detail;
+        try {
+            detail = detailCache.get(restaurant.getId(), DETAIL_DEADLINE);
+        } catch (RuntimeException e) {
+            logger.error("Chargement du restaurant {} impossible", restaurant.getId(), e);
+            System.out.println("Le restaurant n'a pas pu être chargé : " + e.getMessage());
+            return;
+        }
+        if (detail == null) {
+            System.out.println("Ce restaurant n'existe plus.");
+            return;
+        }
         StringBuilder sb = new StringBuilder();
-        sb.append(restaurant.getName()).append("\n");
-        sb.append(restaurant.getDescription()).append("\n");
-        sb.append(restaurant.getType().getLabel()).append("\n");
-        sb.append(restaurant.getWebsite()).append("\n");
-        sb.append(restaurant.getAddress().getStreet()).append(", ");
-        sb.append(restaurant.getAddress().getCity().getZipCode()).append(" ")
-                .append(restaurant.getAddress().getCity().getCityName()).append("\n");
-        sb.append("Nombre de likes : ").append(countLikes(restaurant.getEvaluations(), true)).append("\n");
-        sb.append("Nombre de dislikes : ").append(countLikes(restaurant.getEvaluations(), false)).append("\n");
+        sb.append(detail.name()).append("\n");
+        sb.append(detail.description()).append("\n");
+        sb.append(detail.typeLabel()).append("\n");
+        sb.append(detail.website()).append("\n");
+        sb.append(detail.street()).append(", ");
+        sb.append(detail.zipCode()).append(" ").append(detail.cityName()).append("\n");
+        sb.append("Nombre de likes : ").append(detail.likes()).append("\n");
+        sb.append("Nombre de dislikes : ").append(detail.dislikes()).append("\n");
         sb.append("\nEvaluations reçues : ").append("\n");
 
-        String text;
-        for (Evaluation currentEval : restaurant.getEvaluations()) {
-            text = getCompleteEvaluationDescription(currentEval);
-            if (text != null) { // On va recevoir des null pour les BasicEvaluation donc on ne les traite pas !
-                sb.append(text).append("\n");
-            }
+        for (RestaurantDetail.Comment comment : detail.comments()) {
+            sb.append(getCompleteEvaluationDescription(comment)).append("\n");
         }
 
         System.out.println(sb);
@@ -318,47 +477,20 @@ public class Application {
     }
 
     /**
-     * Parcourt la liste et compte le nombre d'évaluations basiques positives ou
-     * négatives en fonction du paramètre likeRestaurant
-     *
-     * @param evaluations    La liste des évaluations à parcourir
-     * @param likeRestaurant Veut-on le nombre d'évaluations positives ou négatives
-     *                       ?
-     * @return Le nombre d'évaluations positives ou négatives trouvées
-     */
-    private static int countLikes(Set<Evaluation> evaluations, Boolean likeRestaurant) {
-        int count = 0;
-        for (Evaluation currentEval : evaluations) {
-            if (currentEval instanceof BasicEvaluation
-                    && ((BasicEvaluation) currentEval).getLikeRestaurant() == likeRestaurant) {
-                count++;
-            }
-        }
-        return count;
-    }
-
-    /**
-     * Retourne un String qui contient le détail complet d'une évaluation si elle
-     * est de type "CompleteEvaluation". Retourne null s'il s'agit d'une
-     * BasicEvaluation
+     * Retourne un String qui contient le détail complet d'une évaluation
+     * (utilisateur, commentaire et notes par critère).
      *
-     * @param eval L'évaluation à afficher
-     * @return Un String qui contient le détail complet d'une CompleteEvaluation, ou
-     *         null s'il s'agit d'une BasicEvaluation
+     * @param comment L'évaluation complète à afficher
+     * @return Un String qui contient le détail complet de l'évaluation
      */
-    private static String getCompleteEvaluationDescription(Evaluation eval) {
+    private static String getCompleteEvaluationDescription(RestaurantDetail.Comment comment) {
         StringBuilder result = new StringBuilder();
-
-        if (eval instanceof CompleteEvaluation ce) {
-            result.append("Evaluation de : ").append(ce.getUsername()).append("\n");
-            result.append("Commentaire : ").append(ce.getComment()).append("\n");
-            for (Grade currentGrade : ce.getGrades()) {
-                result.append(currentGrade.getCriteria().getName()).append(" : ").append(currentGrade.getGrade())
-                        .append("/5").append("\n");
-            }
+        result.append("Evaluation de : ").append(comment.username()).append("\n");
+        result.append("Commentaire : ").append(comment.comment()).append("\n");
+        for (RestaurantDetail.Note note : comment.notes()) {
+            result.append(note.criteriaName()).append(" : ").append(note.grade()).append("/5").append("\n");
         }
-
-        return result.isEmpty() ? null : result.toString();
+        return result.toString();
     }
 
     /**
@@ -431,12 +563,24 @@ public class Application {
             ipAddress = "Indisponible";
         }
         BasicEvaluation eval = new BasicEvaluation(null, new Date(), restaurant, like, ipAddress);
-        evaluationService.createBasicEvaluation(eval);
-        // Mise à jour immédiate de l'état en mémoire
-        if (restaurant.getEvaluations() == null) {
-            restaurant.setEvaluations(new LinkedHashSet<>());
+        try {
+            evaluationService.createBasicEvaluation(eval);
+        } catch (DuplicateLikeException e) {
+            System.out.println(e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            logger.error("Enregistrement du like impossible", e);
+            System.out.println("Le like n'a pas pu être enregistré : " + e.getMessage());
+            return;
+        }
+        // Mise à jour de l'état en mémoire, sans charger les likes s'ils ne l'ont
+        // pas encore été. En écriture différée, le like est écrit par un autre
+        // contexte de persistance: l'ajouter à la collection gérée (cascade ALL)
+        // le ferait persister une seconde fois; les compteurs affichés sont mis
+        // à jour par les listeners une fois le lot écrit.
+        if (!evaluationService.isWriteBehind() && Hibernate.isInitialized(restaurant.getLikes())) {
+            restaurant.getLikes().add(eval);
         }
-        restaurant.getEvaluations().add(eval);
         System.out.println("Votre vote a été pris en compte !");
     }
 
@@ -453,7 +597,7 @@ public class Application {
         System.out.println("Quel commentaire aimeriez-vous publier?");
         String comment = readString();
         CompleteEvaluation eval = new CompleteEvaluation(null, new Date(), restaurant, comment, username);
-        Set<EvaluationCriteria> criterias = criteriaService.findAllCriteria();
+        List<EvaluationCriteria> criterias = criteriaService.findAllCriteria();
         for (EvaluationCriteria crit : criterias) {
             int gradeValue;
             do {
@@ -466,11 +610,11 @@ public class Application {
             eval.getGrades().add(g);
         }
         evaluationService.createCompleteEvaluation(eval);
-        // Mise à jour immédiate de l'état en mémoire
-        if (restaurant.getEvaluations() == null) {
-            restaurant.setEvaluations(new LinkedHashSet<>());
+        // Mise à jour de l'état en mémoire, sans charger les commentaires s'ils
+        // ne l'ont pas encore été
+        if (Hibernate.isInitialized(restaurant.getComments())) {
+            restaurant.getComments().add(eval);
         }
-        restaurant.getEvaluations().add(eval);
         System.out.println("Votre évaluation a bien été enregistrée, merci !");
     }
 
@@ -551,54 +695,35 @@ public class Application {
     }
 
     /**
-     * Recherche dans le Set le restaurant comportant le nom passé en paramètre.
+     * Recherche parmi les restaurants affichés celui comportant le nom passé en
+     * paramètre, puis charge l'entité complète.
      * Retourne null si le restaurant n'est pas trouvé.
      *
-     * @param restaurants Set de restaurants
+     * @param restaurants Aperçus des restaurants affichés
      * @param name        Nom du restaurant à rechercher
      * @return L'instance du restaurant ou null si pas trouvé
      */
-    private static Restaurant searchRestaurantByName(Set<Restaurant> restaurants, String name) {
-        for (Restaurant current : restaurants) {
-            if (current.getName().equalsIgnoreCase(name)) {
-                return current;
+    private static Restaurant searchRestaurantByName(List<RestaurantPreview> restaurants, String name) {
+        for (RestaurantPreview current : restaurants) {
+            if (current.name().equalsIgnoreCase(name.trim())) {
+                return restaurantService.findRestaurantById(current.id());
             }
         }
         return null;
     }
 
     /**
-     * Recherche dans le Set la ville comportant le code NPA passé en paramètre.
+     * Recherche la ville comportant le code NPA passé en paramètre (via l'index
+     * des NPA du mapper).
      * Retourne null si la ville n'est pas trouvée
      *
-     * @param cities  Set de villes
-     * @param zipCode NPA de la ville à rechercher
+     * @param cityService Service des villes
+     * @param zipCode     NPA de la ville à rechercher
      * @return L'instance de la ville ou null si pas trouvé
      */
-    private static City searchCityByZipCode(Set<City> cities, String zipCode) {
-        for (City current : cities) {
-            if (current.getZipCode().equalsIgnoreCase(zipCode)) {
-                return current;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Recherche dans le Set le type comportant le libellé passé en paramètre.
-     * Retourne null si aucun type n'est trouvé.
-     *
-     * @param types Set de types de restaurant
-     * @param label Libellé du type recherché
-     * @return L'instance RestaurantType ou null si pas trouvé
-     */
-    private static RestaurantType searchTypeByLabel(Set<RestaurantType> types, String label) {
-        for (RestaurantType current : types) {
-            if (current.getLabel().equalsIgnoreCase(label)) {
-                return current;
-            }
-        }
-        return null;
+    private static City searchCityByZipCode(CityService cityService, String zipCode) {
+        List<City> cities = cityService.findCitiesByZipCode(zipCode.trim());
+        return cities.isEmpty() ? null : cities.get(0);
     }
 
     /**
@@ -0,0 +1,222 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.persistence.TextKeys;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Complétion par préfixe des villes (nom ou NPA) sans accès à la base.
+ * Les noms sont normalisés (sans accents ni casse) et indexés depuis chaque
+ * début de mot, de sorte que "chaux" propose "La Chaux-de-Fonds".
+ * Les suggestions sont classées par nombre de restaurants décroissant.
+ * Construit au démarrage via {@link #rebuild}, puis tenu à jour par
+ * {@link CityService} et, comme {@link RestaurantListener}, par
+ * {@link RestaurantService}.
+ */
+public class CityAutocomplete implements RestaurantListener {
+
+    /**
+     * Suggestion immuable retournée au front-end.
+     */
+    public record Suggestion(int cityId, String zipCode, String cityName, long restaurantCount) {
+    }
+
+    private static final class Entry {
+        private final String zipCode;
+        private final String cityName;
+        private final Set<String> keys;
+        private long restaurantCount;
+
+        private Entry(String zipCode, String cityName, Set<String> keys, long restaurantCount) {
+            this.zipCode = zipCode;
+            this.cityName = cityName;
+            this.keys = keys;
+            this.restaurantCount = restaurantCount;
+        }
+    }
+
+    private static final Comparator<Map.Entry<Integer, Entry>> RANKING = Comparator
+            .comparingLong((Map.Entry<Integer, Entry> e) -> e.getValue().restaurantCount)
+            .thenComparing(e -> e.getValue().cityName, Comparator.reverseOrder());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private RadixTrie trie = new RadixTrie();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    /**
+     * Reconstruit l'index complet.
+     *
+     * @param cities           toutes les villes (ex. {@code CityMapper.findAll()})
+     * @param restaurantCounts nombre de restaurants par id de ville
+     */
+    public void rebuild(Collection<City> cities, Map<Integer, Long> restaurantCounts) {
+        lock.writeLock().lock();
+        try {
+            trie = new RadixTrie();
+            entries.clear();
+            for (City city : cities) {
+                index(city, restaurantCounts.getOrDefault(city.getId(), 0L));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajoute ou ré-indexe une ville (création ou modification).
+     */
+    public void put(City city) {
+        if (city == null || city.getId() == null)
+            return;
+        lock.writeLock().lock();
+        try {
+            Entry previous = unindex(city.getId());
+            index(city, previous != null ? previous.restaurantCount : 0L);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Integer cityId) {
+        if (cityId == null)
+            return;
+        lock.writeLock().lock();
+        try {
+            unindex(cityId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajuste le nombre de restaurants d'une ville (utilisé pour le classement).
+     */
+    public void adjustRestaurantCount(Integer cityId, long delta) {
+        if (cityId == null)
+            return;
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(cityId);
+            if (entry != null) {
+                entry.restaurantCount = Math.max(0, entry.restaurantCount + delta);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restaurantSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+        City city = restaurant.getAddress() != null ? restaurant.getAddress().getCity() : null;
+        if (city == null || city.getId() == null || city.getId().equals(previousCityId))
+            return;
+        lock.writeLock().lock();
+        try {
+            // Ville créée à la volée par createRestaurant
+            if (!entries.containsKey(city.getId()))
+                index(city, 0L);
+            adjustRestaurantCount(city.getId(), 1);
+            adjustRestaurantCount(previousCityId, -1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+        adjustRestaurantCount(cityId, -1);
+    }
+
+    @Override
+    public void restaurantsRelocated(List<Integer> restaurantIds, int fromCityId, int toCityId) {
+        lock.writeLock().lock();
+        try {
+            adjustRestaurantCount(fromCityId, -restaurantIds.size());
+            adjustRestaurantCount(toCityId, restaurantIds.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retourne au plus {@code k} villes dont le nom (ou un de ses mots) ou le NPA
+     * commence par {@code prefix}, les plus fournies en restaurants d'abord.
+     */
+    public List<Suggestion> complete(String prefix, int k) {
+        if (prefix == null || k <= 0)
+            return List.of();
+        String normalized = TextKeys.fold(prefix);
+        lock.readLock().lock();
+        try {
+            Set<Integer> seen = new HashSet<>();
+            // Tas borné: la racine est la plus faible des k meilleures
+            PriorityQueue<Map.Entry<Integer, Entry>> best = new PriorityQueue<>(k + 1, RANKING);
+            trie.forEachWithPrefix(normalized, id -> {
+                if (seen.add(id)) {
+                    best.add(Map.entry(id, entries.get(id)));
+                    if (best.size() > k)
+                        best.poll();
+                }
+            });
+            List<Suggestion> result = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                Map.Entry<Integer, Entry> e = best.poll();
+                result.add(new Suggestion(e.getKey(), e.getValue().zipCode, e.getValue().cityName,
+                        e.getValue().restaurantCount));
+            }
+            return result.reversed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(City city, long restaurantCount) {
+        Set<String> keys = keysOf(city);
+        entries.put(city.getId(), new Entry(city.getZipCode(), city.getCityName(), keys, restaurantCount));
+        for (String key : keys) {
+            trie.insert(key, city.getId());
+        }
+    }
+
+    private Entry unindex(Integer cityId) {
+        Entry previous = entries.remove(cityId);
+        if (previous != null) {
+            for (String key : previous.keys) {
+                trie.remove(key, cityId);
+            }
+        }
+        return previous;
+    }
+
+    private static Set<String> keysOf(City city) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (city.getZipCode() != null) {
+            keys.add(TextKeys.fold(city.getZipCode()));
+        }
+        if (city.getCityName() != null) {
+            String name = TextKeys.fold(city.getCityName());
+            keys.add(name);
+            for (int i = 1; i < name.length(); i++) {
+                char previous = name.charAt(i - 1);
+                if (previous == ' ' || previous == '-' || previous == '\'') {
+                    keys.add(name.substring(i));
+                }
+            }
+        }
+        keys.remove("");
+        return keys;
+    }
+}
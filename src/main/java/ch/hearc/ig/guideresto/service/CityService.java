@@ -2,36 +2,96 @@ package ch.hearc.ig.guideresto.service;
 
 import ch.hearc.ig.guideresto.business.City;
 import ch.hearc.ig.guideresto.persistence.CityMapper;
+import ch.hearc.ig.guideresto.persistence.IdentityMapContext;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
-import java.util.Set;
+import jakarta.persistence.PersistenceException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Service applicatif pour gérer les {@link City}.
  * Encapsule les écritures dans une transaction JPA (begin/commit/rollback).
- * Les lectures délèguent au {@link CityMapper}.
+ * Les lectures délèguent au {@link CityMapper}; la complétion par préfixe est
+ * servie par {@link CityAutocomplete}, tenu à jour après chaque commit comme
+ * le {@link RestaurantCatalog}.
  */
 public class CityService {
     private final EntityManager em;
     private final CityMapper cityMapper;
+    private final CityAutocomplete autocomplete;
+    private final RestaurantMapper restaurantMapper;
+    private final RestaurantQueryCache queryCache;
+    private final RestaurantCatalog catalog;
+    private final List<RestaurantListener> listeners = new CopyOnWriteArrayList<>();
 
-    public CityService(EntityManager em, CityMapper cityMapper) {
+    public CityService(EntityManager em, CityMapper cityMapper, RestaurantMapper restaurantMapper,
+                       CityAutocomplete autocomplete, RestaurantQueryCache queryCache, RestaurantCatalog catalog) {
         this.em = em;
         this.cityMapper = cityMapper;
+        this.restaurantMapper = restaurantMapper;
+        this.autocomplete = autocomplete;
+        this.queryCache = queryCache;
+        this.catalog = catalog;
     }
 
+    /**
+     * Abonne une structure en mémoire aux modifications de villes et aux
+     * déplacements de restaurants commités (fusion de villes).
+     */
+    public void addListener(RestaurantListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Crée la ville, ou retourne la ville existante de même clé naturelle
+     * (NPA + nom sans casse).
+     *
+     * Si une autre session insère la même ville entre notre lecture et notre
+     * insertion, l'index unique {@value CityMapper#NATURAL_KEY_CONSTRAINT}
+     * rejette la nôtre: la ville existante est alors relue et retournée (voir
+     * {@link RestaurantService#createRestaurant}).
+     */
     public City createCity(City city) {
+        try {
+            return doCreateCity(city);
+        } catch (PersistenceException e) {
+            if (!RestaurantService.isConstraintViolation(e, CityMapper.NATURAL_KEY_CONSTRAINT))
+                throw e;
+            // Contexte nettoyé: la ville en échec porte un id de séquence jamais commité
+            em.clear();
+            IdentityMapContext.clear();
+            city.setId(null);
+            City existing = cityMapper.findByNaturalKey(city.getZipCode(), city.getCityName());
+            if (existing == null)
+                throw e;
+            return existing;
+        }
+    }
+
+    private City doCreateCity(City city) {
         EntityTransaction tx = em.getTransaction();
         try {
             tx.begin();
+            City existing = cityMapper.findByNaturalKey(city.getZipCode(), city.getCityName());
+            if (existing != null) {
+                tx.commit();
+                return existing;
+            }
             cityMapper.create(city);
+            em.flush();
             tx.commit();
-            return city;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        Listeners.run(() -> {
+            autocomplete.put(city);
+            catalog.putCity(city);
+        });
+        return city;
     }
 
     public City updateCity(City city) {
@@ -40,33 +100,104 @@ public class CityService {
             tx.begin();
             cityMapper.update(city);
             tx.commit();
-            return city;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        Listeners.run(() -> {
+            autocomplete.put(city);
+            catalog.putCity(city);
+            // Le nom a pu changer: les recherches par nom de ville sont à refaire
+            queryCache.invalidateCity(city.getId());
+        });
+        Listeners.fire(listeners, l -> l.cityUpdated(city.getId()));
+        return city;
     }
 
     public boolean deleteCity(City city) {
         EntityTransaction tx = em.getTransaction();
+        boolean result;
         try {
             tx.begin();
-            boolean result = cityMapper.delete(city);
+            result = cityMapper.delete(city);
             tx.commit();
-            return result;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        if (result) {
+            Listeners.run(() -> {
+                autocomplete.remove(city.getId());
+                catalog.removeCity(city.getId());
+            });
+        }
+        return result;
     }
 
-    public Set<City> findAllCities() {
+    /**
+     * Fusionne la ville {@code fromCityId} dans {@code intoCityId} (doublons):
+     * ses restaurants y sont déplacés par UPDATE ensemblistes, sans être
+     * chargés, puis elle est supprimée, le tout en une transaction.
+     *
+     * L'écriture contourne le contexte de persistance: celui-ci et l'Identity
+     * Map du scope sont vidés, les structures en mémoire sont notifiées pour
+     * les seuls restaurants déplacés.
+     *
+     * @return nombre de restaurants déplacés
+     */
+    public int mergeCity(int fromCityId, int intoCityId) {
+        if (fromCityId == intoCityId)
+            return 0;
+        EntityTransaction tx = em.getTransaction();
+        List<Integer> ids;
+        try {
+            tx.begin();
+            em.flush();
+            ids = restaurantMapper.relocate(fromCityId, intoCityId);
+            // Les restaurants gérés pointent encore vers la ville supprimée
+            em.clear();
+            IdentityMapContext.clear();
+            if (!cityMapper.deleteById(fromCityId))
+                throw new RuntimeException("Ville non trouvée pour fusion.");
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive())
+                tx.rollback();
+            throw e;
+        }
+        em.clear();
+        IdentityMapContext.clear();
+        Listeners.fire(listeners, l -> l.restaurantsRelocated(ids, fromCityId, intoCityId));
+        Listeners.run(() -> {
+            autocomplete.remove(fromCityId);
+            catalog.removeCity(fromCityId);
+        });
+        return ids.size();
+    }
+
+    public List<City> findAllCities() {
         return cityMapper.findAll();
     }
 
     public City findCityById(int id) {
         return cityMapper.findById(id);
     }
+
+    /**
+     * Suggestions de villes pour une saisie partielle (nom ou NPA), sans accès à
+     * la base.
+     */
+    public List<CityAutocomplete.Suggestion> completeCity(String prefix, int limit) {
+        return autocomplete.complete(prefix, limit);
+    }
+
+    public List<City> findCitiesByZipCode(String zipCode) {
+        return cityMapper.findByZipCode(zipCode);
+    }
+
+    public City findCityByNaturalKey(String zipCode, String cityName) {
+        return cityMapper.findByNaturalKey(zipCode, cityName);
+    }
 }
@@ -0,0 +1,19 @@
+package ch.hearc.ig.guideresto.service;
+
+/**
+ * Like refusé: cette IP a déjà évalué ce restaurant ce jour-là (voir
+ * {@link EvaluationService#createBasicEvaluation}). Distingue le refus
+ * métier d'un échec d'écriture.
+ */
+public class DuplicateLikeException extends RuntimeException {
+
+    private static final String MESSAGE = "Vous avez déjà évalué ce restaurant aujourd'hui.";
+
+    public DuplicateLikeException() {
+        super(MESSAGE);
+    }
+
+    public DuplicateLikeException(Throwable cause) {
+        super(MESSAGE, cause);
+    }
+}
@@ -4,7 +4,7 @@ import ch.hearc.ig.guideresto.business.EvaluationCriteria;
 import ch.hearc.ig.guideresto.persistence.EvaluationCriteriaMapper;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
-import java.util.Set;
+import java.util.List;
 
 /**
  * Service applicatif pour gérer les {@link EvaluationCriteria}.
@@ -62,7 +62,7 @@ public class EvaluationCriteriaService {
         }
     }
 
-    public Set<EvaluationCriteria> findAllCriteria() {
+    public List<EvaluationCriteria> findAllCriteria() {
         return criteriaMapper.findAll();
     }
 
@@ -0,0 +1,43 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+
+import java.util.Map;
+
+/**
+ * Observateur des écritures de {@link EvaluationService}, notifié après commit.
+ */
+public interface EvaluationListener {
+
+    default void basicEvaluationCreated(BasicEvaluation evaluation) {
+    }
+
+    default void basicEvaluationDeleted(BasicEvaluation evaluation) {
+    }
+
+    /**
+     * Likes supprimés par une écriture ensembliste.
+     *
+     * @param removedByRestaurant id du restaurant → {likes, dislikes} supprimés
+     */
+    default void basicEvaluationsPurged(Map<Integer, long[]> removedByRestaurant) {
+    }
+
+    /**
+     * Évaluation complète créée avec ses grades.
+     */
+    default void completeEvaluationCreated(CompleteEvaluation evaluation) {
+    }
+
+    /**
+     * Évaluation complète modifiée ou supprimée, ou grade ajouté/retiré:
+     * les agrégats du restaurant sont à recalculer.
+     *
+     * @param gradeMapper mapper de la session qui a commité, seul utilisable
+     *                    depuis le thread appelant pour relire les agrégats
+     */
+    default void completeEvaluationChanged(int restaurantId, GradeMapper gradeMapper) {
+    }
+}
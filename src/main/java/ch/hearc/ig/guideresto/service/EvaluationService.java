@@ -7,40 +7,104 @@ import ch.hearc.ig.guideresto.business.Restaurant;
 import ch.hearc.ig.guideresto.persistence.CompleteEvaluationMapper;
 import ch.hearc.ig.guideresto.persistence.GradeMapper;
 import ch.hearc.ig.guideresto.persistence.BasicEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.IdentityMapContext;
+import ch.hearc.ig.guideresto.persistence.TimelineKey;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
-import java.util.Set;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.Hibernate;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Service responsible for managing evaluation transactions.
  * Handles the creation of both BasicEvaluation and CompleteEvaluation with their associated Grades.
  * All operations are transactional and managed through this service layer.
+ * Registered {@link EvaluationListener}s are notified after each commit,
+ * outside the transactional block ({@link Listeners}).
  */
 public class EvaluationService {
     private final EntityManager em;
     private final CompleteEvaluationMapper completeEvaluationMapper;
     private final GradeMapper gradeMapper;
     private final BasicEvaluationMapper basicEvaluationMapper;
+    private final LikeDuplicateFilter likeDuplicateFilter;
+    // Likes supprimés par transaction (et par liste IN)
+    private static final int PURGE_CHUNK = 1000;
+
+    private final List<EvaluationListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile LikeWriteBehind likeWriteBehind;
 
     public EvaluationService(EntityManager em, CompleteEvaluationMapper completeEvaluationMapper, GradeMapper gradeMapper,
-                            BasicEvaluationMapper basicEvaluationMapper) {
+                            BasicEvaluationMapper basicEvaluationMapper, LikeDuplicateFilter likeDuplicateFilter) {
         this.em = em;
         this.completeEvaluationMapper = completeEvaluationMapper;
         this.gradeMapper = gradeMapper;
         this.basicEvaluationMapper = basicEvaluationMapper;
+        this.likeDuplicateFilter = likeDuplicateFilter;
+    }
+
+    /**
+     * Abonne une structure en mémoire aux écritures commitées.
+     */
+    public void addListener(EvaluationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Active l'écriture différée des likes: {@link #createBasicEvaluation}
+     * ne fait plus que déposer le like dans la file de {@code writeBehind}.
+     * Les listeners sont notifiés depuis le thread d'écriture, une fois le
+     * lot commité.
+     */
+    public void enableWriteBehind(LikeWriteBehind writeBehind) {
+        writeBehind.start(evaluation -> Listeners.fire(listeners, l -> l.basicEvaluationCreated(evaluation)));
+        this.likeWriteBehind = writeBehind;
+    }
+
+    /**
+     * Les likes sont-ils écrits en différé (par un autre thread) ?
+     */
+    public boolean isWriteBehind() {
+        return likeWriteBehind != null;
     }
 
     /**
      * Crée une évaluation basique en transaction.
+     * En écriture différée (voir {@link #enableWriteBehind}), une copie de
+     * l'évaluation est seulement mise en file: l'instance passée reste
+     * transitoire (sans ID) et ne doit pas être ajoutée aux likes gérés du
+     * restaurant ({@link #isWriteBehind()}).
      *
-     * Grâce à la cascade CascadeType.ALL sur Restaurant.evaluations,
+     * Grâce à la cascade CascadeType.ALL sur Restaurant.likes,
      * l'évaluation basique sera automatiquement persistée quand le restaurant parent est synchronisé.
      *
+     * Une seule évaluation par IP, par restaurant et par jour, garantie par
+     * l'index unique {@value BasicEvaluationMapper#NATURAL_KEY_CONSTRAINT}:
+     * l'insertion est tentée directement, sans lecture préalable, et c'est la
+     * base qui départage deux votes concurrents. En écriture différée, le
+     * doublon est détecté avant la mise en file par {@link LikeDuplicateFilter},
+     * qui n'interroge la base qu'en cas de doute.
+     *
      * @param evaluation l'évaluation basique à créer
-     * @return l'évaluation créée avec son ID généré
+     * @return l'évaluation créée avec son ID généré (sans ID en écriture différée)
+     * @throws DuplicateLikeException si cette IP a déjà évalué ce restaurant ce jour-là
      */
     public BasicEvaluation createBasicEvaluation(BasicEvaluation evaluation) {
+        LikeWriteBehind writeBehind = likeWriteBehind;
+        if (writeBehind != null) {
+            if (evaluation.getRestaurant() != null && evaluation.getRestaurant().getId() != null
+                    && evaluation.getIpAddress() != null && evaluation.getVisitDate() != null
+                    && likeDuplicateFilter.isDuplicate(basicEvaluationMapper, evaluation.getRestaurant().getId(),
+                            evaluation.getIpAddress(), evaluation.getVisitDate())) {
+                throw new DuplicateLikeException();
+            }
+            writeBehind.enqueue(evaluation);
+            return evaluation;
+        }
         EntityTransaction tx = em.getTransaction();
         try {
             tx.begin();
@@ -48,11 +112,51 @@ public class EvaluationService {
             em.persist(evaluation);
             em.flush();
             tx.commit();
-            return evaluation;
         } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
+            if (RestaurantService.isConstraintViolation(e, BasicEvaluationMapper.NATURAL_KEY_CONSTRAINT)) {
+                // Le like refusé ne doit pas être réinséré par un flush ultérieur
+                em.detach(evaluation);
+                evaluation.setId(null);
+                throw new DuplicateLikeException(e);
+            }
             throw e;
         }
+        Listeners.fire(listeners, l -> l.basicEvaluationCreated(evaluation));
+        return evaluation;
+    }
+
+    /**
+     * Supprime tous les likes antérieurs à {@code before}, par DELETE
+     * ensemblistes de {@value #PURGE_CHUNK} lignes, une transaction par
+     * tranche pour borner verrous et undo. Après chaque tranche, le contexte
+     * de persistance et l'Identity Map du scope sont vidés (des collections
+     * chargées pouvaient contenir ces likes) et les listeners notifiés.
+     *
+     * @return nombre de likes supprimés
+     */
+    public long purgeBasicEvaluations(Date before) {
+        long purged = 0;
+        while (true) {
+            EntityTransaction tx = em.getTransaction();
+            try {
+                tx.begin();
+                em.flush();
+                Map<Integer, long[]> removed = basicEvaluationMapper.deleteOlderThan(before, PURGE_CHUNK);
+                tx.commit();
+                if (removed.isEmpty())
+                    return purged;
+                em.clear();
+                IdentityMapContext.clear();
+                for (long[] count : removed.values()) {
+                    purged += count[0] + count[1];
+                }
+                Listeners.fire(listeners, l -> l.basicEvaluationsPurged(removed));
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            }
+        }
     }
 
     /**
@@ -94,11 +198,12 @@ public class EvaluationService {
             // Flush pour s'assurer que tout est bien inséré dans la BD
             em.flush();
             tx.commit();
-            return evaluation;
         } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
             throw e;
         }
+        Listeners.fire(listeners, l -> l.completeEvaluationCreated(evaluation));
+        return evaluation;
     }
 
     /**
@@ -108,36 +213,45 @@ public class EvaluationService {
      */
     public CompleteEvaluation updateCompleteEvaluation(CompleteEvaluation evaluation) {
         EntityTransaction tx = em.getTransaction();
+        CompleteEvaluation merged;
         try {
             tx.begin();
-            CompleteEvaluation merged = em.merge(evaluation);
+            merged = em.merge(evaluation);
             em.flush();
             tx.commit();
-            return merged;
         } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
             throw e;
         }
+        fireChanged(merged);
+        return merged;
     }
 
     /**
-     * Supprime une évaluation complète et tous ses grades (cascade)
+     * Supprime une évaluation complète et tous ses grades par DELETE
+     * ensemblistes, sans charger les grades. Le contexte de persistance et
+     * l'Identity Map du scope sont ensuite vidés (la collection des
+     * commentaires du restaurant pouvait la contenir).
      * @param evaluation l'évaluation à supprimer
      * @return true si suppression réussie
      */
     public boolean deleteCompleteEvaluation(CompleteEvaluation evaluation) {
         EntityTransaction tx = em.getTransaction();
+        boolean deleted;
         try {
             tx.begin();
-            CompleteEvaluation managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
-            em.remove(managed);
             em.flush();
+            deleted = completeEvaluationMapper.deleteCascade(evaluation.getId());
+            em.clear();
+            IdentityMapContext.clear();
             tx.commit();
-            return true;
         } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
             throw e;
         }
+        if (deleted)
+            fireChanged(evaluation);
+        return deleted;
     }
 
     /**
@@ -147,41 +261,95 @@ public class EvaluationService {
      */
     public boolean deleteBasicEvaluation(BasicEvaluation evaluation) {
         EntityTransaction tx = em.getTransaction();
+        BasicEvaluation managed;
         try {
             tx.begin();
-            BasicEvaluation managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
+            managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
             em.remove(managed);
             em.flush();
             tx.commit();
-            return true;
         } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
             throw e;
         }
+        Listeners.fire(listeners, l -> l.basicEvaluationDeleted(managed));
+        return true;
     }
 
     /**
-     * Ajoute un grade à une évaluation complète
-     * @param evaluation l'évaluation complète
-     * @param grade le grade à ajouter
+     * Ajoute un grade à une évaluation complète, ou remplace la note déjà
+     * donnée pour ce critère (MERGE, voir {@link #upsertGrade}), puis relit
+     * la note écrite.
+     *
+     * {@code grade} n'est pas persisté: il est retiré de la collection de
+     * l'évaluation avant le flush (sinon la cascade l'insérerait une seconde
+     * fois) et remplacé par le grade géré retourné.
+     *
+     * @param evaluation l'évaluation complète, déjà enregistrée
+     * @param grade le grade à ajouter (critère enregistré)
+     * @return le grade géré correspondant à la ligne de NOTES
+     */
+    public Grade addGradeToEvaluation(CompleteEvaluation evaluation, Grade grade) {
+        if (evaluation.getId() == null || grade.getCriteria() == null || grade.getCriteria().getId() == null)
+            throw new RuntimeException("Évaluation ou critère non enregistré.");
+        int criteriaId = grade.getCriteria().getId();
+        boolean attached = Hibernate.isInitialized(evaluation.getGrades());
+        if (attached && grade.getId() == null)
+            evaluation.getGrades().remove(grade);
+        upsertGrade(evaluation, criteriaId, grade.getGrade());
+        Grade managed = gradeMapper.findOneByEvaluationAndCriteria(evaluation.getId(), criteriaId);
+        if (managed == null)
+            throw new RuntimeException("Note introuvable après écriture.");
+        // Instance déjà gérée avant le MERGE: la requête ne l'a pas relue
+        if (!grade.getGrade().equals(managed.getGrade()))
+            em.refresh(managed);
+        if (attached)
+            evaluation.getGrades().add(managed);
+        return managed;
+    }
+
+    /**
+     * Donne une note à une évaluation pour un critère, en la créant ou en la
+     * remplaçant (une instruction MERGE, voir {@link GradeMapper#upsert}).
      */
-    public void addGradeToEvaluation(CompleteEvaluation evaluation, Grade grade) {
+    public void upsertGrade(CompleteEvaluation evaluation, int criteriaId, int value) {
+        upsertGrades(evaluation, Map.of(criteriaId, value));
+    }
+
+    /**
+     * Donne plusieurs notes à une évaluation en un seul aller-retour (MERGE),
+     * après le flush explicite des modifications déjà en attente.
+     *
+     * Deux saisies concurrentes d'une même nouvelle note insèrent chacune
+     * une ligne: l'index unique {@value GradeMapper#NATURAL_KEY_CONSTRAINT}
+     * rejette la seconde, qui est rejouée une fois et devient une mise à jour.
+     *
+     * @param gradesByCriteria id du critère → note
+     */
+    public void upsertGrades(CompleteEvaluation evaluation, Map<Integer, Integer> gradesByCriteria) {
+        try {
+            doUpsertGrades(evaluation, gradesByCriteria);
+        } catch (PersistenceException e) {
+            if (!RestaurantService.isConstraintViolation(e, GradeMapper.NATURAL_KEY_CONSTRAINT))
+                throw e;
+            doUpsertGrades(evaluation, gradesByCriteria);
+        }
+    }
+
+    private void doUpsertGrades(CompleteEvaluation evaluation, Map<Integer, Integer> gradesByCriteria) {
         EntityTransaction tx = em.getTransaction();
         try {
             tx.begin();
-            CompleteEvaluation managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
-            grade.setEvaluation(managed);
-            if (grade.getCriteria() != null && !em.contains(grade.getCriteria())) {
-                grade.setCriteria(em.merge(grade.getCriteria()));
-            }
-            em.persist(grade);
-            managed.getGrades().add(grade);
+            // Modifications en attente écrites ici plutôt que par le flush
+            // automatique de la requête native: le MERGE ne fait que les notes
             em.flush();
+            gradeMapper.upsertAll(evaluation.getId(), gradesByCriteria);
             tx.commit();
         } catch (RuntimeException e) {
             if (tx.isActive()) tx.rollback();
             throw e;
         }
+        fireChanged(evaluation);
     }
 
     /**
@@ -191,9 +359,10 @@ public class EvaluationService {
      */
     public void removeGradeFromEvaluation(CompleteEvaluation evaluation, Grade grade) {
         EntityTransaction tx = em.getTransaction();
+        CompleteEvaluation managed;
         try {
             tx.begin();
-            CompleteEvaluation managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
+            managed = em.contains(evaluation) ? evaluation : em.merge(evaluation);
             Grade managedGrade = em.contains(grade) ? grade : em.merge(grade);
             managed.getGrades().remove(managedGrade);
             em.remove(managedGrade);
@@ -203,41 +372,77 @@ public class EvaluationService {
             if (tx.isActive()) tx.rollback();
             throw e;
         }
+        fireChanged(managed);
     }
 
     /**
      * Trouve toutes les évaluations basiques pour un restaurant
      * @param restaurant le restaurant
-     * @return ensemble des évaluations basiques
+     * @return liste (non modifiable) des évaluations basiques
      */
-    public Set<BasicEvaluation> findBasicEvaluationsByRestaurant(Restaurant restaurant) {
+    public List<BasicEvaluation> findBasicEvaluationsByRestaurant(Restaurant restaurant) {
         return basicEvaluationMapper.findByRestaurantId(restaurant.getId());
     }
 
     /**
      * Trouve toutes les évaluations complètes pour un restaurant
      * @param restaurant le restaurant
-     * @return ensemble des évaluations complètes
+     * @return liste (non modifiable) des évaluations complètes
      */
-    public Set<CompleteEvaluation> findCompleteEvaluationsByRestaurant(Restaurant restaurant) {
+    public List<CompleteEvaluation> findCompleteEvaluationsByRestaurant(Restaurant restaurant) {
         return completeEvaluationMapper.findByRestaurantId(restaurant.getId());
     }
 
+    /**
+     * Chronologie des évaluations complètes, les plus récentes d'abord, par
+     * pages de {@code limit} (pagination par curseur: passer
+     * {@link TimelineKey#of} de la dernière évaluation reçue pour la page
+     * suivante).
+     *
+     * @param restaurantId restaurant, ou {@code null} pour tous
+     * @param from         date de visite minimale (incluse), ou {@code null}
+     * @param to           date de visite maximale (exclue), ou {@code null}
+     * @param after        curseur, ou {@code null} pour la première page
+     * @return liste (non modifiable) d'au plus {@code limit} évaluations
+     */
+    public List<CompleteEvaluation> findCompleteEvaluationTimeline(Integer restaurantId, Date from, Date to,
+            TimelineKey after, int limit) {
+        return completeEvaluationMapper.findTimeline(restaurantId, from, to, after, limit);
+    }
+
+    /**
+     * Chronologie des likes, les plus récents d'abord, par pages de
+     * {@code limit} (voir {@link #findCompleteEvaluationTimeline}).
+     *
+     * @return liste (non modifiable) d'au plus {@code limit} évaluations
+     */
+    public List<BasicEvaluation> findBasicEvaluationTimeline(Integer restaurantId, Date from, Date to,
+            TimelineKey after, int limit) {
+        return basicEvaluationMapper.findTimeline(restaurantId, from, to, after, limit);
+    }
+
     /**
      * Trouve toutes les évaluations complètes par utilisateur
      * @param username le nom d'utilisateur
-     * @return ensemble des évaluations
+     * @return liste (non modifiable) des évaluations
      */
-    public Set<CompleteEvaluation> findCompleteEvaluationsByUsername(String username) {
+    public List<CompleteEvaluation> findCompleteEvaluationsByUsername(String username) {
         return completeEvaluationMapper.findByUsername(username);
     }
 
     /**
      * Trouve tous les grades pour une évaluation
      * @param evaluation l'évaluation
-     * @return ensemble des grades
+     * @return liste (non modifiable) des grades
      */
-    public Set<Grade> findGradesForEvaluation(CompleteEvaluation evaluation) {
+    public List<Grade> findGradesForEvaluation(CompleteEvaluation evaluation) {
         return gradeMapper.findByEvaluation(evaluation);
     }
+
+    private void fireChanged(CompleteEvaluation evaluation) {
+        if (evaluation.getRestaurant() == null || evaluation.getRestaurant().getId() == null)
+            return;
+        int restaurantId = evaluation.getRestaurant().getId();
+        Listeners.fire(listeners, l -> l.completeEvaluationChanged(restaurantId, gradeMapper));
+    }
 }
@@ -0,0 +1,222 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Distributions de notes en mémoire, par (restaurant, critère) et par critère
+ * toutes évaluations confondues, pour répondre aux quantiles (p10, p50, p90...)
+ * sans requête.
+ * Chargées au démarrage en parcourant NOTES agrégées ({@link #reload()}),
+ * puis alimentées par les écritures d'{@link EvaluationService}. Les
+ * distributions peuvent être sauvegardées et relues ({@link #writeSnapshot},
+ * {@link #readSnapshot}) pour éviter le rechargement.
+ */
+public class GradeDistributions implements EvaluationListener, RestaurantListener {
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final GradeMapper gradeMapper;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // restaurantId -> (criteriaId -> distribution)
+    private final Map<Integer, Map<Integer, GradeSketch>> byRestaurant = new HashMap<>();
+    // criteriaId -> distribution globale (somme des distributions par restaurant)
+    private final Map<Integer, GradeSketch> byCriterion = new HashMap<>();
+
+    public GradeDistributions(GradeMapper gradeMapper) {
+        this.gradeMapper = gradeMapper;
+    }
+
+    /**
+     * Recharge toutes les distributions depuis la base.
+     */
+    public void reload() {
+        Map<Integer, Map<Integer, GradeSketch>> loaded = new HashMap<>();
+        try (Stream<Object[]> rows = gradeMapper.streamGradeCounts()) {
+            rows.forEach(row -> loaded.computeIfAbsent((Integer) row[0], k -> new HashMap<>())
+                    .computeIfAbsent((Integer) row[1], k -> new GradeSketch())
+                    .add(((Number) row[2]).intValue(), (Long) row[3]));
+        }
+        lock.writeLock().lock();
+        try {
+            byRestaurant.clear();
+            byCriterion.clear();
+            loaded.forEach(this::putRestaurant);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quantile {@code q} des notes d'un restaurant pour un critère, ou
+     * {@link Double#NaN} s'il n'a aucune note.
+     */
+    public double quantile(int restaurantId, int criteriaId, double q) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, GradeSketch> sketches = byRestaurant.get(restaurantId);
+            GradeSketch sketch = sketches == null ? null : sketches.get(criteriaId);
+            return sketch == null ? Double.NaN : sketch.quantile(q);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Quantile {@code q} des notes d'un critère, tous restaurants confondus.
+     */
+    public double quantile(int criteriaId, double q) {
+        lock.readLock().lock();
+        try {
+            GradeSketch sketch = byCriterion.get(criteriaId);
+            return sketch == null ? Double.NaN : sketch.quantile(q);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copie de la distribution d'un restaurant pour un critère (vide si aucune
+     * note).
+     */
+    public GradeSketch sketch(int restaurantId, int criteriaId) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, GradeSketch> sketches = byRestaurant.get(restaurantId);
+            GradeSketch sketch = sketches == null ? null : sketches.get(criteriaId);
+            return sketch == null ? new GradeSketch() : sketch.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void completeEvaluationCreated(CompleteEvaluation evaluation) {
+        if (evaluation.getRestaurant() == null || evaluation.getRestaurant().getId() == null)
+            return;
+        int restaurantId = evaluation.getRestaurant().getId();
+        lock.writeLock().lock();
+        try {
+            Map<Integer, GradeSketch> sketches = byRestaurant.computeIfAbsent(restaurantId, k -> new HashMap<>());
+            for (Grade grade : evaluation.getGrades()) {
+                if (grade.getGrade() == null || grade.getCriteria() == null || grade.getCriteria().getId() == null)
+                    continue;
+                int criteriaId = grade.getCriteria().getId();
+                sketches.computeIfAbsent(criteriaId, k -> new GradeSketch()).add(grade.getGrade());
+                byCriterion.computeIfAbsent(criteriaId, k -> new GradeSketch()).add(grade.getGrade());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void completeEvaluationChanged(int restaurantId, GradeMapper gradeMapper) {
+        // Anciennes valeurs inconnues: on relit l'histogramme du seul restaurant
+        List<Object[]> rows = gradeMapper.findGradeHistogram(false, null, restaurantId, null, null, null, null);
+        Map<Integer, GradeSketch> sketches = new HashMap<>();
+        for (Object[] row : rows) {
+            sketches.computeIfAbsent((Integer) row[0], k -> new GradeSketch())
+                    .add(((Number) row[1]).intValue(), (Long) row[2]);
+        }
+        lock.writeLock().lock();
+        try {
+            removeRestaurant(restaurantId);
+            putRestaurant(restaurantId, sketches);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+        lock.writeLock().lock();
+        try {
+            removeRestaurant(restaurantId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sauvegarde toutes les distributions par restaurant (les distributions par
+     * critère en sont déduites à la relecture).
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(byRestaurant.size());
+            for (Map.Entry<Integer, Map<Integer, GradeSketch>> restaurant : byRestaurant.entrySet()) {
+                out.writeInt(restaurant.getKey());
+                out.writeInt(restaurant.getValue().size());
+                for (Map.Entry<Integer, GradeSketch> criterion : restaurant.getValue().entrySet()) {
+                    out.writeInt(criterion.getKey());
+                    criterion.getValue().writeTo(out);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remplace les distributions par celles d'une sauvegarde.
+     */
+    public void readSnapshot(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != SNAPSHOT_VERSION)
+            throw new IOException("Version de sauvegarde inconnue: " + version);
+        Map<Integer, Map<Integer, GradeSketch>> loaded = new HashMap<>();
+        int restaurants = in.readInt();
+        for (int r = 0; r < restaurants; r++) {
+            int restaurantId = in.readInt();
+            int criteria = in.readInt();
+            Map<Integer, GradeSketch> sketches = new HashMap<>();
+            for (int c = 0; c < criteria; c++) {
+                int criteriaId = in.readInt();
+                sketches.put(criteriaId, GradeSketch.readFrom(in));
+            }
+            loaded.put(restaurantId, sketches);
+        }
+        lock.writeLock().lock();
+        try {
+            byRestaurant.clear();
+            byCriterion.clear();
+            loaded.forEach(this::putRestaurant);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putRestaurant(int restaurantId, Map<Integer, GradeSketch> sketches) {
+        if (sketches.isEmpty())
+            return;
+        byRestaurant.put(restaurantId, sketches);
+        sketches.forEach((criteriaId, sketch) -> byCriterion.computeIfAbsent(criteriaId, k -> new GradeSketch())
+                .merge(sketch));
+    }
+
+    private void removeRestaurant(int restaurantId) {
+        Map<Integer, GradeSketch> previous = byRestaurant.remove(restaurantId);
+        if (previous != null) {
+            previous.forEach((criteriaId, sketch) -> {
+                GradeSketch global = byCriterion.get(criteriaId);
+                if (global != null)
+                    global.subtract(sketch);
+            });
+        }
+    }
+}
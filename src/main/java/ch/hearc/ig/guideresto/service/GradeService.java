@@ -4,7 +4,8 @@ import ch.hearc.ig.guideresto.business.Grade;
 import ch.hearc.ig.guideresto.persistence.GradeMapper;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
-import java.util.Set;
+import jakarta.persistence.PersistenceException;
+import java.util.List;
 
 /**
  * Service applicatif pour gérer les {@link Grade}.
@@ -34,13 +35,28 @@ public class GradeService {
         }
     }
 
+    /**
+     * Écrit la note de son évaluation pour son critère en un aller-retour
+     * (MERGE, voir {@link GradeMapper#upsert}); une insertion concurrente de
+     * la même note est rejouée une fois et devient une mise à jour.
+     */
     public Grade updateGrade(Grade grade) {
+        try {
+            upsert(grade);
+        } catch (PersistenceException e) {
+            if (!RestaurantService.isConstraintViolation(e, GradeMapper.NATURAL_KEY_CONSTRAINT))
+                throw e;
+            upsert(grade);
+        }
+        return grade;
+    }
+
+    private void upsert(Grade grade) {
         EntityTransaction tx = em.getTransaction();
         try {
             tx.begin();
-            gradeMapper.update(grade);
+            gradeMapper.upsert(grade.getEvaluation().getId(), grade.getCriteria().getId(), grade.getGrade());
             tx.commit();
-            return grade;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
@@ -62,7 +78,7 @@ public class GradeService {
         }
     }
 
-    public Set<Grade> findAllGrades() {
+    public List<Grade> findAllGrades() {
         return gradeMapper.findAll();
     }
 
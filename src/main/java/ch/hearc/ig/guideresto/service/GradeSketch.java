@@ -0,0 +1,132 @@
+package ch.hearc.ig.guideresto.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Distribution fusionnable de notes entières: un compteur par valeur de note.
+ * Les notes étant de petits entiers (1 à 5), cette représentation est exacte
+ * et tient en quelques dizaines d'octets; les quantiles sont calculés en
+ * O(nombre de valeurs distinctes). Non thread-safe.
+ */
+public final class GradeSketch {
+    private long[] counts;
+    private long total;
+
+    public GradeSketch() {
+        this(new long[6], 0);
+    }
+
+    private GradeSketch(long[] counts, long total) {
+        this.counts = counts;
+        this.total = total;
+    }
+
+    public void add(int grade) {
+        add(grade, 1);
+    }
+
+    public void add(int grade, long occurrences) {
+        if (grade < 0)
+            throw new IllegalArgumentException("Note négative: " + grade);
+        if (grade >= counts.length)
+            counts = Arrays.copyOf(counts, grade + 1);
+        counts[grade] += occurrences;
+        total += occurrences;
+    }
+
+    public void merge(GradeSketch other) {
+        for (int grade = 0; grade < other.counts.length; grade++) {
+            if (other.counts[grade] != 0)
+                add(grade, other.counts[grade]);
+        }
+    }
+
+    /**
+     * Retire une distribution précédemment fusionnée (possible car les comptes
+     * sont exacts).
+     */
+    public void subtract(GradeSketch other) {
+        for (int grade = 0; grade < other.counts.length; grade++) {
+            if (other.counts[grade] != 0)
+                add(grade, -other.counts[grade]);
+        }
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return total <= 0;
+    }
+
+    /**
+     * Quantile par rang le plus proche (ex. 0.5 pour la médiane), ou
+     * {@link Double#NaN} si la distribution est vide.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("Quantile hors de [0, 1]: " + q);
+        if (isEmpty())
+            return Double.NaN;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long cumulative = 0;
+        for (int grade = 0; grade < counts.length; grade++) {
+            cumulative += counts[grade];
+            if (cumulative >= rank)
+                return grade;
+        }
+        return counts.length - 1;
+    }
+
+    public GradeSketch copy() {
+        return new GradeSketch(counts.clone(), total);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        int length = counts.length;
+        while (length > 0 && counts[length - 1] == 0)
+            length--;
+        out.writeShort(length);
+        for (int grade = 0; grade < length; grade++) {
+            out.writeLong(counts[grade]);
+        }
+    }
+
+    public static GradeSketch readFrom(DataInput in) throws IOException {
+        int length = in.readUnsignedShort();
+        long[] counts = new long[Math.max(length, 6)];
+        long total = 0;
+        for (int grade = 0; grade < length; grade++) {
+            counts[grade] = in.readLong();
+            total += counts[grade];
+        }
+        return new GradeSketch(counts, total);
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static GradeSketch fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return readFrom(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
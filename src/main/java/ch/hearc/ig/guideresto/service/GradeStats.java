@@ -0,0 +1,132 @@
+package ch.hearc.ig.guideresto.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistiques de notes en colonnes de tableaux primitifs (une ligne par clé:
+ * critère ou restaurant). L'histogramme est aplati: les comptes de la ligne
+ * {@code i} pour les notes 0..{@code bins - 1} sont aux positions
+ * {@code i * bins} à {@code i * bins + bins - 1}.
+ */
+public final class GradeStats {
+    private final int[] keys;
+    private final long[] counts;
+    private final double[] means;
+    private final int[] mins;
+    private final int[] maxs;
+    private final int bins;
+    private final long[] histograms;
+
+    private GradeStats(int[] keys, long[] counts, double[] means, int[] mins, int[] maxs, int bins,
+            long[] histograms) {
+        this.keys = keys;
+        this.counts = counts;
+        this.means = means;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.bins = bins;
+        this.histograms = histograms;
+    }
+
+    /**
+     * Construit les statistiques depuis les lignes {clé, note, nombre} triées par
+     * clé (voir {@code GradeMapper.findGradeHistogram}).
+     */
+    static GradeStats fromHistogramRows(List<Object[]> rows) {
+        int maxGrade = 0;
+        int size = 0;
+        Object previousKey = null;
+        for (Object[] row : rows) {
+            maxGrade = Math.max(maxGrade, ((Number) row[1]).intValue());
+            if (!row[0].equals(previousKey)) {
+                size++;
+                previousKey = row[0];
+            }
+        }
+        int bins = maxGrade + 1;
+        int[] keys = new int[size];
+        long[] counts = new long[size];
+        double[] means = new double[size];
+        int[] mins = new int[size];
+        int[] maxs = new int[size];
+        long[] histograms = new long[size * bins];
+        long[] sums = new long[size];
+        int i = -1;
+        previousKey = null;
+        for (Object[] row : rows) {
+            if (!row[0].equals(previousKey)) {
+                i++;
+                previousKey = row[0];
+                keys[i] = ((Number) row[0]).intValue();
+                mins[i] = Integer.MAX_VALUE;
+                maxs[i] = Integer.MIN_VALUE;
+            }
+            int grade = ((Number) row[1]).intValue();
+            long count = ((Number) row[2]).longValue();
+            if (grade >= 0)
+                histograms[i * bins + grade] = count;
+            counts[i] += count;
+            sums[i] += grade * count;
+            mins[i] = Math.min(mins[i], grade);
+            maxs[i] = Math.max(maxs[i], grade);
+        }
+        for (int j = 0; j < size; j++) {
+            means[j] = counts[j] == 0 ? 0.0 : (double) sums[j] / counts[j];
+        }
+        return new GradeStats(keys, counts, means, mins, maxs, bins, histograms);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Position de la clé, ou -1 si elle n'a aucune note.
+     */
+    public int indexOf(int key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key)
+                return i;
+        }
+        return -1;
+    }
+
+    public int key(int i) {
+        return keys[i];
+    }
+
+    public long count(int i) {
+        return counts[i];
+    }
+
+    public double mean(int i) {
+        return means[i];
+    }
+
+    public int min(int i) {
+        return mins[i];
+    }
+
+    public int max(int i) {
+        return maxs[i];
+    }
+
+    public int bins() {
+        return bins;
+    }
+
+    /**
+     * Nombre de notes égales à {@code grade} pour la ligne {@code i}.
+     */
+    public long histogram(int i, int grade) {
+        return grade < 0 || grade >= bins ? 0 : histograms[i * bins + grade];
+    }
+
+    /**
+     * Copie de l'histogramme de la ligne {@code i} (index = note).
+     */
+    public long[] histogram(int i) {
+        return Arrays.copyOfRange(histograms, i * bins, (i + 1) * bins);
+    }
+}
@@ -0,0 +1,53 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+
+import java.util.Date;
+
+/**
+ * Statistiques de notes (nombre, moyenne, min, max, histogramme) calculées par
+ * agrégat SQL sur NOTES, sans charger d'entités {@code Grade}.
+ * Lecture seule: aucune transaction n'est ouverte.
+ */
+public class GradeStatsService {
+
+    /**
+     * Filtres optionnels ({@code null} = pas de filtre). La période porte sur la
+     * date de l'évaluation complète, bornes [from, to[.
+     */
+    public record Filter(Integer typeId, Integer cityId, Date from, Date to) {
+        public static Filter none() {
+            return new Filter(null, null, null, null);
+        }
+    }
+
+    private final GradeMapper gradeMapper;
+
+    public GradeStatsService(GradeMapper gradeMapper) {
+        this.gradeMapper = gradeMapper;
+    }
+
+    /**
+     * Une ligne par critère, tous restaurants confondus.
+     */
+    public GradeStats statsByCriterion(Filter filter) {
+        return GradeStats.fromHistogramRows(gradeMapper.findGradeHistogram(false, null, null, filter.typeId(),
+                filter.cityId(), filter.from(), filter.to()));
+    }
+
+    /**
+     * Une ligne par critère pour un seul restaurant.
+     */
+    public GradeStats statsForRestaurant(int restaurantId, Filter filter) {
+        return GradeStats.fromHistogramRows(gradeMapper.findGradeHistogram(false, null, restaurantId,
+                filter.typeId(), filter.cityId(), filter.from(), filter.to()));
+    }
+
+    /**
+     * Une ligne par restaurant pour un critère donné.
+     */
+    public GradeStats statsByRestaurant(int criteriaId, Filter filter) {
+        return GradeStats.fromHistogramRows(gradeMapper.findGradeHistogram(true, criteriaId, null,
+                filter.typeId(), filter.cityId(), filter.from(), filter.to()));
+    }
+}
@@ -0,0 +1,112 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.persistence.BasicEvaluationMapper;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Détection des likes en double (même restaurant, même IP, même jour) sans
+ * accès à la base dans le cas courant.
+ * Un filtre de Bloom par jour répond "certainement nouveau"; seul un
+ * "peut-être déjà vu" déclenche la vérification indexée
+ * {@link BasicEvaluationMapper#existsForRestaurantIpAndDay}. Les filtres
+ * tournent: seuls les {@value #RETAINED_DAYS} derniers jours sont conservés.
+ *
+ * Le filtre ne garde aucun EntityManager: la vérification en base passe par
+ * le mapper de l'appelant, ce qui permet de le partager entre requêtes
+ * concurrentes.
+ *
+ * Seule l'écriture différée s'en sert, pour refuser le doublon avant la mise
+ * en file; en écriture directe, l'index unique de LIKES fait foi.
+ *
+ * Le filtre ne voit que les likes passés par cette instance (amorcé au
+ * démarrage avec ceux du jour); d'autres instances de l'application ne sont
+ * pas détectées.
+ */
+public class LikeDuplicateFilter {
+
+    private static final int RETAINED_DAYS = 2;
+
+    private final long expectedLikesPerDay;
+    private final double falsePositiveRate;
+    private final ZoneId zone = ZoneId.systemDefault();
+    // epochDay -> filtre du jour
+    private final ConcurrentNavigableMap<Long, BloomFilter> filters = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param expectedLikesPerDay nombre de likes attendus par jour (dimensionne chaque filtre)
+     * @param falsePositiveRate   proportion visée de vérifications inutiles en base
+     */
+    public LikeDuplicateFilter(long expectedLikesPerDay, double falsePositiveRate) {
+        this.expectedLikesPerDay = expectedLikesPerDay;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Amorce le filtre du jour avec les likes déjà enregistrés aujourd'hui.
+     */
+    public void warmUp(BasicEvaluationMapper basicEvaluationMapper) {
+        LocalDate today = LocalDate.now(zone);
+        BloomFilter filter = filterFor(today.toEpochDay());
+        for (Object[] row : basicEvaluationMapper.findRestaurantIpPairsSince(toDate(today))) {
+            filter.put(key((Integer) row[0], (String) row[1]));
+        }
+    }
+
+    /**
+     * Enregistre le like dans le filtre et indique s'il s'agit d'un doublon.
+     * La base n'est interrogée que si le filtre ne peut pas conclure.
+     *
+     * @return {@code true} si cette IP a déjà évalué ce restaurant ce jour-là
+     */
+    public boolean isDuplicate(BasicEvaluationMapper basicEvaluationMapper, int restaurantId, String ipAddress,
+            Date visitDate) {
+        LocalDate day = visitDate.toInstant().atZone(zone).toLocalDate();
+        BloomFilter filter = filterFor(day.toEpochDay());
+        if (filter != null && filter.put(key(restaurantId, ipAddress)))
+            return false; // certainement nouveau
+        return basicEvaluationMapper.existsForRestaurantIpAndDay(restaurantId, ipAddress, toDate(day),
+                toDate(day.plusDays(1)));
+    }
+
+    /**
+     * Mémoire occupée par les filtres conservés.
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (BloomFilter filter : filters.values()) {
+            size += filter.sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Filtre du jour, ou {@code null} si le jour est sorti de la fenêtre
+     * conservée ou est postérieur à aujourd'hui (la base fait alors foi): une
+     * date future ne doit pas faire tourner les filtres des jours courants.
+     */
+    private BloomFilter filterFor(long epochDay) {
+        if (epochDay > LocalDate.now(zone).toEpochDay())
+            return null;
+        if (!filters.isEmpty() && epochDay <= filters.lastKey() - RETAINED_DAYS)
+            return null;
+        BloomFilter filter = filters.computeIfAbsent(epochDay,
+                d -> new BloomFilter(expectedLikesPerDay, falsePositiveRate));
+        // Rotation: oublie les jours sortis de la fenêtre
+        filters.headMap(filters.lastKey() - RETAINED_DAYS + 1).clear();
+        return filter;
+    }
+
+    private Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(zone).toInstant());
+    }
+
+    private static String key(int restaurantId, String ipAddress) {
+        return restaurantId + "|" + ipAddress;
+    }
+}
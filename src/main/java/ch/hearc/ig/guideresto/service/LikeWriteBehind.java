@@ -0,0 +1,200 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Écriture différée des likes (mode optionnel de {@link EvaluationService}).
+ * Les likes sont déposés dans une file non bloquante et bornée; un thread
+ * dédié les insère par lots, dans une seule transaction, toutes les
+ * {@code maxDelayMillis} ms ou dès que {@code batchSize} likes attendent.
+ *
+ * Contre-pression: quand la file est pleine, {@link #enqueue} attend qu'un
+ * lot soit écrit, au plus {@code ENQUEUE_TIMEOUT_SECONDS} secondes.
+ * {@link #close()} écrit tout ce qui reste avant de rendre la main.
+ *
+ * Le thread d'écriture possède son propre EntityManager: celui de
+ * l'application n'est jamais partagé entre threads. Il écrit une copie de
+ * chaque like, rattachée à son propre contexte: l'instance déposée n'est ni
+ * persistée ni modifiée.
+ */
+public class LikeWriteBehind implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(LikeWriteBehind.class);
+    private static final long ENQUEUE_TIMEOUT_SECONDS = 5;
+
+    private final EntityManagerFactory emf;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final ConcurrentLinkedQueue<BasicEvaluation> queue = new ConcurrentLinkedQueue<>();
+    // Une place libre dans la file = un permis
+    private final Semaphore freeSlots;
+    private final int capacity;
+    private volatile boolean running;
+    private Thread writer;
+    private Consumer<BasicEvaluation> onCommitted = evaluation -> { };
+
+    /**
+     * @param capacity       nombre maximal de likes en attente d'écriture
+     * @param batchSize      nombre de likes déclenchant une écriture immédiate
+     * @param maxDelayMillis délai maximal avant qu'un like soit écrit
+     */
+    public LikeWriteBehind(EntityManagerFactory emf, int capacity, int batchSize, long maxDelayMillis) {
+        if (capacity <= 0 || batchSize <= 0 || maxDelayMillis <= 0)
+            throw new IllegalArgumentException("Paramètres d'écriture différée invalides");
+        this.emf = emf;
+        this.capacity = capacity;
+        this.batchSize = Math.min(batchSize, capacity);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.freeSlots = new Semaphore(capacity);
+    }
+
+    /**
+     * Démarre le thread d'écriture; {@code onCommitted} est appelé (depuis ce
+     * thread) pour chaque like une fois son lot commité.
+     */
+    synchronized void start(Consumer<BasicEvaluation> onCommitted) {
+        if (running)
+            return;
+        this.onCommitted = onCommitted;
+        running = true;
+        writer = new Thread(this::run, "likes-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Dépose une copie du like dans la file; {@code evaluation} reste
+     * transitoire (sans id) et ne doit pas être ajoutée à une collection gérée.
+     *
+     * @throws RuntimeException si la file reste pleine trop longtemps ou si
+     *                          l'écriture différée est arrêtée
+     */
+    void enqueue(BasicEvaluation evaluation) {
+        if (!running)
+            throw new RuntimeException("L'écriture différée des likes est arrêtée.");
+        try {
+            if (!freeSlots.tryAcquire(ENQUEUE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                throw new RuntimeException("Trop de likes en attente, veuillez réessayer plus tard.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Enregistrement du like interrompu.", e);
+        }
+        queue.offer(new BasicEvaluation(evaluation.getVisitDate(), evaluation.getRestaurant(),
+                evaluation.getLikeRestaurant(), evaluation.getIpAddress()));
+        if (pending() >= batchSize)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Nombre de likes déposés et pas encore écrits.
+     */
+    public int pending() {
+        return capacity - freeSlots.availablePermits();
+    }
+
+    /**
+     * Arrête le thread d'écriture après avoir écrit tous les likes en attente.
+     */
+    @Override
+    public void close() {
+        Thread toJoin;
+        synchronized (this) {
+            if (!running)
+                return;
+            running = false;
+            toJoin = writer;
+        }
+        LockSupport.unpark(toJoin);
+        try {
+            toJoin.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            while (running || !queue.isEmpty()) {
+                if (running && queue.size() < batchSize)
+                    LockSupport.parkNanos(this, maxDelayNanos);
+                List<BasicEvaluation> batch;
+                while (!(batch = drain()).isEmpty()) {
+                    write(em, batch);
+                }
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    private List<BasicEvaluation> drain() {
+        List<BasicEvaluation> batch = new ArrayList<>(batchSize);
+        BasicEvaluation evaluation;
+        while (batch.size() < batchSize && (evaluation = queue.poll()) != null) {
+            batch.add(evaluation);
+        }
+        return batch;
+    }
+
+    /**
+     * Écrit un lot dans une transaction. En cas d'échec, les likes du lot
+     * sont réécrits un par un pour isoler (et journaliser) le fautif.
+     */
+    private void write(EntityManager em, List<BasicEvaluation> batch) {
+        try {
+            if (!persist(em, batch)) {
+                for (BasicEvaluation evaluation : batch) {
+                    evaluation.setId(null);
+                    if (!persist(em, List.of(evaluation)))
+                        logger.error("Like perdu pour le restaurant {} ({})",
+                                evaluation.getRestaurant().getId(), evaluation.getIpAddress());
+                }
+            }
+        } finally {
+            freeSlots.release(batch.size());
+        }
+    }
+
+    private boolean persist(EntityManager em, List<BasicEvaluation> evaluations) {
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            for (BasicEvaluation evaluation : evaluations) {
+                // Référence propre à ce contexte: le restaurant déposé appartient à celui de l'application
+                evaluation.setRestaurant(em.getReference(Restaurant.class, evaluation.getRestaurant().getId()));
+                em.persist(evaluation);
+            }
+            em.flush();
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            logger.warn("Échec de l'écriture d'un lot de {} like(s)", evaluations.size(), e);
+            return false;
+        } finally {
+            em.clear();
+        }
+        for (BasicEvaluation evaluation : evaluations) {
+            try {
+                onCommitted.accept(evaluation);
+            } catch (RuntimeException e) {
+                logger.error("Erreur lors de la notification d'un like écrit", e);
+            }
+        }
+        return true;
+    }
+}
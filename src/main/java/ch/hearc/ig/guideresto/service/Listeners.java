@@ -0,0 +1,43 @@
+package ch.hearc.ig.guideresto.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Notification des structures en mémoire après un commit.
+ *
+ * À appeler hors du bloc transactionnel: les données sont déjà écrites, une
+ * erreur d'un listener est journalisée sans interrompre les suivants ni être
+ * présentée comme un échec de l'écriture.
+ */
+final class Listeners {
+
+    private static final Logger logger = LogManager.getLogger(Listeners.class);
+
+    private Listeners() {
+    }
+
+    static <L> void fire(List<L> listeners, Consumer<? super L> event) {
+        for (L listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                logger.error("Erreur d'un listener après commit ({})", listener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Mise à jour directe d'une structure en mémoire après commit.
+     */
+    static void run(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            logger.error("Erreur de mise à jour en mémoire après commit", e);
+        }
+    }
+}
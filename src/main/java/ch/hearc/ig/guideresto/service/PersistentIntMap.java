@@ -0,0 +1,171 @@
+package ch.hearc.ig.guideresto.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Map immuable id → valeur à partage structurel (hash array mapped trie,
+ * 32 branches par niveau). {@link #put} et {@link #remove} rendent une
+ * nouvelle map qui ne recopie que le chemin modifié (au plus 7 nœuds); le
+ * reste de l'arbre est partagé avec la version précédente.
+ *
+ * Les clés sont des {@code int}: le hachage (multiplication par une constante
+ * impaire) est une bijection, deux clés distinctes ne collisionnent jamais.
+ */
+final class PersistentIntMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(Node.EMPTY, 0);
+
+    private record Leaf(int key, Object value) {
+    }
+
+    /**
+     * Nœud compact: {@code bitmap} indique les branches présentes, {@code slots}
+     * ne contient que celles-ci (feuilles ou sous-nœuds).
+     */
+    private record Node(int bitmap, Object[] slots) {
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node with(int bit, Object slot) {
+            int idx = index(bit);
+            Object[] copy = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, copy, 0, idx);
+            copy[idx] = slot;
+            System.arraycopy(slots, idx, copy, idx + 1, slots.length - idx);
+            return new Node(bitmap | bit, copy);
+        }
+
+        Node replace(int bit, Object slot) {
+            Object[] copy = slots.clone();
+            copy[index(bit)] = slot;
+            return new Node(bitmap, copy);
+        }
+
+        Node without(int bit) {
+            int idx = index(bit);
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, idx);
+            System.arraycopy(slots, idx + 1, copy, idx, slots.length - idx - 1);
+            return new Node(bitmap & ~bit, copy);
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0;; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap() & bit) == 0)
+                return null;
+            Object slot = node.slots()[node.index(bit)];
+            if (slot instanceof Leaf leaf)
+                return leaf.key() == key ? (V) leaf.value() : null;
+            node = (Node) slot;
+        }
+    }
+
+    PersistentIntMap<V> put(int key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root, key, hash(key), value, 0, added);
+        if (newRoot == root)
+            return this;
+        return new PersistentIntMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    PersistentIntMap<V> remove(int key) {
+        Object newRoot = remove(root, key, hash(key), 0);
+        if (newRoot == root)
+            return this;
+        return new PersistentIntMap<>((Node) newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+        forEach(root, leaf -> action.accept((V) leaf.value()));
+    }
+
+    private static Node put(Node node, int key, int hash, Object value, int shift, boolean[] added) {
+        int bit = bit(hash, shift);
+        if ((node.bitmap() & bit) == 0) {
+            added[0] = true;
+            return node.with(bit, new Leaf(key, value));
+        }
+        Object slot = node.slots()[node.index(bit)];
+        if (slot instanceof Leaf leaf) {
+            if (leaf.key() == key)
+                return leaf.value() == value ? node : node.replace(bit, new Leaf(key, value));
+            // Deux clés sur la même branche: on descend d'un niveau
+            added[0] = true;
+            Node child = put(Node.EMPTY, leaf.key(), hash(leaf.key()), leaf.value(), shift + BITS, new boolean[1]);
+            return node.replace(bit, put(child, key, hash, value, shift + BITS, new boolean[1]));
+        }
+        Node child = (Node) slot;
+        Node newChild = put(child, key, hash, value, shift + BITS, added);
+        return newChild == child ? node : node.replace(bit, newChild);
+    }
+
+    /**
+     * @return le nœud modifié, le même nœud si la clé est absente, ou la
+     *         feuille restante quand le nœud n'en contient plus qu'une
+     */
+    private static Object remove(Node node, int key, int hash, int shift) {
+        int bit = bit(hash, shift);
+        if ((node.bitmap() & bit) == 0)
+            return node;
+        Object slot = node.slots()[node.index(bit)];
+        Node result;
+        if (slot instanceof Leaf leaf) {
+            if (leaf.key() != key)
+                return node;
+            result = node.without(bit);
+        } else {
+            Object newChild = remove((Node) slot, key, hash, shift + BITS);
+            if (newChild == slot)
+                return node;
+            result = node.replace(bit, newChild);
+        }
+        if (result.slots().length == 1 && result.slots()[0] instanceof Leaf single && shift > 0)
+            return single;
+        return result;
+    }
+
+    private static void forEach(Node node, Consumer<Leaf> action) {
+        for (Object slot : node.slots()) {
+            if (slot instanceof Leaf leaf)
+                action.accept(leaf);
+            else
+                forEach((Node) slot, action);
+        }
+    }
+
+    private static int hash(int key) {
+        return key * 0x9E3779B9;
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+}
@@ -0,0 +1,170 @@
+package ch.hearc.ig.guideresto.service;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Arbre radix compact (chemins à enfant unique fusionnés) associant des clés
+ * normalisées à des ids entiers. Les enfants sont stockés dans des tableaux
+ * triés par premier caractère plutôt que dans des maps.
+ * Non thread-safe: la synchronisation est laissée à l'appelant.
+ */
+final class RadixTrie {
+
+    private static final class Node {
+        private String edge;
+        private char[] firstChars = new char[0];
+        private Node[] children = new Node[0];
+        private int[] ids = new int[0];
+
+        private Node(String edge) {
+            this.edge = edge;
+        }
+
+        private int childIndex(char c) {
+            return Arrays.binarySearch(firstChars, c);
+        }
+
+        private void addChild(Node child) {
+            int pos = -childIndex(child.edge.charAt(0)) - 1;
+            firstChars = insert(firstChars, pos, child.edge.charAt(0));
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, pos);
+            grown[pos] = child;
+            System.arraycopy(children, pos, grown, pos + 1, children.length - pos);
+            children = grown;
+        }
+
+        private void removeChild(int pos) {
+            char[] chars = new char[firstChars.length - 1];
+            System.arraycopy(firstChars, 0, chars, 0, pos);
+            System.arraycopy(firstChars, pos + 1, chars, pos, chars.length - pos);
+            firstChars = chars;
+            Node[] shrunk = new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, pos);
+            System.arraycopy(children, pos + 1, shrunk, pos, shrunk.length - pos);
+            children = shrunk;
+        }
+
+        private static char[] insert(char[] array, int pos, char value) {
+            char[] grown = new char[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, pos);
+            grown[pos] = value;
+            System.arraycopy(array, pos, grown, pos + 1, array.length - pos);
+            return grown;
+        }
+    }
+
+    private final Node root = new Node("");
+
+    void insert(String key, int id) {
+        Node node = root;
+        int offset = 0;
+        while (offset < key.length()) {
+            int pos = node.childIndex(key.charAt(offset));
+            if (pos < 0) {
+                Node leaf = new Node(key.substring(offset));
+                node.addChild(leaf);
+                node = leaf;
+                offset = key.length();
+                break;
+            }
+            Node child = node.children[pos];
+            int common = commonPrefix(child.edge, key, offset);
+            if (common < child.edge.length()) {
+                // Scinde l'arête: parent -> split(commun) -> child(reste)
+                Node split = new Node(child.edge.substring(0, common));
+                child.edge = child.edge.substring(common);
+                node.children[pos] = split;
+                split.addChild(child);
+                child = split;
+            }
+            node = child;
+            offset += common;
+        }
+        for (int existing : node.ids) {
+            if (existing == id)
+                return;
+        }
+        node.ids = Arrays.copyOf(node.ids, node.ids.length + 1);
+        node.ids[node.ids.length - 1] = id;
+    }
+
+    void remove(String key, int id) {
+        remove(root, key, 0, id);
+    }
+
+    /**
+     * Appelle {@code consumer} pour chaque id dont une clé commence par
+     * {@code prefix} (un id peut être visité plusieurs fois s'il a plusieurs clés).
+     */
+    void forEachWithPrefix(String prefix, IntConsumer consumer) {
+        Node node = root;
+        int offset = 0;
+        while (offset < prefix.length()) {
+            int pos = node.childIndex(prefix.charAt(offset));
+            if (pos < 0)
+                return;
+            Node child = node.children[pos];
+            int common = commonPrefix(child.edge, prefix, offset);
+            if (offset + common < prefix.length() && common < child.edge.length())
+                return;
+            node = child;
+            offset += common;
+        }
+        visit(node, consumer);
+    }
+
+    private static void visit(Node node, IntConsumer consumer) {
+        for (int id : node.ids) {
+            consumer.accept(id);
+        }
+        for (Node child : node.children) {
+            visit(child, consumer);
+        }
+    }
+
+    /**
+     * @return {@code true} si le nœud est devenu vide et doit être détaché
+     */
+    private static boolean remove(Node node, String key, int offset, int id) {
+        if (offset == key.length()) {
+            int idx = -1;
+            for (int i = 0; i < node.ids.length; i++) {
+                if (node.ids[i] == id)
+                    idx = i;
+            }
+            if (idx >= 0) {
+                int[] shrunk = new int[node.ids.length - 1];
+                System.arraycopy(node.ids, 0, shrunk, 0, idx);
+                System.arraycopy(node.ids, idx + 1, shrunk, idx, shrunk.length - idx);
+                node.ids = shrunk;
+            }
+        } else {
+            int pos = node.childIndex(key.charAt(offset));
+            if (pos < 0)
+                return false;
+            Node child = node.children[pos];
+            if (!key.startsWith(child.edge, offset))
+                return false;
+            if (remove(child, key, offset + child.edge.length(), id)) {
+                node.removeChild(pos);
+            } else if (child.ids.length == 0 && child.children.length == 1) {
+                // Refusionne un nœud intermédiaire devenu inutile
+                Node grandChild = child.children[0];
+                grandChild.edge = child.edge + grandChild.edge;
+                node.children[pos] = grandChild;
+            }
+        }
+        return node.ids.length == 0 && node.children.length == 0 && !node.edge.isEmpty();
+    }
+
+    private static int commonPrefix(String edge, String key, int offset) {
+        int max = Math.min(edge.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && edge.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
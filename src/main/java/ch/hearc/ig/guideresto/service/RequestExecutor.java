@@ -0,0 +1,165 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.persistence.IdentityMapContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Exécute chaque appel de service sur un thread virtuel, avec son propre
+ * EntityManager et sa propre Identity Map ({@link ServiceScope}).
+ *
+ * Les threads virtuels ne coûtent presque rien: des milliers de requêtes
+ * peuvent être en vol. Le travail en base est en revanche limité par un
+ * sémaphore dimensionné sur le pool de connexions; une requête attend son
+ * permis au plus jusqu'à son échéance.
+ *
+ * L'échéance est propagée: temps d'attente du permis, timeout des requêtes
+ * SQL ({@code jakarta.persistence.query.timeout}, arrondi à la seconde
+ * supérieure car JDBC ne connaît que les secondes) et interruption du thread
+ * à expiration, seule à tenir une échéance inférieure à la seconde.
+ * L'annulation d'un {@link Future} interrompt également la requête; une
+ * requête terminée retire son minuteur de la file.
+ */
+public class RequestExecutor implements AutoCloseable {
+
+    private static final String QUERY_TIMEOUT_HINT = "jakarta.persistence.query.timeout";
+
+    private final EntityManagerFactory emf;
+    private final ServiceScope.Shared shared;
+    private final Semaphore dbPermits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Annule les requêtes arrivées à échéance
+    private final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "request-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Requête en vol: annule son minuteur d'échéance dès qu'elle se termine.
+     */
+    private static final class Request<T> extends FutureTask<T> {
+        private volatile ScheduledFuture<?> timer;
+
+        Request(Callable<T> callable) {
+            super(callable);
+        }
+
+        void arm(ScheduledFuture<?> timer) {
+            this.timer = timer;
+            // Terminée avant d'avoir reçu son minuteur
+            if (isDone())
+                timer.cancel(false);
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> current = timer;
+            if (current != null)
+                current.cancel(false);
+        }
+    }
+
+    /**
+     * @param maxConcurrentDbWork nombre de requêtes travaillant en base en même
+     *                            temps (taille du pool de connexions)
+     */
+    public RequestExecutor(EntityManagerFactory emf, ServiceScope.Shared shared, int maxConcurrentDbWork) {
+        if (maxConcurrentDbWork <= 0)
+            throw new IllegalArgumentException("Le nombre de connexions doit être positif");
+        this.emf = emf;
+        this.shared = shared;
+        this.dbPermits = new Semaphore(maxConcurrentDbWork, true);
+        watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Soumet une requête; elle est annulée si elle n'est pas terminée après
+     * {@code timeout}.
+     */
+    public <T> Future<T> submit(Function<ServiceScope, T> request, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Request<T> task = new Request<>(() -> run(request, deadline));
+        executor.execute(task);
+        task.arm(watchdog.schedule(() -> task.cancel(true), timeout.toNanos(), TimeUnit.NANOSECONDS));
+        return task;
+    }
+
+    /**
+     * Exécute une requête et attend son résultat.
+     *
+     * @throws RuntimeException si l'échéance est dépassée, si l'appelant est
+     *                          interrompu ou si la requête échoue
+     */
+    public <T> T call(Function<ServiceScope, T> request, Duration timeout) {
+        Future<T> future = submit(request, timeout);
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            throw new RuntimeException("Délai dépassé (" + timeout.toMillis() + " ms)", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Requête interrompue", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Refuse les nouvelles requêtes et attend la fin de celles en cours.
+     */
+    @Override
+    public void close() {
+        executor.close();
+        watchdog.shutdownNow();
+    }
+
+    private <T> T run(Function<ServiceScope, T> request, long deadline) throws InterruptedException {
+        if (!dbPermits.tryAcquire(remainingNanos(deadline), TimeUnit.NANOSECONDS))
+            throw new RuntimeException("Aucune connexion disponible avant l'échéance");
+        EntityManager em = null;
+        try {
+            em = emf.createEntityManager();
+            em.setProperty(QUERY_TIMEOUT_HINT, queryTimeoutMillis(remainingNanos(deadline)));
+            return request.apply(new ServiceScope(em, shared));
+        } finally {
+            IdentityMapContext.clear();
+            if (em != null) {
+                if (em.getTransaction().isActive())
+                    em.getTransaction().rollback();
+                em.close();
+            }
+            dbPermits.release();
+        }
+    }
+
+    /**
+     * Timeout SQL en millisecondes, en secondes entières (au moins une): une
+     * valeur inférieure serait tronquée à 0, c'est-à-dire sans timeout.
+     */
+    private static long queryTimeoutMillis(long remainingNanos) {
+        long seconds = Math.max(1, (remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        return TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+}
@@ -0,0 +1,211 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.CityMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantTypeMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Catalogue en mémoire des restaurants, villes et types, versionné par
+ * copie sur écriture (MVCC).
+ *
+ * Les lecteurs prennent un {@link Snapshot} immuable par une simple lecture
+ * volatile: aucun verrou, aucune attente même pendant une écriture, et une
+ * vue cohérente des trois tables. Les écritures commitées publient une
+ * nouvelle version par échange atomique; grâce aux {@link PersistentIntMap},
+ * une version ne recopie que les quelques nœuds modifiés et partage le reste
+ * avec la précédente.
+ */
+public class RestaurantCatalog implements RestaurantListener {
+
+    public record RestaurantEntry(int id, String name, String website, String street, Integer cityId,
+                                  Integer typeId) {
+    }
+
+    public record CityEntry(int id, String zipCode, String cityName) {
+    }
+
+    public record TypeEntry(int id, String label) {
+    }
+
+    /**
+     * Version immuable du catalogue.
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, PersistentIntMap.empty(), PersistentIntMap.empty(),
+                PersistentIntMap.empty());
+
+        private final long version;
+        private final PersistentIntMap<RestaurantEntry> restaurants;
+        private final PersistentIntMap<CityEntry> cities;
+        private final PersistentIntMap<TypeEntry> types;
+
+        private Snapshot(long version, PersistentIntMap<RestaurantEntry> restaurants,
+                PersistentIntMap<CityEntry> cities, PersistentIntMap<TypeEntry> types) {
+            this.version = version;
+            this.restaurants = restaurants;
+            this.cities = cities;
+            this.types = types;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public RestaurantEntry restaurant(int id) {
+            return restaurants.get(id);
+        }
+
+        public CityEntry city(int id) {
+            return cities.get(id);
+        }
+
+        public TypeEntry type(int id) {
+            return types.get(id);
+        }
+
+        public int restaurantCount() {
+            return restaurants.size();
+        }
+
+        /**
+         * Restaurants d'un type (ordre non défini).
+         */
+        public List<RestaurantEntry> restaurantsByType(int typeId) {
+            List<RestaurantEntry> result = new ArrayList<>();
+            restaurants.forEachValue(r -> {
+                if (r.typeId() != null && r.typeId() == typeId)
+                    result.add(r);
+            });
+            return result;
+        }
+
+        private Snapshot withRestaurants(PersistentIntMap<RestaurantEntry> restaurants) {
+            return new Snapshot(version + 1, restaurants, cities, types);
+        }
+
+        private Snapshot withCities(PersistentIntMap<CityEntry> cities) {
+            return new Snapshot(version + 1, restaurants, cities, types);
+        }
+
+        private Snapshot withTypes(PersistentIntMap<TypeEntry> types) {
+            return new Snapshot(version + 1, restaurants, cities, types);
+        }
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    /**
+     * Version courante, à garder le temps d'une lecture cohérente.
+     */
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Recharge tout le catalogue (projections, sans CLOB) et le publie d'un coup.
+     */
+    public void reload(RestaurantMapper restaurantMapper, CityMapper cityMapper, RestaurantTypeMapper typeMapper) {
+        PersistentIntMap<RestaurantEntry> restaurants = PersistentIntMap.empty();
+        for (Object[] row : restaurantMapper.findCatalogRows()) {
+            RestaurantEntry entry = new RestaurantEntry((Integer) row[0], (String) row[1], (String) row[2],
+                    (String) row[3], (Integer) row[4], (Integer) row[5]);
+            restaurants = restaurants.put(entry.id(), entry);
+        }
+        PersistentIntMap<CityEntry> cities = PersistentIntMap.empty();
+        for (City city : cityMapper.findAll()) {
+            cities = cities.put(city.getId(), new CityEntry(city.getId(), city.getZipCode(), city.getCityName()));
+        }
+        PersistentIntMap<TypeEntry> types = PersistentIntMap.empty();
+        for (Map.Entry<Integer, String> type : typeMapper.findLabels().entrySet()) {
+            types = types.put(type.getKey(), new TypeEntry(type.getKey(), type.getValue()));
+        }
+        Snapshot loaded = new Snapshot(current.get().version() + 1, restaurants, cities, types);
+        current.set(loaded);
+    }
+
+    public void putCity(City city) {
+        CityEntry entry = new CityEntry(city.getId(), city.getZipCode(), city.getCityName());
+        publish(s -> s.withCities(s.cities.put(entry.id(), entry)));
+    }
+
+    public void removeCity(int cityId) {
+        publish(s -> s.withCities(s.cities.remove(cityId)));
+    }
+
+    public void putType(RestaurantType type) {
+        TypeEntry entry = new TypeEntry(type.getId(), type.getLabel());
+        publish(s -> s.withTypes(s.types.put(entry.id(), entry)));
+    }
+
+    public void removeType(int typeId) {
+        publish(s -> s.withTypes(s.types.remove(typeId)));
+    }
+
+    @Override
+    public void restaurantSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+        City city = restaurant.getAddress() == null ? null : restaurant.getAddress().getCity();
+        RestaurantType type = restaurant.getType();
+        RestaurantEntry entry = new RestaurantEntry(restaurant.getId(), restaurant.getName(),
+                restaurant.getWebsite(), restaurant.getStreet(), city == null ? null : city.getId(),
+                type == null ? null : type.getId());
+        // Ville ou type créés avec le restaurant: publiés dans la même version
+        CityEntry cityEntry = city == null ? null : new CityEntry(city.getId(), city.getZipCode(), city.getCityName());
+        TypeEntry typeEntry = type == null ? null : new TypeEntry(type.getId(), type.getLabel());
+        publish(s -> {
+            Snapshot next = s.withRestaurants(s.restaurants.put(entry.id(), entry));
+            PersistentIntMap<CityEntry> cities = cityEntry == null ? next.cities
+                    : next.cities.put(cityEntry.id(), cityEntry);
+            PersistentIntMap<TypeEntry> types = typeEntry == null ? next.types
+                    : next.types.put(typeEntry.id(), typeEntry);
+            return new Snapshot(next.version, next.restaurants, cities, types);
+        });
+    }
+
+    @Override
+    public void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+        publish(s -> s.withRestaurants(s.restaurants.remove(restaurantId)));
+    }
+
+    @Override
+    public void restaurantsRetyped(List<Integer> restaurantIds, int fromTypeId, int toTypeId) {
+        publish(s -> s.withRestaurants(replaceAll(s.restaurants, restaurantIds,
+                r -> new RestaurantEntry(r.id(), r.name(), r.website(), r.street(), r.cityId(), toTypeId))));
+    }
+
+    @Override
+    public void restaurantsRelocated(List<Integer> restaurantIds, int fromCityId, int toCityId) {
+        publish(s -> s.withRestaurants(replaceAll(s.restaurants, restaurantIds,
+                r -> new RestaurantEntry(r.id(), r.name(), r.website(), r.street(), toCityId, r.typeId()))));
+    }
+
+    /**
+     * Remplace les entrées présentes parmi {@code ids}, le tout dans une seule
+     * nouvelle version.
+     */
+    private static PersistentIntMap<RestaurantEntry> replaceAll(PersistentIntMap<RestaurantEntry> restaurants,
+            List<Integer> ids, UnaryOperator<RestaurantEntry> change) {
+        for (Integer id : ids) {
+            RestaurantEntry entry = restaurants.get(id);
+            if (entry != null)
+                restaurants = restaurants.put(id, change.apply(entry));
+        }
+        return restaurants;
+    }
+
+    /**
+     * Applique une modification pure à la version courante et publie le
+     * résultat; rejouée si un autre écrivain a publié entre-temps.
+     */
+    private void publish(UnaryOperator<Snapshot> change) {
+        current.updateAndGet(change);
+    }
+}
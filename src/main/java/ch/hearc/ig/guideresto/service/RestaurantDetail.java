@@ -0,0 +1,33 @@
+package ch.hearc.ig.guideresto.service;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Vue détail d'un restaurant, immuable et détachée de toute session JPA.
+ * Assemblée par {@link RestaurantDetailLoader}. Les ids du type et de la
+ * ville permettent d'invalider la vue quand leur libellé change.
+ */
+public record RestaurantDetail(int id, String name, String description, String website, int typeId,
+                               String typeLabel, String street, int cityId, String zipCode, String cityName,
+                               long likes, long dislikes, List<Comment> comments) {
+
+    public RestaurantDetail {
+        comments = List.copyOf(comments);
+    }
+
+    /**
+     * Évaluation complète avec ses notes.
+     */
+    public record Comment(int evaluationId, Date visitDate, String username, String comment, List<Note> notes) {
+        public Comment {
+            notes = List.copyOf(notes);
+        }
+    }
+
+    /**
+     * Note attribuée pour un critère.
+     */
+    public record Note(String criteriaName, int grade) {
+    }
+}
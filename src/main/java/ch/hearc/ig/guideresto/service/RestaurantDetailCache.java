@@ -0,0 +1,194 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Evaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Cache des vues détail ({@link RestaurantDetail}) assemblées par
+ * {@link RestaurantDetailLoader}: un restaurant consulté souvent est servi
+ * entièrement depuis la mémoire.
+ *
+ * <ul>
+ * <li>Invalidation: toute écriture commitée touchant le restaurant (restaurant,
+ * like, commentaire ou note) retire son entrée; la modification d'une ville
+ * ou d'un type retire les entrées qui l'affichent.</li>
+ * <li>TTL optionnel (expiration stricte): une entrée plus ancienne est
+ * rechargée, en bloquant l'appelant, au prochain accès.</li>
+ * <li>Coalescence: les accès simultanés à une entrée absente partagent un seul
+ * chargement.</li>
+ * </ul>
+ * Un chargement terminé après une invalidation est rendu à ses appelants mais
+ * n'est pas conservé: l'entrée en cours a été retirée de la map.
+ */
+public class RestaurantDetailCache implements RestaurantListener, EvaluationListener {
+
+    private record Entry(RestaurantDetail detail, long loadedNanos) {
+    }
+
+    private final RestaurantDetailLoader loader;
+    private final long ttlNanos;
+    private final ConcurrentMap<Integer, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttl durée de vie d'une entrée, ou {@code null} pour ne compter
+     *            que sur l'invalidation
+     */
+    public RestaurantDetailCache(RestaurantDetailLoader loader, Duration ttl) {
+        this.loader = loader;
+        this.ttlNanos = ttl == null ? Long.MAX_VALUE : ttl.toNanos();
+    }
+
+    /**
+     * @return la vue détail, ou {@code null} si le restaurant n'existe pas
+     * @throws RuntimeException si le chargement échoue ou dépasse {@code deadline}
+     */
+    public RestaurantDetail get(int restaurantId, Duration deadline) {
+        CompletableFuture<Entry> future = entries.get(restaurantId);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally() && isExpired(future.join())) {
+            entries.remove(restaurantId, future);
+            future = null;
+        }
+        if (future == null) {
+            CompletableFuture<Entry> loading = new CompletableFuture<>();
+            future = entries.putIfAbsent(restaurantId, loading);
+            if (future == null) {
+                future = loading;
+                load(restaurantId, deadline, loading);
+            }
+        }
+        try {
+            Entry entry = future.get(deadline.toNanos(), TimeUnit.NANOSECONDS);
+            return entry == null ? null : entry.detail();
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Délai dépassé pour le chargement du restaurant (" + deadline.toMillis()
+                    + " ms)", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Chargement du restaurant interrompu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Retire l'entrée d'un restaurant.
+     */
+    public void evict(int restaurantId) {
+        entries.remove(restaurantId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void restaurantSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+        evict(restaurant.getId());
+    }
+
+    @Override
+    public void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+        evict(restaurantId);
+    }
+
+    @Override
+    public void restaurantsRetyped(List<Integer> restaurantIds, int fromTypeId, int toTypeId) {
+        restaurantIds.forEach(this::evict);
+    }
+
+    @Override
+    public void restaurantsRelocated(List<Integer> restaurantIds, int fromCityId, int toCityId) {
+        restaurantIds.forEach(this::evict);
+    }
+
+    @Override
+    public void cityUpdated(int cityId) {
+        evictIf(detail -> detail.cityId() == cityId);
+    }
+
+    @Override
+    public void typeUpdated(int typeId) {
+        evictIf(detail -> detail.typeId() == typeId);
+    }
+
+    @Override
+    public void basicEvaluationsPurged(Map<Integer, long[]> removedByRestaurant) {
+        removedByRestaurant.keySet().forEach(this::evict);
+    }
+
+    @Override
+    public void basicEvaluationCreated(BasicEvaluation evaluation) {
+        evictFor(evaluation);
+    }
+
+    @Override
+    public void basicEvaluationDeleted(BasicEvaluation evaluation) {
+        evictFor(evaluation);
+    }
+
+    @Override
+    public void completeEvaluationCreated(CompleteEvaluation evaluation) {
+        evictFor(evaluation);
+    }
+
+    @Override
+    public void completeEvaluationChanged(int restaurantId, GradeMapper gradeMapper) {
+        evict(restaurantId);
+    }
+
+    private void load(int restaurantId, Duration deadline, CompletableFuture<Entry> loading) {
+        try {
+            RestaurantDetail detail = loader.load(restaurantId, deadline);
+            if (detail == null) {
+                // Restaurant inexistant: rien à garder
+                entries.remove(restaurantId, loading);
+                loading.complete(null);
+            } else {
+                loading.complete(new Entry(detail, System.nanoTime()));
+            }
+        } catch (RuntimeException e) {
+            entries.remove(restaurantId, loading);
+            loading.completeExceptionally(e);
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return entry != null && System.nanoTime() - entry.loadedNanos() > ttlNanos;
+    }
+
+    /**
+     * Retire les entrées chargées qui satisfont le filtre, ainsi que les
+     * chargements en cours (ils ont pu lire l'ancienne valeur).
+     */
+    private void evictIf(Predicate<RestaurantDetail> filter) {
+        entries.values().removeIf(future -> {
+            if (!future.isDone())
+                return true;
+            if (future.isCompletedExceptionally())
+                return false;
+            Entry entry = future.join();
+            return entry != null && filter.test(entry.detail());
+        });
+    }
+
+    private void evictFor(Evaluation evaluation) {
+        if (evaluation.getRestaurant() != null && evaluation.getRestaurant().getId() != null)
+            evict(evaluation.getRestaurant().getId());
+    }
+}
@@ -0,0 +1,109 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Assemble la vue détail d'un restaurant en lançant en parallèle ses lectures
+ * indépendantes (restaurant, likes, commentaires, grades), chacune sur son
+ * propre EntityManager via {@link RequestExecutor}. La latence est celle de
+ * la lecture la plus lente au lieu de leur somme.
+ *
+ * Une échéance unique couvre les quatre lectures: si elle est dépassée ou si
+ * une lecture échoue, les autres sont annulées.
+ */
+public class RestaurantDetailLoader {
+
+    private final RequestExecutor executor;
+
+    public RestaurantDetailLoader(RequestExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return la vue détail, ou {@code null} si le restaurant n'existe pas
+     * @throws RuntimeException si l'échéance est dépassée ou si une lecture échoue
+     */
+    public RestaurantDetail load(int restaurantId, Duration deadline) {
+        Future<RestaurantDetail> header = executor.submit(scope -> {
+            Restaurant restaurant = scope.restaurantMapper().findById(restaurantId);
+            if (restaurant == null)
+                return null;
+            // Associations LAZY lues tant que la session est ouverte
+            return new RestaurantDetail(restaurant.getId(), restaurant.getName(), restaurant.getDescription(),
+                    restaurant.getWebsite(), restaurant.getType().getId(), restaurant.getType().getLabel(),
+                    restaurant.getAddress().getStreet(), restaurant.getAddress().getCity().getId(),
+                    restaurant.getAddress().getCity().getZipCode(), restaurant.getAddress().getCity().getCityName(),
+                    0, 0, List.of());
+        }, deadline);
+        Future<long[]> likes = executor.submit(scope -> scope.basicEvaluationMapper().countLikes(restaurantId),
+                deadline);
+        Future<List<Object[]>> comments = executor.submit(
+                scope -> scope.completeEvaluationMapper().findCommentRowsByRestaurantId(restaurantId), deadline);
+        Future<List<Object[]>> grades = executor.submit(
+                scope -> scope.gradeMapper().findGradeRowsByRestaurantId(restaurantId), deadline);
+        List<Future<?>> all = List.of(header, likes, comments, grades);
+
+        try {
+            RestaurantDetail restaurant = join(header, all);
+            long[] likeCounts = join(likes, all);
+            List<Object[]> commentRows = join(comments, all);
+            List<Object[]> gradeRows = join(grades, all);
+            if (restaurant == null)
+                return null;
+            return new RestaurantDetail(restaurant.id(), restaurant.name(), restaurant.description(),
+                    restaurant.website(), restaurant.typeId(), restaurant.typeLabel(), restaurant.street(),
+                    restaurant.cityId(), restaurant.zipCode(), restaurant.cityName(), likeCounts[0], likeCounts[1],
+                    assembleComments(commentRows, gradeRows));
+        } catch (CancellationException e) {
+            throw new RuntimeException("Délai dépassé pour le chargement du restaurant (" + deadline.toMillis()
+                    + " ms)", e);
+        }
+    }
+
+    private static List<RestaurantDetail.Comment> assembleComments(List<Object[]> commentRows,
+            List<Object[]> gradeRows) {
+        Map<Integer, List<RestaurantDetail.Note>> notesByEvaluation = new HashMap<>();
+        for (Object[] row : gradeRows) {
+            notesByEvaluation.computeIfAbsent((Integer) row[0], k -> new ArrayList<>())
+                    .add(new RestaurantDetail.Note((String) row[1], ((Number) row[2]).intValue()));
+        }
+        List<RestaurantDetail.Comment> result = new ArrayList<>(commentRows.size());
+        for (Object[] row : commentRows) {
+            Integer evaluationId = (Integer) row[0];
+            result.add(new RestaurantDetail.Comment(evaluationId, (Date) row[1], (String) row[2],
+                    (String) row[3], notesByEvaluation.getOrDefault(evaluationId, List.of())));
+        }
+        return result;
+    }
+
+    /**
+     * Attend une lecture; à la première erreur, annule toutes les autres.
+     */
+    private static <T> T join(Future<T> future, List<Future<?>> all) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            all.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Chargement du restaurant interrompu", e);
+        } catch (ExecutionException e) {
+            all.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new RuntimeException(e.getCause());
+        } catch (CancellationException e) {
+            all.forEach(f -> f.cancel(true));
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.persistence.BasicEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Classement des meilleurs restaurants par type et par ville, maintenu en
+ * mémoire.
+ * Chargé une fois par agrégats SQL ({@link #reload()}), puis mis à jour de
+ * façon incrémentale comme {@link EvaluationListener} et
+ * {@link RestaurantListener}. Chaque partition est un ensemble trié par score:
+ * lire les k premiers coûte O(k), une mise à jour O(log n).
+ *
+ * Score = moyenne de la part de likes (lissage de Laplace) et de la note
+ * moyenne ramenée sur [0, 1] (moyenne bayésienne vers 3/5, poids de 5 notes),
+ * pour ne pas favoriser un restaurant noté une seule fois.
+ */
+public class RestaurantLeaderboard implements EvaluationListener, RestaurantListener {
+
+    /**
+     * Ligne de classement immuable.
+     */
+    public record Entry(int restaurantId, double score, long likes, long dislikes, double averageGrade) {
+    }
+
+    private static final double MAX_GRADE = 5.0;
+    private static final double PRIOR_GRADE = 3.0;
+    private static final double PRIOR_WEIGHT = 5.0;
+
+    private record Rank(double score, int restaurantId) implements Comparable<Rank> {
+        @Override
+        public int compareTo(Rank other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : Integer.compare(restaurantId, other.restaurantId);
+        }
+    }
+
+    private static final class Stats {
+        private Integer typeId;
+        private Integer cityId;
+        private long likes;
+        private long dislikes;
+        private long gradeSum;
+        private long gradeCount;
+        private Rank rank;
+
+        private double score() {
+            double likeScore = (likes + 1.0) / (likes + dislikes + 2.0);
+            double gradeScore = (gradeSum + PRIOR_WEIGHT * PRIOR_GRADE) / (gradeCount + PRIOR_WEIGHT) / MAX_GRADE;
+            return (likeScore + gradeScore) / 2.0;
+        }
+
+        private double averageGrade() {
+            return gradeCount == 0 ? 0.0 : (double) gradeSum / gradeCount;
+        }
+    }
+
+    private final RestaurantMapper restaurantMapper;
+    private final BasicEvaluationMapper basicEvaluationMapper;
+    private final GradeMapper gradeMapper;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Stats> stats = new HashMap<>();
+    private final Map<Integer, NavigableSet<Rank>> byType = new HashMap<>();
+    private final Map<Integer, NavigableSet<Rank>> byCity = new HashMap<>();
+
+    public RestaurantLeaderboard(RestaurantMapper restaurantMapper, BasicEvaluationMapper basicEvaluationMapper,
+            GradeMapper gradeMapper) {
+        this.restaurantMapper = restaurantMapper;
+        this.basicEvaluationMapper = basicEvaluationMapper;
+        this.gradeMapper = gradeMapper;
+    }
+
+    /**
+     * Recharge tout le classement depuis trois requêtes d'agrégat.
+     */
+    public void reload() {
+        List<int[]> placements = restaurantMapper.findTypeAndCityIds();
+        Map<Integer, long[]> likes = basicEvaluationMapper.countLikesByRestaurant();
+        Map<Integer, long[]> grades = gradeMapper.sumGradesByRestaurant();
+        lock.writeLock().lock();
+        try {
+            stats.clear();
+            byType.clear();
+            byCity.clear();
+            for (int[] placement : placements) {
+                Stats s = new Stats();
+                s.typeId = placement[1];
+                s.cityId = placement[2];
+                long[] like = likes.getOrDefault(placement[0], new long[2]);
+                s.likes = like[0];
+                s.dislikes = like[1];
+                long[] grade = grades.getOrDefault(placement[0], new long[2]);
+                s.gradeSum = grade[0];
+                s.gradeCount = grade[1];
+                stats.put(placement[0], s);
+                link(placement[0], s);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Les {@code k} meilleurs restaurants d'un type.
+     */
+    public List<Entry> topByType(int typeId, int k) {
+        return top(byType, typeId, k);
+    }
+
+    /**
+     * Les {@code k} meilleurs restaurants d'une ville.
+     */
+    public List<Entry> topByCity(int cityId, int k) {
+        return top(byCity, cityId, k);
+    }
+
+    @Override
+    public void basicEvaluationCreated(BasicEvaluation evaluation) {
+        adjustLikes(restaurantIdOf(evaluation.getRestaurant()), evaluation.getLikeRestaurant(), 1);
+    }
+
+    @Override
+    public void basicEvaluationDeleted(BasicEvaluation evaluation) {
+        adjustLikes(restaurantIdOf(evaluation.getRestaurant()), evaluation.getLikeRestaurant(), -1);
+    }
+
+    @Override
+    public void completeEvaluationCreated(CompleteEvaluation evaluation) {
+        Integer restaurantId = restaurantIdOf(evaluation.getRestaurant());
+        long sum = 0;
+        long count = 0;
+        for (Grade grade : evaluation.getGrades()) {
+            if (grade.getGrade() != null) {
+                sum += grade.getGrade();
+                count++;
+            }
+        }
+        long gradeSum = sum;
+        long gradeCount = count;
+        update(restaurantId, s -> {
+            s.gradeSum += gradeSum;
+            s.gradeCount += gradeCount;
+        });
+    }
+
+    @Override
+    public void completeEvaluationChanged(int restaurantId, GradeMapper gradeMapper) {
+        // Les anciennes valeurs ne sont plus connues: on relit l'agrégat du seul restaurant
+        long[] grades = gradeMapper.sumGrades(restaurantId);
+        update(restaurantId, s -> {
+            s.gradeSum = grades[0];
+            s.gradeCount = grades[1];
+        });
+    }
+
+    @Override
+    public void restaurantSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+        Integer typeId = restaurant.getType() != null ? restaurant.getType().getId() : null;
+        Integer cityId = restaurant.getAddress() != null && restaurant.getAddress().getCity() != null
+                ? restaurant.getAddress().getCity().getId()
+                : null;
+        lock.writeLock().lock();
+        try {
+            Stats s = stats.computeIfAbsent(restaurant.getId(), id -> new Stats());
+            unlink(restaurant.getId(), s);
+            s.typeId = typeId;
+            s.cityId = cityId;
+            link(restaurant.getId(), s);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+        lock.writeLock().lock();
+        try {
+            Stats s = stats.remove(restaurantId);
+            if (s != null)
+                unlink(restaurantId, s);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void basicEvaluationsPurged(Map<Integer, long[]> removedByRestaurant) {
+        removedByRestaurant.forEach((restaurantId, removed) -> update(restaurantId, s -> {
+            s.likes = Math.max(0, s.likes - removed[0]);
+            s.dislikes = Math.max(0, s.dislikes - removed[1]);
+        }));
+    }
+
+    @Override
+    public void restaurantsRetyped(List<Integer> restaurantIds, int fromTypeId, int toTypeId) {
+        for (Integer restaurantId : restaurantIds) {
+            update(restaurantId, s -> s.typeId = toTypeId);
+        }
+    }
+
+    @Override
+    public void restaurantsRelocated(List<Integer> restaurantIds, int fromCityId, int toCityId) {
+        for (Integer restaurantId : restaurantIds) {
+            update(restaurantId, s -> s.cityId = toCityId);
+        }
+    }
+
+    private void adjustLikes(Integer restaurantId, Boolean like, int delta) {
+        update(restaurantId, s -> {
+            if (Boolean.TRUE.equals(like))
+                s.likes = Math.max(0, s.likes + delta);
+            else
+                s.dislikes = Math.max(0, s.dislikes + delta);
+        });
+    }
+
+    private void update(Integer restaurantId, Consumer<Stats> change) {
+        if (restaurantId == null)
+            return;
+        lock.writeLock().lock();
+        try {
+            Stats s = stats.get(restaurantId);
+            if (s == null)
+                return; // restaurant inconnu (supprimé entre-temps)
+            unlink(restaurantId, s);
+            change.accept(s);
+            link(restaurantId, s);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void link(int restaurantId, Stats s) {
+        s.rank = new Rank(s.score(), restaurantId);
+        if (s.typeId != null)
+            byType.computeIfAbsent(s.typeId, k -> new TreeSet<>()).add(s.rank);
+        if (s.cityId != null)
+            byCity.computeIfAbsent(s.cityId, k -> new TreeSet<>()).add(s.rank);
+    }
+
+    private void unlink(int restaurantId, Stats s) {
+        if (s.rank == null)
+            return;
+        if (s.typeId != null && byType.containsKey(s.typeId))
+            byType.get(s.typeId).remove(s.rank);
+        if (s.cityId != null && byCity.containsKey(s.cityId))
+            byCity.get(s.cityId).remove(s.rank);
+        s.rank = null;
+    }
+
+    private List<Entry> top(Map<Integer, NavigableSet<Rank>> partitions, int partitionId, int k) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Rank> partition = partitions.get(partitionId);
+            if (partition == null || k <= 0)
+                return Collections.emptyList();
+            List<Entry> result = new ArrayList<>(Math.min(k, partition.size()));
+            Iterator<Rank> it = partition.iterator();
+            while (it.hasNext() && result.size() < k) {
+                Rank rank = it.next();
+                Stats s = stats.get(rank.restaurantId());
+                result.add(new Entry(rank.restaurantId(), rank.score(), s.likes, s.dislikes, s.averageGrade()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Integer restaurantIdOf(Restaurant restaurant) {
+        return restaurant != null ? restaurant.getId() : null;
+    }
+}
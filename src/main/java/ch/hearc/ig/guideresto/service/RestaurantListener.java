@@ -0,0 +1,52 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.util.List;
+
+/**
+ * Observateur des écritures de {@link RestaurantService} (et des villes et
+ * types dont dépendent les restaurants), notifié après commit.
+ * Sert à tenir à jour les structures en mémoire (index, classements, caches).
+ */
+public interface RestaurantListener {
+
+    /**
+     * Restaurant créé ou modifié.
+     *
+     * @param previousTypeId type avant modification ({@code null} pour une création)
+     * @param previousCityId ville avant modification ({@code null} pour une création)
+     */
+    default void restaurantSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+    }
+
+    default void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+    }
+
+    /**
+     * Restaurants passés d'un type à un autre par une écriture ensembliste
+     * (rien d'autre n'a changé).
+     */
+    default void restaurantsRetyped(List<Integer> restaurantIds, int fromTypeId, int toTypeId) {
+    }
+
+    /**
+     * Restaurants passés d'une ville à une autre par une écriture ensembliste
+     * (rien d'autre n'a changé).
+     */
+    default void restaurantsRelocated(List<Integer> restaurantIds, int fromCityId, int toCityId) {
+    }
+
+    /**
+     * Ville modifiée (NPA ou nom), voir {@link CityService#updateCity}.
+     */
+    default void cityUpdated(int cityId) {
+    }
+
+    /**
+     * Type modifié (libellé ou description), voir
+     * {@link RestaurantTypeService#updateType}.
+     */
+    default void typeUpdated(int typeId) {
+    }
+}
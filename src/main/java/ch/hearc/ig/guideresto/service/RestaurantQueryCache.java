@@ -0,0 +1,279 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Cache borné (LRU) des résultats de recherche de restaurants.
+ * Une entrée est indexée par (recherche, argument normalisé, vue) et ne
+ * contient que des ids: les entités sont réhydratées par l'Identity Map du
+ * mapper, les aperçus par une requête sur ces ids.
+ *
+ * Invalidation par tags, après chaque commit ({@link RestaurantListener}):
+ * <ul>
+ * <li>{@code restaurant:<id>}: toute entrée dont le résultat contient ce restaurant;</li>
+ * <li>{@code type:<id>}: la recherche par ce type;</li>
+ * <li>{@code city:<id>}: les recherches par nom de ville dont le résultat contient cette ville.</li>
+ * </ul>
+ * Un restaurant créé ou modifié invalide en plus la liste complète et les
+ * recherches par nom (ou par nom de ville) qu'il satisfait désormais, avec la
+ * sémantique de LIKE ({@code %} et {@code _} sont des jokers).
+ *
+ * Une recherche lancée avant une invalidation n'est pas mise en cache
+ * (compteur de génération), pour ne jamais réinsérer un résultat périmé.
+ */
+public class RestaurantQueryCache implements RestaurantListener {
+
+    /**
+     * Recherches mises en cache.
+     */
+    public enum Finder {
+        ALL, NAME, CITY_NAME, TYPE
+    }
+
+    /**
+     * Forme du résultat mis en cache: l'ordre des ids diffère (les aperçus
+     * sont triés par nom).
+     */
+    public enum View {
+        ENTITIES, PREVIEWS
+    }
+
+    /**
+     * Compteurs du cache; les âges mesurent la fraîcheur des résultats servis.
+     */
+    public record Stats(long hits, long misses, long invalidations, long evictions, int size,
+                        double averageAgeMillisAtHit, long maxAgeMillisAtHit) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private record Key(Finder finder, String argument, View view) {
+    }
+
+    private record Entry(List<Integer> ids, Set<String> tags, long createdNanos) {
+    }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final Map<String, Set<Key>> keysByTag = new HashMap<>();
+    private long generation;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+    private long totalAgeNanosAtHit;
+    private long maxAgeNanosAtHit;
+
+    public RestaurantQueryCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Normalise l'argument comme le fait la requête ({@code UPPER(...) LIKE}).
+     */
+    public static String normalize(String argument) {
+        return argument.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Ids en cache pour cette recherche, ou {@code null} si absents.
+     */
+    public synchronized List<Integer> get(Finder finder, String argument, View view) {
+        Entry entry = entries.get(new Key(finder, argument, view));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        long age = System.nanoTime() - entry.createdNanos();
+        totalAgeNanosAtHit += age;
+        maxAgeNanosAtHit = Math.max(maxAgeNanosAtHit, age);
+        return entry.ids();
+    }
+
+    /**
+     * Génération courante, à relever avant d'exécuter la requête.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Met un résultat en cache, sauf si une invalidation a eu lieu depuis
+     * {@code generation}.
+     *
+     * @param ids  ids du résultat, dans l'ordre de la requête
+     * @param tags tags en plus de {@code restaurant:<id>} pour chaque résultat
+     */
+    public synchronized void put(Finder finder, String argument, View view, long generation, List<Integer> ids,
+            Set<String> tags) {
+        if (generation != this.generation)
+            return;
+        Key key = new Key(finder, argument, view);
+        Set<String> allTags = new HashSet<>(tags);
+        for (Integer id : ids) {
+            allTags.add(restaurantTag(id));
+        }
+        remove(key);
+        entries.put(key, new Entry(List.copyOf(ids), allTags, System.nanoTime()));
+        for (String tag : allTags) {
+            keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+        }
+        while (entries.size() > maxEntries) {
+            remove(entries.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    /**
+     * Invalide toutes les entrées portant l'un des tags.
+     */
+    public synchronized void invalidate(String... tags) {
+        generation++;
+        for (String tag : tags) {
+            Set<Key> keys = keysByTag.get(tag);
+            if (keys == null)
+                continue;
+            for (Key key : List.copyOf(keys)) {
+                remove(key);
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Ville renommée: ses restaurants peuvent entrer dans des recherches par nom
+     * de ville où ils étaient absents, toutes ces recherches sont invalidées.
+     */
+    public synchronized void invalidateCity(int cityId) {
+        invalidate(cityTag(cityId));
+        invalidateMatching(Finder.CITY_NAME, argument -> true);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, invalidations, evictions, entries.size(),
+                hits == 0 ? 0 : totalAgeNanosAtHit / 1e6 / hits, maxAgeNanosAtHit / 1_000_000);
+    }
+
+    public static String restaurantTag(int restaurantId) {
+        return "restaurant:" + restaurantId;
+    }
+
+    public static String typeTag(int typeId) {
+        return "type:" + typeId;
+    }
+
+    public static String cityTag(int cityId) {
+        return "city:" + cityId;
+    }
+
+    @Override
+    public synchronized void restaurantSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+        List<String> tags = new ArrayList<>();
+        tags.add(restaurantTag(restaurant.getId()));
+        if (restaurant.getType() != null)
+            tags.add(typeTag(restaurant.getType().getId()));
+        if (previousTypeId != null)
+            tags.add(typeTag(previousTypeId));
+        invalidate(tags.toArray(String[]::new));
+        // Recherches que le restaurant satisfait désormais
+        invalidateMatching(Finder.ALL, argument -> true);
+        String name = restaurant.getName() == null ? "" : normalize(restaurant.getName());
+        invalidateMatching(Finder.NAME, argument -> likeMatches(name, argument));
+        if (restaurant.getAddress() != null && restaurant.getAddress().getCity() != null) {
+            String cityName = normalize(restaurant.getAddress().getCity().getCityName());
+            invalidateMatching(Finder.CITY_NAME, argument -> likeMatches(cityName, argument));
+        }
+    }
+
+    @Override
+    public synchronized void restaurantDeleted(int restaurantId, Integer typeId, Integer cityId) {
+        if (typeId != null)
+            invalidate(restaurantTag(restaurantId), typeTag(typeId));
+        else
+            invalidate(restaurantTag(restaurantId));
+    }
+
+    @Override
+    public synchronized void restaurantsRetyped(List<Integer> restaurantIds, int fromTypeId, int toTypeId) {
+        List<String> tags = restaurantTags(restaurantIds);
+        tags.add(typeTag(fromTypeId));
+        tags.add(typeTag(toTypeId));
+        invalidate(tags.toArray(String[]::new));
+    }
+
+    @Override
+    public synchronized void restaurantsRelocated(List<Integer> restaurantIds, int fromCityId, int toCityId) {
+        invalidate(restaurantTags(restaurantIds).toArray(String[]::new));
+        invalidateCity(fromCityId);
+        invalidateCity(toCityId);
+    }
+
+    private static List<String> restaurantTags(List<Integer> restaurantIds) {
+        List<String> tags = new ArrayList<>(restaurantIds.size() + 2);
+        for (Integer id : restaurantIds) {
+            tags.add(restaurantTag(id));
+        }
+        return tags;
+    }
+
+    /**
+     * {@code value LIKE '%' || argument || '%'}: {@code %} remplace une
+     * suite de caractères, {@code _} un caractère (pas de caractère
+     * d'échappement, comme dans les requêtes).
+     */
+    static boolean likeMatches(String value, String argument) {
+        StringBuilder regex = new StringBuilder(".*");
+        int literalStart = 0;
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c != '%' && c != '_')
+                continue;
+            if (i > literalStart)
+                regex.append(Pattern.quote(argument.substring(literalStart, i)));
+            regex.append(c == '%' ? ".*" : ".");
+            literalStart = i + 1;
+        }
+        if (literalStart < argument.length())
+            regex.append(Pattern.quote(argument.substring(literalStart)));
+        regex.append(".*");
+        return Pattern.compile(regex.toString(), Pattern.DOTALL).matcher(value).matches();
+    }
+
+    private void invalidateMatching(Finder finder, Predicate<String> matches) {
+        for (Key key : List.copyOf(entries.keySet())) {
+            if (key.finder() == finder && matches.test(key.argument())) {
+                remove(key);
+                invalidations++;
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null)
+            return;
+        for (String tag : entry.tags()) {
+            Set<Key> keys = keysByTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty())
+                    keysByTag.remove(tag);
+            }
+        }
+    }
+}
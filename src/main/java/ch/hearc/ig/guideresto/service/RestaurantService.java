@@ -4,7 +4,10 @@ import ch.hearc.ig.guideresto.business.City;
 import ch.hearc.ig.guideresto.business.Localisation;
 import ch.hearc.ig.guideresto.business.Restaurant;
 import ch.hearc.ig.guideresto.persistence.CityMapper;
+import ch.hearc.ig.guideresto.persistence.IdentityMapContext;
+import ch.hearc.ig.guideresto.persistence.RestaurantNameIndex;
 import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantPreview;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
@@ -12,18 +15,26 @@ import jakarta.persistence.LockModeType;
 import jakarta.persistence.PessimisticLockException;
 import jakarta.persistence.LockTimeoutException;
 import jakarta.persistence.PersistenceException;
+import org.hibernate.exception.ConstraintViolationException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Locale;
+import java.util.Objects;
 
 /**
  * Service applicatif pour les {@link Restaurant}.
  * Gère la création transactionnelle et protège les modifications/suppressions
  * par verrou pessimiste (fail-fast).
- * Les lectures délèguent au {@link RestaurantMapper}.
+ * Les lectures délèguent au {@link RestaurantMapper}; les recherches par nom,
+ * par ville et par type passent par le {@link RestaurantQueryCache}.
  */
 public class RestaurantService {
     private final EntityManager em;
     private final CityMapper cityMapper;
     private final RestaurantMapper restaurantMapper;
+    private final RestaurantQueryCache queryCache;
+    private final List<RestaurantListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Petite “session” d'édition qui garde une transaction ouverte et un verrou
@@ -33,13 +44,20 @@ public class RestaurantService {
     public static final class RestaurantEditSession {
         private final EntityManager em;
         private final EntityTransaction tx;
+        private final RestaurantService owner;
         private final Restaurant locked;
+        private final Integer typeIdBefore;
+        private final Integer cityIdBefore;
         private boolean closed;
 
-        private RestaurantEditSession(EntityManager em, EntityTransaction tx, Restaurant locked) {
+        private RestaurantEditSession(EntityManager em, EntityTransaction tx, RestaurantService owner,
+                Restaurant locked) {
             this.em = em;
             this.tx = tx;
+            this.owner = owner;
             this.locked = locked;
+            this.typeIdBefore = typeIdOf(locked);
+            this.cityIdBefore = cityIdOf(locked);
         }
 
         public Restaurant getLockedRestaurant() {
@@ -53,11 +71,13 @@ public class RestaurantService {
             if (closed)
                 return;
             try {
+                owner.restaurantMapper.update(locked);
                 em.flush();
                 tx.commit();
             } finally {
                 closed = true;
             }
+            owner.fireSaved(locked, typeIdBefore, cityIdBefore);
         }
 
         /**
@@ -70,16 +90,27 @@ public class RestaurantService {
                 if (tx.isActive())
                     tx.rollback();
             } finally {
+                // Le restaurant verrouillé a pu être modifié en mémoire: il ne doit pas rester dans l'Identity Map
                 em.clear();
+                IdentityMapContext.clear();
                 closed = true;
             }
         }
     }
 
-    public RestaurantService(EntityManager em, CityMapper cityMapper, RestaurantMapper restaurantMapper) {
+    public RestaurantService(EntityManager em, CityMapper cityMapper, RestaurantMapper restaurantMapper,
+                             RestaurantQueryCache queryCache) {
         this.em = em;
         this.cityMapper = cityMapper;
         this.restaurantMapper = restaurantMapper;
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Abonne une structure en mémoire aux écritures commitées.
+     */
+    public void addListener(RestaurantListener listener) {
+        listeners.add(listener);
     }
 
     /**
@@ -87,52 +118,206 @@ public class RestaurantService {
      * déjà).
      * Toute l'opération est transactionnelle.
      *
+     * La ville est résolue par sa clé naturelle (NPA + nom), sans parcourir la
+     * table VILLES. Si une autre session insère la même ville entre notre lecture
+     * et notre insertion, l'index unique rejette la seconde: on annule et on
+     * rejoue une fois, la ville existante est alors réutilisée.
+     *
      * Grâce à la configuration des cascades dans Restaurant (@OneToMany cascade),
      * les évaluations associées seront gérées automatiquement par Hibernate.
      */
     public Restaurant createRestaurant(Restaurant restaurant, Localisation localisation, City city) {
+        try {
+            return doCreateRestaurant(restaurant, localisation, city);
+        } catch (PersistenceException e) {
+            if (!isConstraintViolation(e, CityMapper.NATURAL_KEY_CONSTRAINT))
+                throw e;
+            // Contexte nettoyé: la ville en échec porte un id de séquence jamais commité
+            em.clear();
+            IdentityMapContext.clear();
+            city.setId(null);
+            return doCreateRestaurant(restaurant, localisation, city);
+        }
+    }
+
+    private Restaurant doCreateRestaurant(Restaurant restaurant, Localisation localisation, City city) {
         EntityTransaction tx = em.getTransaction();
         try {
             tx.begin();
             // Vérifier si la ville existe déjà (par NPA et nom)
-            City existingCity = cityMapper.findAll().stream()
-                    .filter(c -> c.getZipCode().equals(city.getZipCode())
-                            && c.getCityName().equalsIgnoreCase(city.getCityName()))
-                    .findFirst().orElse(null);
+            City existingCity = cityMapper.findByNaturalKey(city.getZipCode(), city.getCityName());
             if (existingCity == null) {
                 // Persister la nouvelle ville via JPA
-                em.persist(city);
+                cityMapper.create(city);
                 em.flush();
                 existingCity = city;
             }
             localisation.setCity(existingCity);
             restaurant.setAddress(localisation);
             // Persister le restaurant - les cascades JPA s'occuperont des évaluations
-            em.persist(restaurant);
+            restaurantMapper.create(restaurant);
             em.flush();
             tx.commit();
-            return restaurant;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        fireSaved(restaurant, null, null);
+        return restaurant;
+    }
+
+    /**
+     * Indique si l'exception (ou une de ses causes) est la violation de la
+     * contrainte nommée.
+     */
+    static boolean isConstraintViolation(Throwable e, String constraintName) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConstraintViolationException cve && cve.getConstraintName() != null
+                    && cve.getConstraintName().toUpperCase(Locale.ROOT).contains(constraintName)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> findAllRestaurants() {
+    public java.util.List<Restaurant> findAllRestaurants() {
         return restaurantMapper.findAll();
     }
 
-    public java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> findRestaurantsByName(String name) {
-        return restaurantMapper.findByName(name);
+    public Restaurant findRestaurantById(int id) {
+        return restaurantMapper.findById(id);
+    }
+
+    /**
+     * Aperçus pour les écrans de liste: aucune entité chargée, description
+     * tronquée à {@code maxChars} caractères côté SQL. Les ids du résultat
+     * passent par le {@link RestaurantQueryCache}, partagé avec les
+     * recherches d'entités (vue {@link RestaurantQueryCache.View#PREVIEWS}).
+     */
+    public java.util.List<RestaurantPreview> findRestaurantPreviews(int maxChars) {
+        return cachedPreviews(RestaurantQueryCache.Finder.ALL, "", maxChars,
+                () -> restaurantMapper.findPreviews(maxChars), p -> java.util.Set.of());
+    }
+
+    public java.util.List<RestaurantPreview> findRestaurantPreviewsByName(String name, int maxChars) {
+        if (name == null)
+            return java.util.List.of();
+        return cachedPreviews(RestaurantQueryCache.Finder.NAME, RestaurantQueryCache.normalize(name), maxChars,
+                () -> restaurantMapper.findPreviewsByName(name, maxChars), p -> java.util.Set.of());
+    }
+
+    public java.util.List<RestaurantPreview> findRestaurantPreviewsByCityName(String cityName, int maxChars) {
+        if (cityName == null)
+            return java.util.List.of();
+        return cachedPreviews(RestaurantQueryCache.Finder.CITY_NAME, RestaurantQueryCache.normalize(cityName),
+                maxChars, () -> restaurantMapper.findPreviewsByCityName(cityName, maxChars), previews -> {
+                    java.util.Set<String> tags = new java.util.HashSet<>();
+                    for (RestaurantPreview preview : previews) {
+                        tags.add(RestaurantQueryCache.cityTag(preview.cityId()));
+                    }
+                    return tags;
+                });
+    }
+
+    public java.util.List<RestaurantPreview> findRestaurantPreviewsByType(int typeId, int maxChars) {
+        return cachedPreviews(RestaurantQueryCache.Finder.TYPE, Integer.toString(typeId), maxChars,
+                () -> restaurantMapper.findPreviewsByType(typeId, maxChars),
+                p -> java.util.Set.of(RestaurantQueryCache.typeTag(typeId)));
+    }
+
+    public java.util.List<Restaurant> findRestaurantsByName(String name) {
+        if (name == null)
+            return java.util.List.of();
+        return cached(RestaurantQueryCache.Finder.NAME, RestaurantQueryCache.normalize(name),
+                () -> restaurantMapper.findByName(name), r -> java.util.Set.of());
+    }
+
+    /**
+     * Hydrate des restaurants dans l'ordre des ids donnés (ex. un classement).
+     */
+    public java.util.List<Restaurant> findRestaurantsByIds(java.util.List<Integer> ids) {
+        return restaurantMapper.findByIds(ids);
+    }
+
+    public java.util.List<Restaurant> findRestaurantsByExactName(String name) {
+        return restaurantMapper.findByExactName(name);
+    }
+
+    public java.util.List<Restaurant> findRestaurantsByCityName(String cityName) {
+        if (cityName == null)
+            return java.util.List.of();
+        return cached(RestaurantQueryCache.Finder.CITY_NAME, RestaurantQueryCache.normalize(cityName),
+                () -> restaurantMapper.findByCityName(cityName), restaurants -> {
+                    java.util.Set<String> tags = new java.util.HashSet<>();
+                    for (Restaurant restaurant : restaurants) {
+                        Integer cityId = cityIdOf(restaurant);
+                        if (cityId != null)
+                            tags.add(RestaurantQueryCache.cityTag(cityId));
+                    }
+                    return tags;
+                });
+    }
+
+    public java.util.List<Restaurant> findRestaurantsByType(int typeId) {
+        return cached(RestaurantQueryCache.Finder.TYPE, Integer.toString(typeId),
+                () -> restaurantMapper.findByType(typeId), r -> java.util.Set.of(RestaurantQueryCache.typeTag(typeId)));
+    }
+
+    /**
+     * Sert une recherche depuis le cache (ids réhydratés par l'Identity Map),
+     * ou l'exécute et met ses ids en cache avec les tags calculés par
+     * {@code tagsOf}.
+     */
+    private List<Restaurant> cached(RestaurantQueryCache.Finder finder, String argument,
+            java.util.function.Supplier<List<Restaurant>> query,
+            java.util.function.Function<List<Restaurant>, java.util.Set<String>> tagsOf) {
+        List<Integer> ids = queryCache.get(finder, argument, RestaurantQueryCache.View.ENTITIES);
+        if (ids != null)
+            return restaurantMapper.findByIds(ids);
+        long generation = queryCache.generation();
+        List<Restaurant> result = query.get();
+        queryCache.put(finder, argument, RestaurantQueryCache.View.ENTITIES, generation,
+                result.stream().map(Restaurant::getId).toList(), tagsOf.apply(result));
+        return result;
+    }
+
+    /**
+     * Comme {@link #cached}, pour les aperçus: un résultat en cache est relu
+     * par une seule requête sur ses ids (dans l'ordre mis en cache).
+     */
+    private List<RestaurantPreview> cachedPreviews(RestaurantQueryCache.Finder finder, String argument, int maxChars,
+            java.util.function.Supplier<List<RestaurantPreview>> query,
+            java.util.function.Function<List<RestaurantPreview>, java.util.Set<String>> tagsOf) {
+        List<Integer> ids = queryCache.get(finder, argument, RestaurantQueryCache.View.PREVIEWS);
+        if (ids != null)
+            return restaurantMapper.findPreviewsByIds(ids, maxChars);
+        long generation = queryCache.generation();
+        List<RestaurantPreview> result = query.get();
+        queryCache.put(finder, argument, RestaurantQueryCache.View.PREVIEWS, generation,
+                result.stream().map(RestaurantPreview::id).toList(), tagsOf.apply(result));
+        return result;
+    }
+
+    /**
+     * Page alphabétique d'un type: {@code limit} restaurants après le curseur
+     * (null pour la première page). Le curseur suivant s'obtient avec
+     * {@link RestaurantNameIndex.Key#of(String, int)} sur le dernier élément.
+     */
+    public java.util.List<Restaurant> findRestaurantPageByType(int typeId, RestaurantNameIndex.Key after, int limit) {
+        return restaurantMapper.findPageByType(typeId, after, limit);
+    }
+
+    public java.util.List<Restaurant> findRestaurantPageByCity(int cityId, RestaurantNameIndex.Key after, int limit) {
+        return restaurantMapper.findPageByCity(cityId, after, limit);
     }
 
-    public java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> findRestaurantsByCityName(String cityName) {
-        return restaurantMapper.findByCityName(cityName);
+    public java.util.List<Restaurant> findRestaurantsByTypeAndPrefix(int typeId, String prefix, int limit) {
+        return restaurantMapper.findByTypeAndPrefix(typeId, prefix, limit);
     }
 
-    public java.util.Set<ch.hearc.ig.guideresto.business.Restaurant> findRestaurantsByType(int typeId) {
-        return restaurantMapper.findByType(typeId);
+    public java.util.List<Restaurant> findRestaurantsByCityAndPrefix(int cityId, String prefix, int limit) {
+        return restaurantMapper.findByCityAndPrefix(cityId, prefix, limit);
     }
 
     /**
@@ -143,6 +328,9 @@ public class RestaurantService {
      */
     public void updateRestaurant(Restaurant restaurant) {
         EntityTransaction tx = em.getTransaction();
+        Restaurant locked;
+        Integer previousTypeId;
+        Integer previousCityId;
         try {
             // IMPORTANT : Détacher l'entité du contexte de persistance
             // Sinon em.find() retournera l'instance déjà gérée SANS acquérir de verrou !
@@ -154,18 +342,16 @@ public class RestaurantService {
             // Verrouillage pessimiste avec timeout fail-fast
             var props = new HashMap<String, Object>();
             props.put("jakarta.persistence.lock.timeout", 0);
-            Restaurant locked = em.find(Restaurant.class, restaurant.getId(), LockModeType.PESSIMISTIC_WRITE, props);
+            locked = em.find(Restaurant.class, restaurant.getId(), LockModeType.PESSIMISTIC_WRITE, props);
             if (locked == null)
                 throw new RuntimeException("Restaurant non trouvé pour modification.");
-            // Appliquer les modifications sur l'entité verrouillée
-            locked.setName(restaurant.getName());
-            locked.setDescription(restaurant.getDescription());
-            locked.setWebsite(restaurant.getWebsite());
-            locked.setType(restaurant.getType());
-            if (locked.getAddress() != null && restaurant.getAddress() != null) {
-                locked.getAddress().setStreet(restaurant.getAddress().getStreet());
-                locked.getAddress().setCity(restaurant.getAddress().getCity());
-            }
+            previousTypeId = typeIdOf(locked);
+            previousCityId = cityIdOf(locked);
+            // Appliquer sur l'entité verrouillée les seuls champs modifiés: avec
+            // @DynamicUpdate, l'UPDATE ne contient que ces colonnes
+            copyChanges(restaurant, locked);
+            // Ré-indexe l'instance verrouillée (le nom a pu changer)
+            restaurantMapper.update(locked);
             // em.flush() pour s'assurer que les cascades sont bien traitées
             em.flush();
             tx.commit();
@@ -187,6 +373,7 @@ public class RestaurantService {
             em.clear();
             throw e;
         }
+        fireSaved(locked, previousTypeId, previousCityId);
     }
 
     /**
@@ -207,7 +394,7 @@ public class RestaurantService {
                 throw new RuntimeException("Restaurant non trouvé pour modification.");
             }
 
-            return new RestaurantEditSession(em, tx, locked);
+            return new RestaurantEditSession(em, tx, this, locked);
         } catch (PessimisticLockException | LockTimeoutException e) {
             if (tx.isActive())
                 tx.rollback();
@@ -223,14 +410,80 @@ public class RestaurantService {
         }
     }
 
+    /**
+     * Passe tous les restaurants du type {@code fromTypeId} au type
+     * {@code toTypeId} en une transaction, par UPDATE ensemblistes (une
+     * instruction par tranche de 1000 ids), sans charger les restaurants.
+     *
+     * L'écriture contourne le contexte de persistance: celui-ci et l'Identity
+     * Map du scope sont vidés après commit, les structures en mémoire sont
+     * notifiées pour les seuls restaurants modifiés.
+     *
+     * @return nombre de restaurants modifiés
+     */
+    public int reassignType(int fromTypeId, int toTypeId) {
+        if (fromTypeId == toTypeId)
+            return 0;
+        EntityTransaction tx = em.getTransaction();
+        List<Integer> ids;
+        try {
+            tx.begin();
+            em.flush();
+            ids = restaurantMapper.reassignType(fromTypeId, toTypeId);
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive())
+                tx.rollback();
+            throw e;
+        }
+        em.clear();
+        IdentityMapContext.clear();
+        Listeners.fire(listeners, l -> l.restaurantsRetyped(ids, fromTypeId, toTypeId));
+        return ids.size();
+    }
+
+    /**
+     * Remplit les aperçus de description manquants
+     * ({@link RestaurantMapper#fillMissingPreviews}); sans effet une fois
+     * toutes les lignes remplies. Écriture hors contexte de persistance:
+     * celui-ci et l'Identity Map du scope sont vidés après commit.
+     *
+     * @return nombre de restaurants mis à jour
+     */
+    public int fillMissingPreviews() {
+        EntityTransaction tx = em.getTransaction();
+        int filled;
+        try {
+            tx.begin();
+            em.flush();
+            filled = restaurantMapper.fillMissingPreviews();
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx.isActive())
+                tx.rollback();
+            throw e;
+        }
+        if (filled > 0) {
+            em.clear();
+            IdentityMapContext.clear();
+        }
+        return filled;
+    }
+
     /**
      * Supprime un restaurant sous verrou pessimiste (timeout 0) afin de sérialiser
      * les suppressions.
+     * Les évaluations et notes sont supprimées par DELETE ensemblistes
+     * ({@link RestaurantMapper#deleteCascade}) sans être chargées: la durée
+     * du verrou ne dépend pas du nombre d'évaluations. Le contexte de
+     * persistance et l'Identity Map du scope sont ensuite vidés.
      * Nettoie le contexte de persistance en cas d'erreur de verrou ou de
      * persistance.
      */
     public void deleteRestaurant(Restaurant restaurant) {
         EntityTransaction tx = em.getTransaction();
+        Integer typeId;
+        Integer cityId;
         try {
             // IMPORTANT : Détacher l'entité du contexte de persistance
             // Sinon em.find() retournera l'instance déjà gérée SANS acquérir de verrou !
@@ -244,9 +497,13 @@ public class RestaurantService {
             Restaurant locked = em.find(Restaurant.class, restaurant.getId(), LockModeType.PESSIMISTIC_WRITE, props);
             if (locked == null)
                 throw new RuntimeException("Restaurant non trouvé pour suppression.");
-            // em.remove utilise les cascades pour supprimer aussi les évaluations associées
-            em.remove(locked);
+            typeId = typeIdOf(locked);
+            cityId = cityIdOf(locked);
             em.flush();
+            restaurantMapper.deleteCascade(locked.getId());
+            // Les entités gérées du graphe n'existent plus en base
+            em.clear();
+            IdentityMapContext.clear();
             tx.commit();
         } catch (PessimisticLockException | LockTimeoutException e) {
             if (tx.isActive())
@@ -266,5 +523,47 @@ public class RestaurantService {
             em.clear();
             throw e;
         }
+        Listeners.fire(listeners, l -> l.restaurantDeleted(restaurant.getId(), typeId, cityId));
+    }
+
+    /**
+     * Copie dans {@code target} les champs de {@code source} qui diffèrent.
+     * Les associations sont comparées par id, sans initialiser de proxy; la
+     * description n'est copiée que si elle a été lue dans {@code source}
+     * (texte LAZY) et réécrite que si son texte change.
+     */
+    private static void copyChanges(Restaurant source, Restaurant target) {
+        if (!Objects.equals(target.getName(), source.getName()))
+            target.setName(source.getName());
+        if (source.isDescriptionLoaded())
+            target.setDescription(source.getDescription());
+        if (!Objects.equals(target.getWebsite(), source.getWebsite()))
+            target.setWebsite(source.getWebsite());
+        if (!Objects.equals(typeIdOf(target), typeIdOf(source)))
+            target.setType(source.getType());
+        Localisation address = target.getAddress();
+        if (address != null && source.getAddress() != null) {
+            if (!Objects.equals(address.getStreet(), source.getAddress().getStreet()))
+                address.setStreet(source.getAddress().getStreet());
+            if (!Objects.equals(cityIdOf(target), cityIdOf(source)))
+                address.setCity(source.getAddress().getCity());
+        }
+    }
+
+    private void fireSaved(Restaurant restaurant, Integer previousTypeId, Integer previousCityId) {
+        Listeners.fire(listeners, l -> l.restaurantSaved(restaurant, previousTypeId, previousCityId));
+    }
+
+    private static Integer typeIdOf(Restaurant restaurant) {
+        return restaurant.getType() != null ? restaurant.getType().getId() : null;
+    }
+
+    /**
+     * Id de la ville du restaurant; lire l'id d'un proxy LAZY ne l'initialise pas.
+     */
+    private static Integer cityIdOf(Restaurant restaurant) {
+        if (restaurant.getAddress() == null || restaurant.getAddress().getCity() == null)
+            return null;
+        return restaurant.getAddress().getCity().getId();
     }
 }
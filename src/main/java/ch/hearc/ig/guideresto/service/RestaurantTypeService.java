@@ -4,20 +4,34 @@ import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.RestaurantTypeMapper;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
-import java.util.Set;
+import java.util.Map;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Service applicatif pour gérer les {@link RestaurantType}.
  * Encapsule les écritures dans une transaction JPA (begin/commit/rollback).
- * Les lectures délèguent au {@link RestaurantTypeMapper}.
+ * Les lectures délèguent au {@link RestaurantTypeMapper}; chaque écriture
+ * commitée est publiée dans le {@link RestaurantCatalog}, les modifications
+ * sont notifiées aux {@link RestaurantListener}s.
  */
 public class RestaurantTypeService {
     private final EntityManager em;
     private final RestaurantTypeMapper typeMapper;
+    private final RestaurantCatalog catalog;
+    private final List<RestaurantListener> listeners = new CopyOnWriteArrayList<>();
 
-    public RestaurantTypeService(EntityManager em, RestaurantTypeMapper typeMapper) {
+    public RestaurantTypeService(EntityManager em, RestaurantTypeMapper typeMapper, RestaurantCatalog catalog) {
         this.em = em;
         this.typeMapper = typeMapper;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Abonne une structure en mémoire aux modifications de types commitées.
+     */
+    public void addListener(RestaurantListener listener) {
+        listeners.add(listener);
     }
 
     public RestaurantType createType(RestaurantType type) {
@@ -26,12 +40,13 @@ public class RestaurantTypeService {
             tx.begin();
             typeMapper.create(type);
             tx.commit();
-            return type;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        Listeners.run(() -> catalog.putType(type));
+        return type;
     }
 
     public RestaurantType updateType(RestaurantType type) {
@@ -40,33 +55,49 @@ public class RestaurantTypeService {
             tx.begin();
             typeMapper.update(type);
             tx.commit();
-            return type;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        Listeners.run(() -> catalog.putType(type));
+        Listeners.fire(listeners, l -> l.typeUpdated(type.getId()));
+        return type;
     }
 
     public boolean deleteType(RestaurantType type) {
         EntityTransaction tx = em.getTransaction();
+        boolean result;
         try {
             tx.begin();
-            boolean result = typeMapper.delete(type);
+            result = typeMapper.delete(type);
             tx.commit();
-            return result;
         } catch (Exception e) {
             if (tx.isActive())
                 tx.rollback();
             throw e;
         }
+        if (result)
+            Listeners.run(() -> catalog.removeType(type.getId()));
+        return result;
     }
 
-    public Set<RestaurantType> findAllTypes() {
+    public List<RestaurantType> findAllTypes() {
         return typeMapper.findAll();
     }
 
+    /**
+     * Libellé → début de description de chaque type (écrans de liste).
+     */
+    public Map<String, String> findTypePreviews(int maxChars) {
+        return typeMapper.findPreviews(maxChars);
+    }
+
     public RestaurantType findTypeById(int id) {
         return typeMapper.findById(id);
     }
+
+    public RestaurantType findTypeByLabel(String label) {
+        return typeMapper.findByLabel(label);
+    }
 }
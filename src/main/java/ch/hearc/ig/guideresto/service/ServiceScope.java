@@ -0,0 +1,110 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.persistence.BasicEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.CityMapper;
+import ch.hearc.ig.guideresto.persistence.CompleteEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.EvaluationCriteriaMapper;
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantNameIndex;
+import ch.hearc.ig.guideresto.persistence.RestaurantTypeMapper;
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+
+/**
+ * Mappers et services d'une requête, tous liés au même EntityManager.
+ * Un scope n'est utilisé que par le thread qui exécute la requête
+ * (voir {@link RequestExecutor}); seules les structures de {@link Shared}
+ * sont partagées entre requêtes.
+ */
+public final class ServiceScope {
+
+    /**
+     * Structures en mémoire communes à toutes les requêtes (thread-safe).
+     * Les listes de listeners sont lues à la création de chaque scope: des
+     * listes concurrentes peuvent être complétées après coup.
+     *
+     * @param likeWriteBehind écriture différée des likes, ou {@code null}
+     */
+    public record Shared(RestaurantNameIndex nameIndex, CityAutocomplete cityAutocomplete,
+                         RestaurantQueryCache queryCache, RestaurantCatalog catalog, LikeDuplicateFilter likeDuplicateFilter,
+                         LikeWriteBehind likeWriteBehind,
+                         List<RestaurantListener> restaurantListeners,
+                         List<EvaluationListener> evaluationListeners) {
+    }
+
+    private final EntityManager em;
+    private final RestaurantMapper restaurantMapper;
+    private final BasicEvaluationMapper basicEvaluationMapper;
+    private final CompleteEvaluationMapper completeEvaluationMapper;
+    private final GradeMapper gradeMapper;
+    private final CityService cityService;
+    private final RestaurantTypeService typeService;
+    private final RestaurantService restaurantService;
+    private final EvaluationService evaluationService;
+    private final EvaluationCriteriaService criteriaService;
+
+    ServiceScope(EntityManager em, Shared shared) {
+        this.em = em;
+        CityMapper cityMapper = new CityMapper(em);
+        restaurantMapper = new RestaurantMapper(em, shared.nameIndex());
+        gradeMapper = new GradeMapper(em);
+        completeEvaluationMapper = new CompleteEvaluationMapper(em, gradeMapper);
+        basicEvaluationMapper = new BasicEvaluationMapper(em);
+
+        cityService = new CityService(em, cityMapper, restaurantMapper, shared.cityAutocomplete(),
+                shared.queryCache(), shared.catalog());
+        shared.restaurantListeners().forEach(cityService::addListener);
+        typeService = new RestaurantTypeService(em, new RestaurantTypeMapper(em), shared.catalog());
+        shared.restaurantListeners().forEach(typeService::addListener);
+        restaurantService = new RestaurantService(em, cityMapper, restaurantMapper, shared.queryCache());
+        shared.restaurantListeners().forEach(restaurantService::addListener);
+        evaluationService = new EvaluationService(em, completeEvaluationMapper, gradeMapper, basicEvaluationMapper,
+                shared.likeDuplicateFilter());
+        shared.evaluationListeners().forEach(evaluationService::addListener);
+        if (shared.likeWriteBehind() != null)
+            evaluationService.enableWriteBehind(shared.likeWriteBehind());
+        criteriaService = new EvaluationCriteriaService(em, new EvaluationCriteriaMapper(em));
+    }
+
+    public EntityManager entityManager() {
+        return em;
+    }
+
+    public RestaurantMapper restaurantMapper() {
+        return restaurantMapper;
+    }
+
+    public BasicEvaluationMapper basicEvaluationMapper() {
+        return basicEvaluationMapper;
+    }
+
+    public CompleteEvaluationMapper completeEvaluationMapper() {
+        return completeEvaluationMapper;
+    }
+
+    public GradeMapper gradeMapper() {
+        return gradeMapper;
+    }
+
+    public CityService cities() {
+        return cityService;
+    }
+
+    public RestaurantTypeService types() {
+        return typeService;
+    }
+
+    public RestaurantService restaurants() {
+        return restaurantService;
+    }
+
+    public EvaluationService evaluations() {
+        return evaluationService;
+    }
+
+    public EvaluationCriteriaService criteria() {
+        return criteriaService;
+    }
+}
@@ -0,0 +1,137 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.persistence.TextCompressionMapper;
+import ch.hearc.ig.guideresto.persistence.jpa.TextCompression;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migration en tâche de fond des textes longs (TEXTES) encore en clair
+ * (CLOB) vers leur colonne compressée (BLOB).
+ *
+ * Sans dictionnaire en base, un dictionnaire est d'abord entraîné sur un
+ * échantillon de commentaires et de descriptions. Les lignes sont ensuite
+ * migrées par lots, une transaction par lot: l'application reste utilisable
+ * pendant la migration, les lignes non migrées étant lues en clair.
+ *
+ * Le thread de migration possède son propre EntityManager.
+ */
+public class TextCompressionMigration implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(TextCompressionMigration.class);
+    private static final int BATCH_SIZE = 100;
+    private static final int TRAINING_SAMPLES = 2000;
+
+    private final EntityManagerFactory emf;
+    private volatile boolean running;
+    private Thread worker;
+
+    public TextCompressionMigration(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        worker = new Thread(this::run, "text-compression-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Arrête la migration après le lot en cours; elle reprendra au prochain
+     * démarrage.
+     */
+    @Override
+    public void close() {
+        Thread toJoin;
+        synchronized (this) {
+            if (!running)
+                return;
+            running = false;
+            toJoin = worker;
+        }
+        try {
+            toJoin.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            TextCompressionMapper mapper = new TextCompressionMapper(em);
+            if (TextCompression.currentDictionary() == 0)
+                trainDictionary(em, mapper);
+            for (TextCompressionMapper.Column column : TextCompressionMapper.Column.values()) {
+                migrate(em, mapper, column);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Migration des textes compressés interrompue", e);
+        } finally {
+            running = false;
+            em.close();
+        }
+    }
+
+    private void trainDictionary(EntityManager em, TextCompressionMapper mapper) {
+        List<String> samples = new ArrayList<>();
+        for (TextCompressionMapper.Column column : TextCompressionMapper.Column.values()) {
+            samples.addAll(mapper.sampleUncompressed(column, TRAINING_SAMPLES));
+        }
+        byte[] dictionary = TextCompression.trainDictionary(samples, TextCompression.MAX_DICTIONARY_BYTES);
+        if (dictionary.length == 0)
+            return;
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            int id = mapper.saveDictionary(dictionary);
+            tx.commit();
+            TextCompression.registerDictionary(id, dictionary, true);
+            logger.info("Dictionnaire de compression {} entraîné sur {} textes ({} octets)", id, samples.size(),
+                    dictionary.length);
+        } catch (RuntimeException e) {
+            if (tx.isActive()) tx.rollback();
+            throw e;
+        }
+    }
+
+    private void migrate(EntityManager em, TextCompressionMapper mapper, TextCompressionMapper.Column column) {
+        long migrated = 0;
+        long rawBytes = 0;
+        long storedBytes = 0;
+        List<Object[]> rows;
+        while (running && !(rows = mapper.findUncompressed(column, BATCH_SIZE)).isEmpty()) {
+            EntityTransaction tx = em.getTransaction();
+            try {
+                tx.begin();
+                for (Object[] row : rows) {
+                    String text = (String) row[1];
+                    byte[] data = TextCompression.compress(text);
+                    if (mapper.storeCompressed((Integer) row[0], data)) {
+                        migrated++;
+                        rawBytes += text.length();
+                        storedBytes += data.length;
+                    }
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            } finally {
+                em.clear();
+            }
+        }
+        if (migrated > 0)
+            logger.info("Textes compressés ({}) : {} lignes, {} caractères -> {} octets", column, migrated,
+                    rawBytes, storedBytes);
+    }
+}